@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Set;
+
+/*
+ * Optional sidecar of a trace file with statistics on each block of events:
+ * its number of items, the smallest and largest node ids it mentions, and a
+ * small Bloom filter of these ids. Readers use it to skip, without decoding
+ * them, the blocks that cannot mention any of the nodes they are interested
+ * in. Blocks without an entry (e.g., state snapshots) are always decoded.
+ */
+public final class BlockStats {
+
+    // one byte of bloom filter per distinct id, i.e., about 5% false
+    // positives with two hash functions. Blocks mentioning at most two ids
+    // need no filter: their min and max ids are exact.
+    private final static int MIN_BLOOM_BYTES = 8, MAX_BLOOM_BYTES = 1024;
+
+    private long[] offsets = new long[64];
+    private int[] counts = new int[64];
+    private int[] min_ids = new int[64];
+    private int[] max_ids = new int[64];
+    private byte[][] blooms = new byte[64][];
+    private int n_blocks = 0;
+
+    private BlockStats() {
+    }
+
+    public static BlockStats open(InputStream is) throws IOException {
+        final BlockStats stats = new BlockStats();
+        final CodedInputStream in = new BufferedCodedInputStream(is);
+        long offset = 0;
+        while (!in.isAtEnd()) {
+            offset += in.readSLong();
+            final int count = in.readInt();
+            final int n_ids = in.readInt();
+            int min_id = 0, max_id = -1;
+            byte[] bloom = null;
+            if (n_ids > 0) {
+                min_id = in.readSInt();
+                max_id = min_id + in.readInt();
+                bloom = new byte[in.readInt()];
+                in.readBytes(bloom, 0, bloom.length);
+            }
+            stats.add(offset, count, min_id, max_id, bloom);
+        }
+        in.close();
+        return stats;
+    }
+
+    private void add(long offset, int count, int minId, int maxId, byte[] bloom) {
+        if (n_blocks == offsets.length) {
+            final int n = 2 * n_blocks;
+            offsets = Arrays.copyOf(offsets, n);
+            counts = Arrays.copyOf(counts, n);
+            min_ids = Arrays.copyOf(min_ids, n);
+            max_ids = Arrays.copyOf(max_ids, n);
+            blooms = Arrays.copyOf(blooms, n);
+        }
+        offsets[n_blocks] = offset;
+        counts[n_blocks] = count;
+        min_ids[n_blocks] = minId;
+        max_ids[n_blocks] = maxId;
+        blooms[n_blocks] = bloom;
+        n_blocks++;
+    }
+
+    public int size() {
+        return n_blocks;
+    }
+
+    // index of the block starting at 'offset' in the trace file, or -1
+    public int find(long offset) {
+        final int i = Arrays.binarySearch(offsets, 0, n_blocks, offset);
+        return (i >= 0) ? i : -1;
+    }
+
+    public int count(int block) {
+        return counts[block];
+    }
+
+    public int minId(int block) {
+        return min_ids[block];
+    }
+
+    public int maxId(int block) {
+        return max_ids[block];
+    }
+
+    // false if block certainly does not mention any of the ids
+    public boolean mayContain(int block, Set<Integer> ids) {
+        final byte[] bloom = blooms[block];
+        if (bloom == null)
+            return false;
+        if (bloom.length == 0)
+            return ids.contains(min_ids[block]) || ids.contains(max_ids[block]);
+        final int n_bits = bloom.length * 8;
+        for (final Integer id : ids)
+            if (id >= min_ids[block] && id <= max_ids[block]) {
+                final int h = hash(id);
+                final int h1 = (h & 0xFFFF) % n_bits, h2 = (h >>> 16) % n_bits;
+                if ((bloom[h1 >> 3] & (1 << (h1 & 7))) != 0 && (bloom[h2 >> 3] & (1 << (h2 & 7))) != 0)
+                    return true;
+            }
+        return false;
+    }
+
+    private static int hash(int id) {
+        int h = id;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    // node ids mentioned by the items of the block being written
+    public static final class Collector {
+        private int[] ids = new int[64];
+        private int n_ids = 0;
+
+        public void add(int id) {
+            if (n_ids == ids.length)
+                ids = Arrays.copyOf(ids, 2 * n_ids);
+            ids[n_ids++] = id;
+        }
+
+        public boolean mentionsAny(Set<Integer> nodes) {
+            for (int i = 0; i < n_ids; ++i)
+                if (nodes.contains(ids[i]))
+                    return true;
+            return false;
+        }
+
+        public void clear() {
+            n_ids = 0;
+        }
+    }
+
+    static final class Writer {
+        private final OutputStream _os;
+        private final CodedBuffer buffer = new CodedBuffer(64);
+        final Collector ids = new Collector();
+        private long prev_offset = 0;
+
+        Writer(OutputStream out) {
+            _os = new BufferedOutputStream(out);
+        }
+
+        void endBlock(long offset, int count) throws IOException {
+            buffer.writeSLong(offset - prev_offset);
+            buffer.writeInt(count);
+            prev_offset = offset;
+            final int[] sorted = ids.ids;
+            Arrays.sort(sorted, 0, ids.n_ids);
+            int n_distinct = 0;
+            for (int i = 0; i < ids.n_ids; ++i)
+                if (i == 0 || sorted[i] != sorted[i - 1])
+                    sorted[n_distinct++] = sorted[i];
+            buffer.writeInt(n_distinct);
+            if (n_distinct > 0) {
+                buffer.writeSInt(sorted[0]);
+                buffer.writeInt(sorted[n_distinct - 1] - sorted[0]);
+                final byte[] bloom = (n_distinct <= 2) ? new byte[0]
+                        : new byte[Math.max(MIN_BLOOM_BYTES, Math.min(MAX_BLOOM_BYTES, n_distinct))];
+                final int n_bits = bloom.length * 8;
+                for (int i = 0; n_bits > 0 && i < n_distinct; ++i) {
+                    final int h = hash(sorted[i]);
+                    final int h1 = (h & 0xFFFF) % n_bits, h2 = (h >>> 16) % n_bits;
+                    bloom[h1 >> 3] |= (1 << (h1 & 7));
+                    bloom[h2 >> 3] |= (1 << (h2 & 7));
+                }
+                buffer.writeInt(bloom.length);
+                buffer.writeBytes(bloom, 0, bloom.length);
+            }
+            buffer.flush(_os);
+            ids.clear();
+        }
+
+        void close() throws IOException {
+            _os.close();
+        }
+    }
+}
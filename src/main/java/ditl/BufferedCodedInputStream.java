@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+ * Reads the underlying stream in chunks into an internal array and decodes
+ * varints, zig-zag values and doubles directly from that array. Only values
+ * that straddle the end of the current chunk go through the byte-by-byte
+ * path.
+ */
+public class BufferedCodedInputStream extends CodedInputStream {
+
+    private final static int DEFAULT_BUFFER_SIZE = 65536;
+    private final static int MAX_VARINT32_SIZE = 5;
+    private final static int MAX_VARINT64_SIZE = 10;
+    private final static int DOUBLE_SIZE = 8;
+
+    private final InputStream _is;
+    private final byte[] buffer;
+    private int buf_pos = 0;
+    private int buf_limit = 0;
+
+    public BufferedCodedInputStream(InputStream is) {
+        this(is, DEFAULT_BUFFER_SIZE);
+    }
+
+    public BufferedCodedInputStream(InputStream is, int bufferSize) {
+        super(is);
+        _is = is;
+        buffer = new byte[bufferSize];
+    }
+
+    // decodes directly from the first length bytes of an array
+    public BufferedCodedInputStream(byte[] bytes, int length) {
+        super(null);
+        _is = null;
+        buffer = bytes;
+        buf_limit = length;
+    }
+
+    private boolean refill() throws IOException {
+        if (buf_pos < buf_limit)
+            return true;
+        if (_is == null)
+            return false;
+        final int n = _is.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            buf_pos = buf_limit = 0;
+            return false;
+        }
+        buf_pos = 0;
+        buf_limit = n;
+        return true;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        if (buf_pos == buf_limit && !refill())
+            throw new EOFException();
+        position++;
+        return buffer[buf_pos++];
+    }
+
+    @Override
+    public void readBytes(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (buf_pos == buf_limit && !refill())
+                throw new EOFException();
+            final int n = Math.min(length, buf_limit - buf_pos);
+            System.arraycopy(buffer, buf_pos, bytes, offset, n);
+            buf_pos += n;
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    public boolean isAtEnd() throws IOException {
+        return !refill();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        if (buf_limit - buf_pos < MAX_VARINT32_SIZE)
+            return super.readInt();
+        int p = buf_pos;
+        int shift = 0;
+        int result = 0;
+        while (shift < 32) {
+            final byte b = buffer[p++];
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                position += p - buf_pos;
+                buf_pos = p;
+                return result;
+            }
+            shift += 7;
+        }
+        throw new IllegalStateException("Malformed varint 32");
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        if (buf_limit - buf_pos < MAX_VARINT64_SIZE)
+            return super.readLong();
+        int p = buf_pos;
+        int shift = 0;
+        long result = 0;
+        while (shift < 64) {
+            final byte b = buffer[p++];
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                position += p - buf_pos;
+                buf_pos = p;
+                return result;
+            }
+            shift += 7;
+        }
+        throw new IllegalStateException("Malformed varint 64");
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        if (buf_limit - buf_pos < DOUBLE_SIZE)
+            return super.readDouble();
+        final byte[] b = buffer;
+        final int p = buf_pos;
+        final long bits = (((long) b[p] & 0xff)) |
+                (((long) b[p + 1] & 0xff) << 8) |
+                (((long) b[p + 2] & 0xff) << 16) |
+                (((long) b[p + 3] & 0xff) << 24) |
+                (((long) b[p + 4] & 0xff) << 32) |
+                (((long) b[p + 5] & 0xff) << 40) |
+                (((long) b[p + 6] & 0xff) << 48) |
+                (((long) b[p + 7] & 0xff) << 56);
+        buf_pos += DOUBLE_SIZE;
+        position += DOUBLE_SIZE;
+        return Double.longBitsToDouble(bits);
+    }
+
+    @Override
+    public void fastForwardTo(long absolutePosition) throws IOException {
+        skip(absolutePosition - position);
+    }
+
+    @Override
+    public void skip(long bytes) throws IOException {
+        final int remaining = buf_limit - buf_pos;
+        if (bytes <= remaining) {
+            buf_pos += (int) bytes;
+        } else {
+            if (_is == null)
+                throw new EOFException();
+            buf_pos = buf_limit;
+            reallySkip(bytes - remaining);
+        }
+        position += bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_is != null)
+            _is.close();
+    }
+}
@@ -21,19 +21,84 @@ package ditl;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 
 public class Bus<E> {
+
+    public enum QueueType {
+        // balanced tree of per-time event lists
+        TREE,
+        // primitive binary heap, better suited to large and busy queues
+        HEAP
+    }
+
+    // returns the keys under which an event may later be removed from the
+    // queue, see removeFromQueueAfterTime(long, Indexer, Object)
+    public interface Indexer<E> {
+        public Collection<?> keys(E event);
+    }
+
+    private final static Indexer<Object> identity_indexer = new Indexer<Object>() {
+        @Override
+        public Collection<Object> keys(Object event) {
+            return Collections.singleton(event);
+        }
+    };
+
+    // indexes each event by itself
+    @SuppressWarnings("unchecked")
+    public static <E> Indexer<E> identityIndexer() {
+        return (Indexer<E>) identity_indexer;
+    }
+
     private final List<Listener<E>> listeners;
-    private final TreeMap<Long, List<E>> buffer;
+    private final List<Indexer<E>> indexers = new ArrayList<Indexer<E>>();
+    private QueueType queue_type;
+    private EventQueue<E> buffer;
+    private KeyedEventQueue<E> keyed_buffer = null;
 
     public Bus() {
+        this(QueueType.TREE);
+    }
+
+    public Bus(QueueType type) {
         listeners = new ArrayList<Listener<E>>();
-        buffer = new TreeMap<Long, List<E>>();
+        queue_type = type;
+        buffer = newQueue(type);
+    }
+
+    private static <E> EventQueue<E> newQueue(QueueType type) {
+        switch (type) {
+            case HEAP:
+                return new HeapEventQueue<E>();
+            default:
+                return new TreeEventQueue<E>();
+        }
+    }
+
+    public void setQueueType(QueueType type) {
+        if (!buffer.isEmpty())
+            throw new IllegalStateException("Cannot change the queue type of a non-empty bus");
+        queue_type = type;
+        if (keyed_buffer == null)
+            buffer = newQueue(type);
+        else
+            buildKeyedBuffer();
+    }
+
+    public void addIndexer(Indexer<E> indexer) {
+        if (!buffer.isEmpty())
+            throw new IllegalStateException("Cannot add an indexer to a non-empty bus");
+        indexers.add(indexer);
+        buildKeyedBuffer();
+    }
+
+    private void buildKeyedBuffer() {
+        keyed_buffer = new KeyedEventQueue<E>(Bus.<KeyedEventQueue.Entry<E>> newQueue(queue_type));
+        for (final Indexer<E> indexer : indexers)
+            keyed_buffer.addIndex(indexer);
+        buffer = keyed_buffer;
     }
 
     public void reset() {
@@ -54,48 +119,28 @@ public class Bus<E> {
     }
 
     public void queue(long time, Collection<E> events) {
-        List<E> eventsAtTime = buffer.get(time);
-        if (eventsAtTime == null) {
-            eventsAtTime = new LinkedList<E>();
-            buffer.put(time, eventsAtTime);
-        }
-        eventsAtTime.addAll(events);
+        buffer.addAll(time, events);
     }
 
     public void queue(long time, E event) {
-        List<E> eventsAtTime = buffer.get(time);
-        if (eventsAtTime == null) {
-            eventsAtTime = new LinkedList<E>();
-            buffer.put(time, eventsAtTime);
-        }
-        buffer.get(time).add(event);
+        buffer.add(time, event);
     }
 
     public void signalNext() throws IOException {
-        final Map.Entry<Long, List<E>> e = buffer.pollFirstEntry();
-        signal(e.getKey(), e.getValue());
+        final long time = buffer.firstTime();
+        signal(time, buffer.pollFirst());
     }
 
     public boolean removeFromQueueAfterTime(long time, Matcher<E> matcher) {
-        boolean changed = false;
-        final Iterator<Long> i = buffer.keySet().iterator();
-        while (i.hasNext()) {
-            final Long t = i.next();
-            if (t >= time) {
-                final List<E> events = buffer.get(t);
-                final Iterator<E> j = events.iterator();
-                while (j.hasNext()) {
-                    final E event = j.next();
-                    if (matcher.matches(event)) {
-                        j.remove();
-                        changed = true;
-                    }
-                }
-                if (events.isEmpty())
-                    i.remove();
-            }
-        }
-        return changed;
+        return buffer.removeAfterTime(time, matcher);
+    }
+
+    // removes all events queued at or after 'time' that 'indexer' maps to
+    // 'key', in time proportional to the number of such pending events
+    public boolean removeFromQueueAfterTime(long time, Indexer<E> indexer, Object key) {
+        if (keyed_buffer == null)
+            throw new IllegalStateException("No indexer registered on this bus");
+        return keyed_buffer.removeAfterTime(time, indexer, key);
     }
 
     public void flush() throws IOException {
@@ -104,7 +149,7 @@ public class Bus<E> {
     }
 
     public void flush(long maxTime) throws IOException {
-        while (!buffer.isEmpty() && buffer.firstKey() <= maxTime)
+        while (!buffer.isEmpty() && buffer.firstTime() <= maxTime)
             signalNext();
     }
 
@@ -113,6 +158,6 @@ public class Bus<E> {
     }
 
     public long nextEventTime() {
-        return buffer.firstKey();
+        return buffer.firstTime();
     }
 }
@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * Parses a text stream in large chunks cut after their last newline. The
+ * lines of a chunk are split by a LineTokenizer and handed to a LineParser,
+ * which stores the fields it needs in a Records buffer of numbers and
+ * strings. With several threads, chunks are parsed concurrently by a pool of
+ * workers while next() still returns their records in stream order, so that
+ * importers can assign ids and replay events sequentially. Files are memory
+ * mapped from their current position, other streams are read chunk by chunk.
+ * Record buffers and chunks are recycled: the records returned by next() are
+ * only valid until the following call.
+ */
+public final class ChunkedLineParser {
+
+    public final static int DEFAULT_CHUNK_SIZE = 1 << 22;
+
+    public interface LineParser {
+        // called for each line, on a worker thread if there are several
+        void parse(LineTokenizer tok, Records out);
+    }
+
+    public final static class Records {
+        private final int n_numbers, n_strings;
+        private double[] numbers;
+        private String[] strings;
+        private int size = 0, capacity = 1024;
+
+        Records(int nNumbers, int nStrings) {
+            n_numbers = nNumbers;
+            n_strings = nStrings;
+            numbers = new double[capacity * n_numbers];
+            strings = new String[capacity * n_strings];
+        }
+
+        // appends a record and returns its index
+        public int add() {
+            if (size == capacity) {
+                capacity *= 2;
+                numbers = Arrays.copyOf(numbers, capacity * n_numbers);
+                strings = Arrays.copyOf(strings, capacity * n_strings);
+            }
+            return size++;
+        }
+
+        public void setNumber(int r, int k, double v) {
+            numbers[r * n_numbers + k] = v;
+        }
+
+        public void setString(int r, int k, String s) {
+            strings[r * n_strings + k] = s;
+        }
+
+        public double number(int r, int k) {
+            return numbers[r * n_numbers + k];
+        }
+
+        public String string(int r, int k) {
+            return strings[r * n_strings + k];
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+
+    private final InputStream _in;
+    private final FileChannel channel;
+    private final LineParser _parser;
+    private final int n_numbers, n_strings;
+    private final int chunk_size;
+    private final int max_pending;
+    private ExecutorService executor = null;
+    private final BlockingQueue<Worker> workers;
+    private final Queue<Future<Records>> pending = new LinkedList<Future<Records>>();
+    private final Queue<Records> free_records = new ConcurrentLinkedQueue<Records>();
+    private final Queue<byte[]> free_chunks = new ConcurrentLinkedQueue<byte[]>();
+    private Records last = null;
+
+    private long position, end;
+    private byte[] carry = new byte[0];
+    private int carry_len = 0;
+    private boolean at_eof = false;
+
+    public ChunkedLineParser(InputStream in, int nNumbers, int nStrings, LineParser parser, int nThreads) throws IOException {
+        this(in, nNumbers, nStrings, parser, nThreads, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ChunkedLineParser(InputStream in, int nNumbers, int nStrings, LineParser parser, int nThreads, int chunkSize)
+            throws IOException {
+        _in = in;
+        _parser = parser;
+        n_numbers = nNumbers;
+        n_strings = nStrings;
+        chunk_size = chunkSize;
+        if (in instanceof FileInputStream) {
+            channel = ((FileInputStream) in).getChannel();
+            position = channel.position();
+            end = channel.size();
+        } else
+            channel = null;
+        final int n = Math.max(1, nThreads);
+        workers = new ArrayBlockingQueue<Worker>(n);
+        for (int k = 0; k < n; ++k)
+            workers.add(new Worker());
+        max_pending = 2 * n;
+        if (nThreads > 1)
+            executor = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread t = new Thread(r);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+    }
+
+    // the records of the next chunk, or null at the end of the stream
+    public Records next() throws IOException {
+        if (last != null) {
+            free_records.add(last);
+            last = null;
+        }
+        if (executor == null) {
+            final Chunk chunk = nextChunk();
+            if (chunk != null)
+                last = chunk.call();
+            return last;
+        }
+        Chunk chunk;
+        while (pending.size() < max_pending && (chunk = nextChunk()) != null)
+            pending.add(executor.submit(chunk));
+        if (pending.isEmpty())
+            return null;
+        try {
+            last = pending.poll().get();
+            return last;
+        } catch (final InterruptedException e) {
+            close();
+            throw new IOException(e);
+        } catch (final ExecutionException e) {
+            close();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private Chunk nextChunk() throws IOException {
+        return (channel == null) ? readChunk() : mapChunk();
+    }
+
+    private Chunk mapChunk() throws IOException {
+        if (position >= end)
+            return null;
+        long size = Math.min(chunk_size, end - position);
+        while (true) {
+            final ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            int cut = (int) size;
+            if (position + size < end)
+                while (cut > 0 && map.get(cut - 1) != '\n')
+                    --cut;
+            if (cut > 0) {
+                position += cut;
+                return new Chunk(null, map, cut);
+            }
+            // a line longer than the chunk
+            size = Math.min(2 * size, end - position);
+        }
+    }
+
+    private Chunk readChunk() throws IOException {
+        if (at_eof)
+            return null;
+        byte[] bytes = free_chunks.poll();
+        if (bytes == null || bytes.length < 2 * carry_len)
+            bytes = new byte[Math.max(chunk_size, 2 * carry_len)];
+        System.arraycopy(carry, 0, bytes, 0, carry_len);
+        int len = carry_len;
+        int cut;
+        while (true) {
+            while (len < bytes.length) {
+                final int n = _in.read(bytes, len, bytes.length - len);
+                if (n < 0) {
+                    at_eof = true;
+                    break;
+                }
+                len += n;
+            }
+            if (at_eof) {
+                cut = len;
+                break;
+            }
+            cut = len;
+            while (cut > 0 && bytes[cut - 1] != '\n')
+                --cut;
+            if (cut > 0)
+                break;
+            bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+        }
+        carry_len = len - cut;
+        if (carry.length < carry_len)
+            carry = new byte[2 * carry_len];
+        System.arraycopy(bytes, cut, carry, 0, carry_len);
+        return (cut == 0) ? null : new Chunk(bytes, null, cut);
+    }
+
+    public void close() throws IOException {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        pending.clear();
+        _in.close();
+    }
+
+    private final static class Worker {
+        final LineTokenizer tok = new LineTokenizer(new byte[0], 0, 0);
+        byte[] scratch = new byte[0];
+    }
+
+    // a chunk is either in a byte array or in a mapped part of the file,
+    // which the worker copies first
+    private final class Chunk implements Callable<Records> {
+        final byte[] bytes;
+        final ByteBuffer map;
+        final int length;
+
+        Chunk(byte[] b, ByteBuffer m, int len) {
+            bytes = b;
+            map = m;
+            length = len;
+        }
+
+        @Override
+        public Records call() throws IOException {
+            final Worker w = workers.poll();
+            try {
+                byte[] b = bytes;
+                if (map != null) {
+                    if (w.scratch.length < length)
+                        w.scratch = new byte[length];
+                    b = w.scratch;
+                    map.get(b, 0, length);
+                }
+                w.tok.reset(b, 0, length);
+                Records out = free_records.poll();
+                if (out == null)
+                    out = new Records(n_numbers, n_strings);
+                out.size = 0;
+                while (w.tok.nextLine())
+                    _parser.parse(w.tok, out);
+                return out;
+            } finally {
+                workers.add(w);
+                if (bytes != null)
+                    free_chunks.add(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.annotation.Annotation;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.reflections.Reflections;
+import org.reflections.scanners.TypeAnnotationsScanner;
+
+/*
+ * Finds the classes annotated with a given annotation (e.g., trace types or
+ * CLI commands). The lists written at build time by IndexProcessor are read
+ * from every jar or directory on the classpath. Scanning the whole classpath
+ * is slow, so it is only a fallback for when no list is found (e.g., classes
+ * compiled without the processor) or when a listed class is missing.
+ */
+public final class ClassIndex {
+
+    final static String indexDir = "META-INF/ditl/";
+
+    private ClassIndex() {
+    }
+
+    public static Set<Class<?>> getTypesAnnotatedWith(Class<? extends Annotation> annotation) {
+        final Set<Class<?>> classes = readIndex(annotation);
+        if (classes != null)
+            return classes;
+        return new Reflections("ditl", new TypeAnnotationsScanner()).getTypesAnnotatedWith(annotation);
+    }
+
+    private static Set<Class<?>> readIndex(Class<? extends Annotation> annotation) {
+        final ClassLoader loader = ClassIndex.class.getClassLoader();
+        final Set<Class<?>> classes = new HashSet<Class<?>>();
+        try {
+            final Enumeration<URL> urls = loader.getResources(indexDir + annotation.getName());
+            if (!urls.hasMoreElements())
+                return null;
+            while (urls.hasMoreElements()) {
+                final BufferedReader br = new BufferedReader(
+                        new InputStreamReader(urls.nextElement().openStream(), "UTF-8"));
+                String line;
+                while ((line = br.readLine()) != null) {
+                    line = line.trim();
+                    if (!line.isEmpty()) {
+                        final Class<?> klass = Class.forName(line, false, loader);
+                        if (klass.isAnnotationPresent(annotation))
+                            classes.add(klass);
+                    }
+                }
+                br.close();
+            }
+        } catch (final IOException ioe) {
+            return null;
+        } catch (final ClassNotFoundException cnfe) {
+            return null; // stale index
+        }
+        return classes;
+    }
+}
@@ -49,6 +49,10 @@ public class CodedBuffer {
         return position;
     }
 
+    public void clear() {
+        position = 0;
+    }
+
     public boolean isEmpty() {
         return position == 0;
     }
@@ -60,6 +64,17 @@ public class CodedBuffer {
         buffer[position++] = (byte) b;
     }
 
+    public void writeBytes(byte[] bytes, int offset, int length) {
+        while (position + length > buffer.length)
+            increaseBufferSize();
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+    }
+
+    byte[] bytes() {
+        return buffer;
+    }
+
     public void writeInt(int value) {
         while (true) {
             if ((value & ~0x7F) == 0) {
@@ -28,7 +28,7 @@ public class CodedInputStream {
     private final static int EMPTY = -100;
     private final static int END = -1;
 
-    private long position = 0;
+    long position = 0;
     private final InputStream _is;
 
     private long mark = 0;
@@ -48,6 +48,11 @@ public class CodedInputStream {
         return (byte) _is.read();
     }
 
+    public void readBytes(byte[] bytes, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; ++i)
+            bytes[i] = readByte();
+    }
+
     public boolean isAtEnd() throws IOException {
         if (stored_byte == EMPTY) {
             stored_byte = _is.read();
@@ -131,7 +136,7 @@ public class CodedInputStream {
         return absolutePosition >= position;
     }
 
-    private void reallySkip(long bytes) throws IOException {
+    void reallySkip(long bytes) throws IOException {
         while (bytes > 0) {
             bytes -= _is.skip(bytes);
         }
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+ * Per-block compression codecs. The codec of each block is stored in bits 2
+ * and 3 of its header flag, so that traces mixing compressed and
+ * uncompressed blocks can be read transparently.
+ */
+public enum Compression {
+
+    NONE {
+        @Override
+        void compress(byte[] in, int len, CodedBuffer out) {
+            out.writeBytes(in, 0, len);
+        }
+
+        @Override
+        void decompress(byte[] in, int len, byte[] out) {
+            System.arraycopy(in, 0, out, 0, len);
+        }
+    },
+
+    DEFLATE {
+        @Override
+        void compress(byte[] in, int len, CodedBuffer out) {
+            final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            deflater.setInput(in, 0, len);
+            deflater.finish();
+            final byte[] chunk = new byte[CHUNK_SIZE];
+            while (!deflater.finished()) {
+                final int n = deflater.deflate(chunk);
+                out.writeBytes(chunk, 0, n);
+            }
+            deflater.end();
+        }
+
+        @Override
+        void decompress(byte[] in, int len, byte[] out) throws IOException {
+            final Inflater inflater = new Inflater();
+            inflater.setInput(in, 0, len);
+            try {
+                int n = 0;
+                while (n < out.length && !inflater.finished()) {
+                    final int k = inflater.inflate(out, n, out.length - n);
+                    if (k == 0 && inflater.needsInput())
+                        throw new IOException("Truncated deflate block");
+                    n += k;
+                }
+            } catch (final DataFormatException e) {
+                throw new IOException(e.getMessage());
+            } finally {
+                inflater.end();
+            }
+        }
+    },
+
+    // LZ77 variant tuned for speed: literal runs and back-references are
+    // stored as varint lengths and offsets.
+    LZ {
+        @Override
+        void compress(byte[] in, int len, CodedBuffer out) {
+            final int[] table = new int[1 << HASH_BITS];
+            Arrays.fill(table, -1);
+            int anchor = 0;
+            int i = 0;
+            while (i + MIN_MATCH <= len) {
+                final int seq = readInt(in, i);
+                final int h = (seq * -1640531535) >>> (32 - HASH_BITS);
+                final int ref = table[h];
+                table[h] = i;
+                if (ref >= 0 && readInt(in, ref) == seq) {
+                    int m = MIN_MATCH;
+                    while (i + m < len && in[ref + m] == in[i + m])
+                        ++m;
+                    out.writeInt(i - anchor);
+                    out.writeBytes(in, anchor, i - anchor);
+                    out.writeInt(i - ref);
+                    out.writeInt(m - MIN_MATCH);
+                    i += m;
+                    anchor = i;
+                } else {
+                    ++i;
+                }
+            }
+            out.writeInt(len - anchor);
+            out.writeBytes(in, anchor, len - anchor);
+        }
+
+        @Override
+        void decompress(byte[] in, int len, byte[] out) throws IOException {
+            final int[] pos = new int[] { 0 };
+            int op = 0;
+            try {
+                while (true) {
+                    final int lit = readVarint(in, pos);
+                    System.arraycopy(in, pos[0], out, op, lit);
+                    pos[0] += lit;
+                    op += lit;
+                    if (op >= out.length)
+                        break;
+                    final int offset = readVarint(in, pos);
+                    final int m = readVarint(in, pos) + MIN_MATCH;
+                    for (int k = 0; k < m; ++k, ++op) // may overlap
+                        out[op] = out[op - offset];
+                }
+            } catch (final IndexOutOfBoundsException e) {
+                throw new IOException("Malformed lz block");
+            }
+        }
+    };
+
+    private final static int CHUNK_SIZE = 4096;
+    private final static int HASH_BITS = 14;
+    private final static int MIN_MATCH = 4;
+
+    private final static int SHIFT = 2;
+    final static byte MASK = (3 << SHIFT);
+
+    abstract void compress(byte[] in, int len, CodedBuffer out);
+
+    abstract void decompress(byte[] in, int len, byte[] out) throws IOException;
+
+    byte flag() {
+        return (byte) (ordinal() << SHIFT);
+    }
+
+    static Compression fromFlag(byte flag) {
+        return values()[(flag & MASK) >> SHIFT];
+    }
+
+    public static Compression fromName(String name) {
+        return valueOf(name.toUpperCase());
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xff) | ((b[i + 1] & 0xff) << 8) | ((b[i + 2] & 0xff) << 16) | ((b[i + 3] & 0xff) << 24);
+    }
+
+    private static int readVarint(byte[] b, int[] pos) {
+        int shift = 0;
+        int result = 0;
+        while (true) {
+            final byte x = b[pos[0]++];
+            result |= (x & 0x7F) << shift;
+            if ((x & 0x80) == 0)
+                return result;
+            shift += 7;
+        }
+    }
+}
@@ -75,6 +75,11 @@ public class DirectoryStore extends WritableStore {
         return new FileInputStream(new File(root, name));
     }
 
+    @Override
+    CodedInputStream getCodedInputStream(String name) throws IOException {
+        return new MappedCodedInputStream(new File(root, name));
+    }
+
     @Override
     public void deleteFile(String name) throws IOException {
         final File file = new File(root, name);
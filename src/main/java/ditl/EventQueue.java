@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+import java.util.Collection;
+import java.util.List;
+
+abstract class EventQueue<E> {
+
+    abstract void clear();
+
+    abstract void add(long time, E event);
+
+    void addAll(long time, Collection<E> events) {
+        for (final E event : events)
+            add(time, event);
+    }
+
+    abstract boolean isEmpty();
+
+    abstract long firstTime();
+
+    // removes and returns all the events at the earliest time, in the order
+    // in which they were queued
+    abstract List<E> pollFirst();
+
+    abstract boolean removeAfterTime(long time, Matcher<E> matcher);
+}
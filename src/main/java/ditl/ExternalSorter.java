@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/*
+ * Sorts a stream of timed records that may not fit in memory. Each record is
+ * a time and a fixed number of longs (doubles can be stored through their raw
+ * long bits). Records are buffered in primitive arrays, and each full buffer
+ * is sorted and spilled to a temporary file as a run. When there are more
+ * runs than the merge fan-in, consecutive runs are merged into longer ones,
+ * pass after pass, until the last pass fits. That last pass is merged on the
+ * fly while the records are read back. The sort is stable: records at the
+ * same time come back in the order in which they were added. At most one
+ * buffer of records and one IO buffer per merged run are held in memory.
+ */
+public final class ExternalSorter {
+
+    public final static int DEFAULT_RUN_SIZE = 1 << 18;
+    public final static int DEFAULT_FAN_IN = 64;
+
+    private final static int IO_BUFFER_SIZE = 1 << 16;
+
+    private final int _arity;
+    private final int run_size;
+    private final int fan_in;
+    private long[] times;
+    private long[] values;
+    private int[] order;
+    private int[] tmp;
+    private int n_records = 0;
+
+    private final List<File> run_files = new ArrayList<File>();
+    private final PriorityQueue<Run> runs = new PriorityQueue<Run>();
+    private int pos = 0;
+    private boolean sorted = false;
+
+    public ExternalSorter(int arity) {
+        this(arity, DEFAULT_RUN_SIZE);
+    }
+
+    public ExternalSorter(int arity, int runSize) {
+        this(arity, runSize, DEFAULT_FAN_IN);
+    }
+
+    public ExternalSorter(int arity, int runSize, int fanIn) {
+        if (fanIn < 2)
+            throw new IllegalArgumentException("Cannot merge fewer than 2 runs at once");
+        _arity = arity;
+        run_size = runSize;
+        fan_in = fanIn;
+        // buffers grow up to the run size
+        final int capacity = Math.min(runSize, 1024);
+        times = new long[capacity];
+        values = new long[capacity * arity];
+    }
+
+    public void add(long time, long[] record) throws IOException {
+        if (sorted)
+            throw new IllegalStateException("Cannot add records after sorting");
+        if (n_records == run_size)
+            spill();
+        else if (n_records == times.length) {
+            final int capacity = Math.min(run_size, 2 * n_records);
+            times = Arrays.copyOf(times, capacity);
+            values = Arrays.copyOf(values, capacity * _arity);
+        }
+        times[n_records] = time;
+        System.arraycopy(record, 0, values, n_records * _arity, _arity);
+        n_records++;
+    }
+
+    // must be called once all the records have been added
+    public void sort() throws IOException {
+        if (run_files.isEmpty()) {
+            sortBuffer();
+        } else {
+            if (n_records > 0)
+                spill();
+            // the buffers are no longer needed
+            times = null;
+            values = null;
+            order = null;
+            tmp = null;
+            while (run_files.size() > fan_in)
+                mergePass();
+            openRuns(run_files, runs);
+        }
+        sorted = true;
+    }
+
+    public boolean hasNext() {
+        if (run_files.isEmpty())
+            return pos < n_records;
+        return !runs.isEmpty();
+    }
+
+    // copies the values of the next record to 'record' and returns its time
+    public long next(long[] record) throws IOException {
+        if (run_files.isEmpty()) {
+            final int i = order[pos++];
+            System.arraycopy(values, i * _arity, record, 0, _arity);
+            return times[i];
+        }
+        final Run run = runs.poll();
+        final long time = run.time;
+        System.arraycopy(run.record, 0, record, 0, _arity);
+        if (run.advance())
+            runs.add(run);
+        else
+            run.close();
+        return time;
+    }
+
+    // deletes the temporary files
+    public void close() throws IOException {
+        for (final Run run : runs)
+            run.close();
+        runs.clear();
+        for (final File file : run_files)
+            file.delete();
+        run_files.clear();
+    }
+
+    private void spill() throws IOException {
+        sortBuffer();
+        final File file = newRunFile();
+        final DataOutputStream out = openOutput(file);
+        for (int k = 0; k < n_records; ++k) {
+            final int i = order[k];
+            writeRecord(out, times[i], values, i * _arity);
+        }
+        out.close();
+        run_files.add(file);
+        n_records = 0;
+    }
+
+    // merges groups of up to fan_in consecutive runs into single runs.
+    // Merging consecutive runs keeps the sort stable.
+    private void mergePass() throws IOException {
+        final List<File> merged = new ArrayList<File>();
+        for (int from = 0; from < run_files.size(); from += fan_in) {
+            final List<File> group = run_files.subList(from, Math.min(from + fan_in, run_files.size()));
+            if (group.size() == 1) {
+                merged.add(group.get(0));
+                continue;
+            }
+            final File file = newRunFile();
+            merged.add(file);
+            final DataOutputStream out = openOutput(file);
+            final PriorityQueue<Run> queue = new PriorityQueue<Run>();
+            openRuns(group, queue);
+            while (!queue.isEmpty()) {
+                final Run run = queue.poll();
+                writeRecord(out, run.time, run.record, 0);
+                if (run.advance())
+                    queue.add(run);
+                else
+                    run.close();
+            }
+            out.close();
+            for (final File f : group)
+                f.delete();
+        }
+        run_files.clear();
+        run_files.addAll(merged);
+    }
+
+    private void openRuns(List<File> files, PriorityQueue<Run> queue) throws IOException {
+        for (int i = 0; i < files.size(); ++i) {
+            final Run run = new Run(i, files.get(i));
+            if (run.advance())
+                queue.add(run);
+            else
+                run.close();
+        }
+    }
+
+    private static File newRunFile() throws IOException {
+        final File file = File.createTempFile("ditl", ".run");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static DataOutputStream openOutput(File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE));
+    }
+
+    private void writeRecord(DataOutputStream out, long time, long[] vals, int offset) throws IOException {
+        out.writeLong(time);
+        for (int j = 0; j < _arity; ++j)
+            out.writeLong(vals[offset + j]);
+    }
+
+    // stable merge sort of the buffered records on their times
+    private void sortBuffer() {
+        if (order == null || order.length < n_records) {
+            order = new int[times.length];
+            tmp = new int[times.length];
+        }
+        for (int i = 0; i < n_records; ++i)
+            order[i] = i;
+        mergeSort(0, n_records);
+    }
+
+    private void mergeSort(int from, int to) {
+        if (to - from < 2)
+            return;
+        final int mid = (from + to) >>> 1;
+        mergeSort(from, mid);
+        mergeSort(mid, to);
+        if (times[order[mid - 1]] <= times[order[mid]])
+            return;
+        int i = from, j = mid, k = from;
+        while (i < mid && j < to)
+            tmp[k++] = (times[order[j]] < times[order[i]]) ? order[j++] : order[i++];
+        while (i < mid)
+            tmp[k++] = order[i++];
+        while (j < to)
+            tmp[k++] = order[j++];
+        System.arraycopy(tmp, from, order, from, to - from);
+    }
+
+    private final class Run implements Comparable<Run> {
+        final int index;
+        final DataInputStream in;
+        final long[] record = new long[_arity];
+        long time;
+
+        Run(int i, File file) throws IOException {
+            index = i;
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), IO_BUFFER_SIZE));
+        }
+
+        boolean advance() throws IOException {
+            try {
+                time = in.readLong();
+            } catch (final EOFException e) {
+                return false;
+            }
+            for (int j = 0; j < _arity; ++j)
+                record[j] = in.readLong();
+            return true;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+
+        // earlier runs hold the records that were added first
+        @Override
+        public int compareTo(Run other) {
+            if (time != other.time)
+                return (time < other.time) ? -1 : 1;
+            return index - other.index;
+        }
+    }
+}
@@ -39,6 +39,10 @@ public class FilterConverter implements Converter {
     public void convert() throws IOException {
         final Filter filter = ((Trace.Filterable) _from).eventFilter(_group);
         final Reader reader = _from.getReader();
+        // push the group down to the reader when its items can be filtered
+        // while decoding, and then skip the blocks mentioning none of its nodes
+        if (reader.decodeOnly(_group))
+            reader.skipBlocksWithout(_group);
         final Writer writer = _to.getWriter();
         reader.seek(_from.minTime());
 
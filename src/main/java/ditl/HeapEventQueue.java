@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/*
+ * Binary min-heap on (time, insertion sequence) stored in parallel primitive
+ * arrays. Queueing an event allocates nothing besides the occasional growth
+ * of the arrays, which are reused for the lifetime of the queue.
+ */
+final class HeapEventQueue<E> extends EventQueue<E> {
+
+    private final static int INITIAL_CAPACITY = 64;
+
+    private long[] times = new long[INITIAL_CAPACITY];
+    private long[] seqs = new long[INITIAL_CAPACITY];
+    private Object[] events = new Object[INITIAL_CAPACITY];
+    private int size = 0;
+    private long next_seq = 0;
+
+    @Override
+    void clear() {
+        Arrays.fill(events, 0, size, null);
+        size = 0;
+        next_seq = 0;
+    }
+
+    @Override
+    void add(long time, E event) {
+        if (size == times.length)
+            grow();
+        siftUp(size++, time, next_seq++, event);
+    }
+
+    @Override
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    long firstTime() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return times[0];
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    List<E> pollFirst() {
+        final long time = firstTime();
+        final List<E> first = new ArrayList<E>();
+        while (size > 0 && times[0] == time) {
+            first.add((E) events[0]);
+            removeTop();
+        }
+        return first;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    boolean removeAfterTime(long time, Matcher<E> matcher) {
+        int n = 0;
+        for (int i = 0; i < size; ++i) {
+            if (times[i] < time || !matcher.matches((E) events[i])) {
+                times[n] = times[i];
+                seqs[n] = seqs[i];
+                events[n] = events[i];
+                ++n;
+            }
+        }
+        if (n == size)
+            return false;
+        Arrays.fill(events, n, size, null);
+        size = n;
+        for (int i = (size >>> 1) - 1; i >= 0; --i)
+            siftDown(i, times[i], seqs[i], events[i]);
+        return true;
+    }
+
+    private void removeTop() {
+        final int last = --size;
+        final long time = times[last];
+        final long seq = seqs[last];
+        final Object event = events[last];
+        events[last] = null;
+        if (last > 0)
+            siftDown(0, time, seq, event);
+    }
+
+    private static boolean before(long t0, long s0, long t1, long s1) {
+        return t0 < t1 || (t0 == t1 && s0 < s1);
+    }
+
+    private void siftUp(int i, long time, long seq, Object event) {
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+            if (!before(time, seq, times[parent], seqs[parent]))
+                break;
+            set(i, times[parent], seqs[parent], events[parent]);
+            i = parent;
+        }
+        set(i, time, seq, event);
+    }
+
+    private void siftDown(int i, long time, long seq, Object event) {
+        final int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            final int right = child + 1;
+            if (right < size && before(times[right], seqs[right], times[child], seqs[child]))
+                child = right;
+            if (!before(times[child], seqs[child], time, seq))
+                break;
+            set(i, times[child], seqs[child], events[child]);
+            i = child;
+        }
+        set(i, time, seq, event);
+    }
+
+    private void set(int i, long time, long seq, Object event) {
+        times[i] = time;
+        seqs[i] = seq;
+        events[i] = event;
+    }
+
+    private void grow() {
+        final int capacity = times.length << 1;
+        times = Arrays.copyOf(times, capacity);
+        seqs = Arrays.copyOf(seqs, capacity);
+        events = Arrays.copyOf(events, capacity);
+    }
+}
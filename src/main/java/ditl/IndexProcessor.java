@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/*
+ * Annotation processor that lists, at build time, the classes annotated with
+ * @Trace.Type and @App.Cli, so that ClassIndex does not need to scan the
+ * classpath at startup. Each annotation gets its own resource under
+ * META-INF/ditl/, named after the annotation's binary name, with one class
+ * name per line.
+ */
+@SupportedAnnotationTypes({ "ditl.Trace.Type", "ditl.cli.App.Cli" })
+public class IndexProcessor extends AbstractProcessor {
+
+    private final Map<String, Set<String>> index = new HashMap<String, Set<String>>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (final TypeElement annotation : annotations) {
+            final String key = processingEnv.getElementUtils().getBinaryName(annotation).toString();
+            if (!index.containsKey(key))
+                index.put(key, new TreeSet<String>());
+            for (final Element e : roundEnv.getElementsAnnotatedWith(annotation))
+                if (e instanceof TypeElement)
+                    index.get(key).add(processingEnv.getElementUtils().getBinaryName((TypeElement) e).toString());
+        }
+        if (roundEnv.processingOver())
+            writeIndex();
+        return false;
+    }
+
+    private void writeIndex() {
+        for (final Map.Entry<String, Set<String>> e : index.entrySet())
+            try {
+                final FileObject file = processingEnv.getFiler().
+                        createResource(StandardLocation.CLASS_OUTPUT, "", ClassIndex.indexDir + e.getKey());
+                final Writer writer = file.openWriter();
+                for (final String klass : e.getValue())
+                    writer.write(klass + "\n");
+                writer.close();
+            } catch (final IOException ioe) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, ioe.toString());
+            }
+    }
+}
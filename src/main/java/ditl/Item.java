@@ -19,6 +19,9 @@
 package ditl;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 
 public interface Item {
 
@@ -28,4 +31,30 @@ public interface Item {
         public I fromBinaryStream(CodedInputStream in) throws IOException;
     }
 
+    // Factories implementing this interface can encode a whole block of items
+    // at once (e.g., column by column) instead of item by item.
+    public interface BlockCoder<I> {
+        public void writeBlock(CodedBuffer out, Collection<I> items);
+
+        public void readBlock(CodedInputStream in, List<I> items) throws IOException;
+    }
+
+    // Factories implementing this interface report the node ids mentioned by
+    // each item, so that writers can keep per-block statistics (see BlockStats).
+    public interface NodeIdReporter<I> {
+        public void reportNodeIds(I item, BlockStats.Collector ids);
+    }
+
+    // Factories implementing this interface can decode only the items whose
+    // nodes all belong to a given group. The bytes of the other items are
+    // consumed without allocating them, and null is returned instead.
+    public interface GroupDecoder<I> {
+        public I fromBinaryStream(CodedInputStream in, Set<Integer> group) throws IOException;
+    }
+
+    // Same as GroupDecoder, for factories that encode whole blocks.
+    public interface GroupBlockDecoder<I> {
+        public void readBlock(CodedInputStream in, List<I> items, Set<Integer> group) throws IOException;
+    }
+
 }
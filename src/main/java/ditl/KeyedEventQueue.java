@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/*
+ * Wraps another event queue and maintains, for each registered indexer, a map
+ * from keys to the pending entries with that key. Removing the pending events
+ * for a key only touches these entries: they are flagged as cancelled and
+ * dropped when they reach the head of the underlying queue.
+ */
+final class KeyedEventQueue<E> extends EventQueue<E> {
+
+    private final EventQueue<Entry<E>> queue;
+    private final Map<Bus.Indexer<E>, Map<Object, Bucket<E>>> indexes = new HashMap<Bus.Indexer<E>, Map<Object, Bucket<E>>>();
+
+    // live entries at the earliest time, already taken out of the queue
+    private List<Entry<E>> head = null;
+    private long head_time;
+
+    KeyedEventQueue(EventQueue<Entry<E>> eventQueue) {
+        queue = eventQueue;
+    }
+
+    void addIndex(Bus.Indexer<E> indexer) {
+        indexes.put(indexer, new HashMap<Object, Bucket<E>>());
+    }
+
+    final static class Entry<E> {
+        final long time;
+        final E event;
+        List<Bucket<E>> buckets = null;
+        boolean cancelled = false;
+
+        Entry(long t, E e) {
+            time = t;
+            event = e;
+        }
+
+        void unindex() {
+            if (buckets != null) {
+                for (final Bucket<E> bucket : buckets)
+                    bucket.remove(this);
+                buckets = null;
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            unindex();
+        }
+    }
+
+    private final static class Bucket<E> extends HashSet<Entry<E>> {
+        private static final long serialVersionUID = 1L;
+        final Object key;
+        final Map<Object, Bucket<E>> index;
+
+        Bucket(Object k, Map<Object, Bucket<E>> idx) {
+            key = k;
+            index = idx;
+        }
+
+        @Override
+        public boolean remove(Object entry) {
+            final boolean removed = super.remove(entry);
+            if (isEmpty())
+                index.remove(key);
+            return removed;
+        }
+    }
+
+    @Override
+    void clear() {
+        queue.clear();
+        head = null;
+        for (final Map<Object, Bucket<E>> index : indexes.values())
+            index.clear();
+    }
+
+    @Override
+    void add(long time, E event) {
+        final Entry<E> entry = new Entry<E>(time, event);
+        for (final Map.Entry<Bus.Indexer<E>, Map<Object, Bucket<E>>> e : indexes.entrySet()) {
+            final Map<Object, Bucket<E>> index = e.getValue();
+            for (final Object key : e.getKey().keys(event)) {
+                Bucket<E> bucket = index.get(key);
+                if (bucket == null) {
+                    bucket = new Bucket<E>(key, index);
+                    index.put(key, bucket);
+                }
+                if (bucket.add(entry)) {
+                    if (entry.buckets == null)
+                        entry.buckets = new ArrayList<Bucket<E>>(2);
+                    entry.buckets.add(bucket);
+                }
+            }
+        }
+        if (head != null) {
+            if (time == head_time) {
+                head.add(entry);
+                return;
+            }
+            if (time < head_time) { // the head is no longer the earliest time
+                queue.addAll(head_time, head);
+                head = null;
+            }
+        }
+        queue.add(time, entry);
+    }
+
+    // moves the next batch of live entries out of the queue
+    private void fillHead() {
+        while (head == null && !queue.isEmpty()) {
+            final long time = queue.firstTime();
+            final List<Entry<E>> live = new ArrayList<Entry<E>>();
+            for (final Entry<E> entry : queue.pollFirst())
+                if (!entry.cancelled)
+                    live.add(entry);
+            if (!live.isEmpty()) {
+                head = live;
+                head_time = time;
+            }
+        }
+    }
+
+    @Override
+    boolean isEmpty() {
+        fillHead();
+        return head == null;
+    }
+
+    @Override
+    long firstTime() {
+        fillHead();
+        if (head == null)
+            throw new NoSuchElementException();
+        return head_time;
+    }
+
+    @Override
+    List<E> pollFirst() {
+        fillHead();
+        if (head == null)
+            throw new NoSuchElementException();
+        final List<E> events = new ArrayList<E>(head.size());
+        for (final Entry<E> entry : head) {
+            entry.unindex();
+            events.add(entry.event);
+        }
+        head = null;
+        return events;
+    }
+
+    @Override
+    boolean removeAfterTime(long time, final Matcher<E> matcher) {
+        boolean changed = false;
+        if (head != null && head_time >= time) {
+            for (final Entry<E> entry : head)
+                if (matcher.matches(entry.event)) {
+                    entry.cancel();
+                    changed = true;
+                }
+            if (changed)
+                dropCancelledHead();
+        }
+        final boolean[] matched = { changed };
+        queue.removeAfterTime(time, new Matcher<Entry<E>>() {
+            @Override
+            public boolean matches(Entry<E> entry) {
+                if (entry.cancelled) // purge it while we are at it
+                    return true;
+                if (matcher.matches(entry.event)) {
+                    entry.cancel();
+                    matched[0] = true;
+                    return true;
+                }
+                return false;
+            }
+        });
+        return matched[0];
+    }
+
+    boolean removeAfterTime(long time, Bus.Indexer<E> indexer, Object key) {
+        final Map<Object, Bucket<E>> index = indexes.get(indexer);
+        if (index == null)
+            throw new IllegalArgumentException("Unknown indexer");
+        final Bucket<E> bucket = index.get(key);
+        if (bucket == null)
+            return false;
+        final List<Entry<E>> removed = new ArrayList<Entry<E>>();
+        for (final Entry<E> entry : bucket)
+            if (entry.time >= time)
+                removed.add(entry);
+        for (final Entry<E> entry : removed)
+            entry.cancel();
+        if (head != null && head_time >= time && !removed.isEmpty())
+            dropCancelledHead();
+        return !removed.isEmpty();
+    }
+
+    private void dropCancelledHead() {
+        final List<Entry<E>> live = new ArrayList<Entry<E>>(head.size());
+        for (final Entry<E> entry : head)
+            if (!entry.cancelled)
+                live.add(entry);
+        head = live.isEmpty() ? null : live;
+    }
+}
@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/*
+ * Splits a text stream into lines, and lines into fields separated by runs of
+ * spaces or tabs, for the trace importers. Fields are indexed like the
+ * elements of String.split("[ \t]+"), but no regular expression is run and no
+ * intermediate strings are allocated: the stream is read in large chunks,
+ * fields are kept as ranges of the chunk, and numbers are parsed straight
+ * from the bytes. Short fields (e.g., node ids) are turned into strings
+ * through a small cache, so that repeated ids do not allocate either. Text is
+ * decoded as UTF-8. A tokenizer can also run over a range of bytes already in
+ * memory, which is how ChunkedLineParser's workers use it.
+ */
+public final class LineTokenizer {
+
+    private final static int CHUNK_SIZE = 1 << 16;
+    private final static int CACHE_SIZE = 4096;
+    private final static int MAX_CACHED_LENGTH = 32;
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    // powers of ten that are exact doubles
+    private final static double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; ++i)
+            POW10[i] = POW10[i - 1] * 10;
+    }
+
+    private final InputStream _in;
+    private byte[] buf = new byte[CHUNK_SIZE];
+    private int buf_end = 0;
+    private int line_start = 0, line_end = 0, next_line = 0;
+    private boolean at_eof = false;
+
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int n_fields = 0;
+
+    private final byte[][] cached_bytes = new byte[CACHE_SIZE][];
+    private final String[] cached_strings = new String[CACHE_SIZE];
+
+    public LineTokenizer(InputStream in) {
+        _in = in;
+    }
+
+    // tokenizes bytes[offset, offset+length) in place
+    public LineTokenizer(byte[] bytes, int offset, int length) {
+        _in = null;
+        reset(bytes, offset, length);
+    }
+
+    // moves on to another range of bytes, keeping the string cache
+    public void reset(byte[] bytes, int offset, int length) {
+        if (_in != null)
+            throw new IllegalStateException("tokenizer reads a stream");
+        buf = bytes;
+        buf_end = offset + length;
+        line_start = line_end = next_line = offset;
+        n_fields = 0;
+        at_eof = true;
+    }
+
+    // reads the next line, returns false at the end of the stream
+    public boolean nextLine() throws IOException {
+        int i = next_line;
+        while (true) {
+            while (i < buf_end && buf[i] != '\n')
+                ++i;
+            if (i < buf_end || at_eof)
+                break;
+            i = fill(i);
+        }
+        if (next_line >= buf_end && at_eof)
+            return false;
+        line_start = next_line;
+        line_end = i;
+        next_line = i + 1;
+        if (line_end > line_start && buf[line_end - 1] == '\r')
+            line_end--;
+        split();
+        return true;
+    }
+
+    // reads more bytes, moving the current line to the start of the buffer,
+    // and returns the new position of 'pos'
+    private int fill(int pos) throws IOException {
+        final int shift = next_line;
+        if (shift > 0) {
+            System.arraycopy(buf, shift, buf, 0, buf_end - shift);
+            buf_end -= shift;
+            next_line = 0;
+            pos -= shift;
+        }
+        if (buf_end == buf.length)
+            buf = Arrays.copyOf(buf, 2 * buf.length);
+        final int n = _in.read(buf, buf_end, buf.length - buf_end);
+        if (n < 0)
+            at_eof = true;
+        else
+            buf_end += n;
+        return pos;
+    }
+
+    private void split() {
+        n_fields = 0;
+        int i = line_start;
+        while (i < line_end) {
+            final int start = i;
+            while (i < line_end && !isBlank(buf[i]))
+                ++i;
+            addField(start, i);
+            while (i < line_end && isBlank(buf[i]))
+                ++i;
+        }
+        // like String.split, trailing empty fields are dropped but an empty
+        // line has one empty field
+        if (n_fields == 0)
+            addField(line_start, line_start);
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private void addField(int start, int end) {
+        if (n_fields == starts.length) {
+            starts = Arrays.copyOf(starts, 2 * n_fields);
+            ends = Arrays.copyOf(ends, 2 * n_fields);
+        }
+        starts[n_fields] = start;
+        ends[n_fields] = end;
+        n_fields++;
+    }
+
+    public int size() {
+        return n_fields;
+    }
+
+    public boolean isEmptyLine() {
+        return line_end == line_start;
+    }
+
+    public String line() {
+        return new String(buf, line_start, line_end - line_start, UTF8);
+    }
+
+    public String string(int i) {
+        return string(field(i), ends[i]);
+    }
+
+    // the part of field i between the first 'open' character and the next
+    // 'close' character, e.g., the id in "$node_(12)"
+    public String between(int i, char open, char close) {
+        int start = field(i);
+        final int end = ends[i];
+        while (start < end && buf[start] != open)
+            ++start;
+        int k = ++start;
+        while (k < end && buf[k] != close)
+            ++k;
+        if (start > end)
+            throw new ArrayIndexOutOfBoundsException(1);
+        return string(start, k);
+    }
+
+    private String string(int start, int end) {
+        final int len = end - start;
+        if (len > MAX_CACHED_LENGTH)
+            return new String(buf, start, len, UTF8);
+        int h = len;
+        for (int k = start; k < end; ++k)
+            h = 31 * h + buf[k];
+        h = (h ^ (h >>> 16)) & (CACHE_SIZE - 1);
+        final byte[] cached = cached_bytes[h];
+        if (cached != null && regionEquals(start, end, cached))
+            return cached_strings[h];
+        final String s = new String(buf, start, len, UTF8);
+        cached_bytes[h] = Arrays.copyOfRange(buf, start, end);
+        cached_strings[h] = s;
+        return s;
+    }
+
+    private boolean regionEquals(int start, int end, byte[] bytes) {
+        if (end - start != bytes.length)
+            return false;
+        for (int k = 0; k < bytes.length; ++k)
+            if (buf[start + k] != bytes[k])
+                return false;
+        return true;
+    }
+
+    // ASCII comparisons
+    public boolean fieldEquals(int i, String s) {
+        return fieldEquals(i, s, false);
+    }
+
+    public boolean fieldEqualsIgnoreCase(int i, String s) {
+        return fieldEquals(i, s, true);
+    }
+
+    private boolean fieldEquals(int i, String s, boolean ignoreCase) {
+        final int start = field(i);
+        if (ends[i] - start != s.length())
+            return false;
+        for (int k = 0; k < s.length(); ++k) {
+            char c = (char) buf[start + k], d = s.charAt(k);
+            if (ignoreCase) {
+                c = Character.toUpperCase(c);
+                d = Character.toUpperCase(d);
+            }
+            if (c != d)
+                return false;
+        }
+        return true;
+    }
+
+    public boolean fieldStartsWith(int i, String prefix) {
+        final int start = field(i);
+        if (ends[i] - start < prefix.length())
+            return false;
+        for (int k = 0; k < prefix.length(); ++k)
+            if (buf[start + k] != prefix.charAt(k))
+                return false;
+        return true;
+    }
+
+    public double parseDouble(int i) {
+        return parseDouble(i, 0);
+    }
+
+    // parses field i without its last 'trim' bytes. Returns exactly what
+    // Double.parseDouble returns, and throws the same exceptions.
+    public double parseDouble(int i, int trim) {
+        final int start = field(i), end = ends[i] - trim;
+        int k = start;
+        boolean negative = false;
+        if (k < end && (buf[k] == '-' || buf[k] == '+'))
+            negative = (buf[k++] == '-');
+        long mantissa = 0;
+        int n_digits = 0, exp10 = 0;
+        boolean has_digits = false;
+        while (k < end && buf[k] >= '0' && buf[k] <= '9') {
+            if (mantissa != 0 || buf[k] != '0')
+                n_digits++;
+            mantissa = 10 * mantissa + (buf[k++] - '0');
+            has_digits = true;
+        }
+        if (k < end && buf[k] == '.') {
+            ++k;
+            while (k < end && buf[k] >= '0' && buf[k] <= '9') {
+                if (mantissa != 0 || buf[k] != '0')
+                    n_digits++;
+                mantissa = 10 * mantissa + (buf[k++] - '0');
+                exp10--;
+                has_digits = true;
+            }
+        }
+        if (k < end && (buf[k] == 'e' || buf[k] == 'E') && has_digits) {
+            ++k;
+            boolean neg_exp = false;
+            if (k < end && (buf[k] == '-' || buf[k] == '+'))
+                neg_exp = (buf[k++] == '-');
+            int e = 0, n_exp_digits = 0;
+            while (k < end && buf[k] >= '0' && buf[k] <= '9' && n_exp_digits < 9) {
+                e = 10 * e + (buf[k++] - '0');
+                n_exp_digits++;
+            }
+            if (n_exp_digits == 0)
+                has_digits = false;
+            exp10 += neg_exp ? -e : e;
+        }
+        // a single rounding is exact when both the mantissa and the power of
+        // ten are exact doubles, otherwise leave it to the JDK
+        if (k != end || !has_digits || n_digits > 15 || exp10 < -22 || exp10 > 22)
+            return Double.parseDouble(new String(buf, start, end - start, UTF8));
+        final double v = (exp10 < 0) ? mantissa / POW10[-exp10] : mantissa * POW10[exp10];
+        return negative ? -v : v;
+    }
+
+    private int field(int i) {
+        if (i >= n_fields)
+            throw new ArrayIndexOutOfBoundsException(i);
+        return starts[i];
+    }
+
+    public void close() throws IOException {
+        if (_in != null)
+            _in.close();
+    }
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * Reads a trace file through read-only memory mappings. Unlike the stream
+ * based CodedInputStream, any position in the file can be reached, forwards
+ * or backwards, without re-opening the file. Files larger than 2GB are mapped
+ * as several consecutive segments.
+ */
+public class MappedCodedInputStream extends CodedInputStream {
+
+    private final static int SEGMENT_SIZE = (1 << 30); // 1GB
+
+    private final RandomAccessFile raf;
+    private MappedByteBuffer[] segments;
+    private final long size;
+
+    private MappedByteBuffer cur_segment;
+    private int cur_segment_index;
+
+    public MappedCodedInputStream(File file) throws IOException {
+        super(null);
+        raf = new RandomAccessFile(file, "r");
+        final FileChannel channel = raf.getChannel();
+        size = channel.size();
+        segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        for (int i = 0; i < segments.length; ++i) {
+            final long offset = (long) i * SEGMENT_SIZE;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SEGMENT_SIZE, size - offset));
+        }
+        moveTo(0);
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        ensureOpen();
+        if (position >= size)
+            throw new EOFException();
+        if (!cur_segment.hasRemaining()) {
+            cur_segment = segments[++cur_segment_index];
+            cur_segment.position(0);
+        }
+        position++;
+        return cur_segment.get();
+    }
+
+    @Override
+    public void readBytes(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        if (position + length > size)
+            throw new EOFException();
+        while (length > 0) {
+            if (!cur_segment.hasRemaining()) {
+                cur_segment = segments[++cur_segment_index];
+                cur_segment.position(0);
+            }
+            final int n = Math.min(length, cur_segment.remaining());
+            cur_segment.get(bytes, offset, n);
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    public boolean isAtEnd() {
+        return position >= size;
+    }
+
+    @Override
+    public void fastForwardTo(long absolutePosition) throws IOException {
+        moveTo(absolutePosition);
+    }
+
+    @Override
+    public boolean canFastForwardTo(long absolutePosition) {
+        return absolutePosition >= 0 && absolutePosition <= size;
+    }
+
+    @Override
+    public void skip(long bytes) throws IOException {
+        moveTo(position + bytes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // drop the mappings so that they can be unmapped before the file is
+        // overwritten or deleted
+        segments = null;
+        cur_segment = null;
+        raf.close();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (segments == null)
+            throw new IOException("Stream closed");
+    }
+
+    private void moveTo(long absolutePosition) throws IOException {
+        if (!canFastForwardTo(absolutePosition))
+            throw new IOException("Position " + absolutePosition + " is outside of mapped file");
+        ensureOpen();
+        position = absolutePosition;
+        if (segments.length > 0) {
+            int i = (int) (absolutePosition / SEGMENT_SIZE);
+            if (i == segments.length) // exactly at the end of the last segment
+                i--;
+            cur_segment_index = i;
+            cur_segment = segments[i];
+            cur_segment.position((int) (absolutePosition - (long) i * SEGMENT_SIZE));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * A store that keeps the traces it creates in memory, on top of a parent
+ * store whose traces it lists (as MultiStore does). Intermediate traces can
+ * be written and read back here without touching the disk, and only the
+ * ones worth keeping are then copied to the parent with commit(). A single
+ * trace can also be committed early, and its in-memory copy released once it
+ * is no longer read, so that memory only holds the traces still in use.
+ */
+public class MemoryStore extends WritableStore {
+
+    private final WritableStore parent;
+    private final Map<String, byte[]> files = Collections.synchronizedMap(new HashMap<String, byte[]>());
+    private final Set<String> own_traces = Collections.synchronizedSet(new HashSet<String>());
+    private final Set<String> committed = Collections.synchronizedSet(new HashSet<String>());
+
+    public MemoryStore(WritableStore parentStore) throws IOException {
+        super();
+        parent = parentStore;
+        for (final Trace<?> trace : parent.listTraces())
+            traces.put(trace.name(), trace);
+    }
+
+    @Override
+    public InputStream getInputStream(String name) throws IOException {
+        final byte[] bytes = files.get(name);
+        if (bytes == null)
+            throw new IOException("No such file '" + name + "'");
+        return new ByteArrayInputStream(bytes);
+    }
+
+    @Override
+    public OutputStream getOutputStream(final String name) throws IOException {
+        return new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+                files.put(name, toByteArray());
+            }
+        };
+    }
+
+    @Override
+    public boolean hasFile(String name) {
+        return files.containsKey(name);
+    }
+
+    @Override
+    public void deleteFile(String name) throws IOException {
+        if (files.remove(name) == null)
+            throw new IOException("Could not delete '" + name + "'");
+    }
+
+    // traces that were not created in memory are deleted from the parent
+    @Override
+    public void deleteTrace(String name) throws IOException {
+        if (own_traces.remove(name)) {
+            for (final String file : fileNames(name))
+                files.remove(file);
+            if (committed.remove(name))
+                parent.deleteTrace(name);
+        } else
+            parent.deleteTrace(name);
+        traces.remove(name);
+    }
+
+    @Override
+    public void moveTrace(String origName, String destName, boolean force) throws IOException {
+        if (!own_traces.contains(origName))
+            throw new IOException("Trace '" + origName + "' is not in memory");
+        if (hasTrace(destName))
+            if (force)
+                deleteTrace(destName);
+            else
+                throw new IOException("A trace with name '" + destName + "' already exists!");
+        for (final String file : fileNames(origName))
+            files.put(destName + file.substring(origName.length()), files.remove(file));
+        own_traces.remove(origName);
+        own_traces.add(destName);
+        traces.remove(origName);
+        try {
+            loadTrace(destName);
+        } catch (final ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public <T extends Trace<?>> T newTrace(String name, Class<T> klass, boolean force) throws IOException, ClassNotFoundException {
+        final T trace = super.newTrace(name, klass, force);
+        own_traces.add(name);
+        return trace;
+    }
+
+    // copies the traces created in memory to the parent store
+    public void commit() throws IOException {
+        final List<String> names;
+        synchronized (own_traces) {
+            names = new ArrayList<String>(own_traces);
+        }
+        for (final String name : names)
+            commit(name);
+    }
+
+    // copies a trace created in memory to the parent store, where it
+    // survives later failures. It is still read from memory.
+    public void commit(String name) throws IOException {
+        if (!own_traces.contains(name) || !committed.add(name))
+            return;
+        parent.copyTrace(this, getTrace(name));
+        try {
+            parent.loadTrace(name);
+        } catch (final ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    // drops the in-memory copy of a committed trace, which is read from the
+    // parent store from then on
+    public void release(String name) throws IOException {
+        if (!committed.remove(name))
+            return;
+        own_traces.remove(name);
+        for (final String file : fileNames(name))
+            files.remove(file);
+        traces.put(name, parent.getTrace(name));
+    }
+
+    private List<String> fileNames(String name) {
+        final String prefix = name + separator;
+        final List<String> names = new ArrayList<String>();
+        synchronized (files) {
+            for (final String file : files.keySet())
+                if (file.startsWith(prefix))
+                    names.add(file);
+        }
+        return names;
+    }
+}
@@ -19,9 +19,11 @@
 package ditl;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 public class MergeConverter implements Converter {
@@ -58,6 +60,10 @@ public class MergeConverter implements Converter {
         IdMap.Writer id_map_writer = null;
         final Writer writer = _to.getWriter();
         Set initState = new HashSet();
+        // all the readers are open at once and merged on their next time, so
+        // that only the current block of each trace is held in memory
+        final PriorityQueue<Source> sources = new PriorityQueue<Source>();
+        int index = 0;
         for (final Trace<?> from : from_collection) {
             final IdMap id_map = from.idMap();
             if (id_map != null) {
@@ -70,17 +76,30 @@ public class MergeConverter implements Converter {
             if (_to instanceof StatefulTrace) {
                 initState.addAll(((StatefulReader) reader).referenceState());
             }
-            while (reader.hasNext()) {
-                final List<? extends Item> events = reader.next();
-                for (final Item item : events)
-                    writer.queue(reader.time(), item);
-            }
-            reader.close();
+            if (reader.hasNext())
+                sources.add(new Source(index++, reader));
+            else
+                reader.close();
         }
         if (_to instanceof StatefulTrace) {
             ((StatefulWriter) writer).setInitState(minTime, initState);
         }
-        writer.flush();
+        // events at the same time are written in the order of the traces
+        final List items = new ArrayList();
+        while (!sources.isEmpty()) {
+            final long time = sources.peek().reader.nextTime();
+            while (!sources.isEmpty() && sources.peek().reader.nextTime() == time) {
+                final Source source = sources.poll();
+                items.addAll(source.reader.next());
+                if (source.reader.hasNext())
+                    sources.add(source);
+                else
+                    source.reader.close();
+            }
+            if (!items.isEmpty())
+                writer.handle(time, items);
+            items.clear();
+        }
         writer.setProperty(Trace.timeUnitKey, time_unit);
         writer.setProperty(Trace.minTimeKey, minTime);
         writer.setProperty(Trace.maxTimeKey, maxTime);
@@ -88,4 +107,22 @@ public class MergeConverter implements Converter {
             id_map_writer.writeTraceInfo(writer);
         writer.close();
     }
+
+    private final static class Source implements Comparable<Source> {
+        final int index;
+        final Reader<?> reader;
+
+        Source(int i, Reader<?> r) {
+            index = i;
+            reader = r;
+        }
+
+        @Override
+        public int compareTo(Source other) {
+            final long t = reader.nextTime(), ot = other.reader.nextTime();
+            if (t != ot)
+                return (t < ot) ? -1 : 1;
+            return index - other.index;
+        }
+    }
 }
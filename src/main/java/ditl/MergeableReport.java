@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+import java.io.IOException;
+
+/*
+ * A report that can be computed over consecutive shards of a time range in
+ * parallel. The report of the first shard runs normally and writes to its
+ * output. The report of every later shard is seeked to the start of its shard,
+ * then told so by startShard, and keeps its output in memory from then on.
+ * Once all shards have run, the shard reports are merged in order into the
+ * report of the first shard, which resolves whatever straddles the
+ * boundaries.
+ */
+public interface MergeableReport<R extends Report> {
+
+    public void startShard(long time) throws IOException;
+
+    public void merge(R shard) throws IOException;
+}
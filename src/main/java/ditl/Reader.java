@@ -18,11 +18,11 @@
  *******************************************************************************/
 package ditl;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 public class Reader<I extends Item> implements Generator {
 
@@ -38,6 +38,12 @@ public class Reader<I extends Item> implements Generator {
 
     byte next_flag;
     private int next_block_bytes;
+    long next_block_offset;
+
+    private BlockStats block_stats = null;
+    private Set<Integer> stats_ids = null;
+    private boolean skipped = false;
+    private Set<Integer> decode_group = null;
 
     private CodedInputStream cis;
     final SeekMap seek_map;
@@ -70,7 +76,8 @@ public class Reader<I extends Item> implements Generator {
         cur_time += incr_time;
         while (cur_time > next_time) {
             step();
-            _bus.queue(prev_time - _offset, buffer);
+            if (!skipped)
+                _bus.queue(prev_time - _offset, buffer);
         }
     }
 
@@ -102,11 +109,66 @@ public class Reader<I extends Item> implements Generator {
     }
 
     void step() throws IOException {
-        buffer = readItemBlock(_factory);
+        skipped = stats_ids != null && isIrrelevant();
+        if (skipped) {
+            skipBlock();
+            buffer = Collections.emptyList();
+        } else {
+            buffer = readItemBlock(_factory);
+        }
         prev_time = next_time;
         readHeader();
     }
 
+    // From now on, skip without decoding them the blocks of events that the
+    // block statistics of the trace prove to mention none of the given
+    // nodes. Skipped blocks are returned empty by next() and are not queued
+    // on the bus. The items of other blocks are not filtered. Returns false
+    // if the trace has no block statistics.
+    public boolean skipBlocksWithout(Set<Integer> ids) throws IOException {
+        if (block_stats == null) {
+            if (!_store.hasFile(_trace.statsFile()))
+                return false;
+            block_stats = BlockStats.open(_store.getInputStream(_trace.statsFile()));
+        }
+        stats_ids = ids;
+        return true;
+    }
+
+    // From now on, only decode the items whose nodes all belong to the group.
+    // The others are dropped while decoding, before they are allocated. Must
+    // be called before seeking. For stateful readers, this also applies to
+    // the states, so that the reference state only holds the group's items.
+    // Returns false, and leaves the reader unchanged, if the item factories of
+    // the trace do not support it.
+    public boolean decodeOnly(Set<Integer> group) {
+        if (!canDecodeOnly(_factory))
+            return false;
+        decode_group = group;
+        return true;
+    }
+
+    static boolean canDecodeOnly(Item.Factory<?> factory) {
+        return factory instanceof Item.GroupDecoder
+                && (!(factory instanceof Item.BlockCoder) || factory instanceof Item.GroupBlockDecoder);
+    }
+
+    private boolean isIrrelevant() {
+        final int block = block_stats.find(next_block_offset);
+        return block >= 0 && !block_stats.mayContain(block, stats_ids);
+    }
+
+    // returns the next block, snapshots included, as it is stored and
+    // without its header, see SubtraceConverter
+    byte[] nextRawBlock() throws IOException {
+        final byte[] bytes = new byte[next_block_bytes];
+        cis.readBytes(bytes, 0, next_block_bytes);
+        prev_time = next_time;
+        cur_time = prev_time;
+        readHeader();
+        return bytes;
+    }
+
     void skipBlock() throws IOException {
         cis.skip(next_block_bytes);
     }
@@ -124,16 +186,21 @@ public class Reader<I extends Item> implements Generator {
     }
 
     private void init() throws IOException {
+        open();
+        readHeader();
+    }
+
+    private void open() throws IOException {
         _store.notifyOpen(this);
-        cis = new CodedInputStream(new BufferedInputStream(_store.getInputStream(_trace.traceFile())));
+        cis = _store.getCodedInputStream(_trace.traceFile());
         prev_time = Long.MIN_VALUE;
         buffer = Collections.emptyList();
         cur_time = prev_time;
-        readHeader();
     }
 
     void readHeader() throws IOException {
         if (!cis.isAtEnd()) {
+            next_block_offset = cis.position;
             next_flag = cis.readByte();
             next_block_bytes = cis.readInt();
             next_time = cis.readSLong();
@@ -143,31 +210,65 @@ public class Reader<I extends Item> implements Generator {
     }
 
     <E extends Item> List<E> readItemBlock(Item.Factory<E> factory) throws IOException {
+        return readItemBlock(cis, next_flag, next_block_bytes, factory, _trace, decode_group);
+    }
+
+    static <E extends Item> List<E> readItemBlock(CodedInputStream cis, byte flag, int blockBytes,
+            Item.Factory<E> factory, Trace<?> trace) throws IOException {
+        return readItemBlock(cis, flag, blockBytes, factory, trace, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E extends Item> List<E> readItemBlock(CodedInputStream cis, byte flag, int blockBytes,
+            Item.Factory<E> factory, Trace<?> trace, Set<Integer> group) throws IOException {
         List<E> items = new LinkedList<E>();
-        cis.mark();
-        while (cis.bytesReadSinceMark() < next_block_bytes) {
-            items.add(factory.fromBinaryStream(cis));
+        CodedInputStream in = cis;
+        long block_bytes = blockBytes;
+        final Compression compression = Compression.fromFlag(flag);
+        if (compression != Compression.NONE) {
+            cis.mark();
+            final int n_bytes = cis.readInt();
+            final byte[] compressed = new byte[blockBytes - (int) cis.bytesReadSinceMark()];
+            cis.readBytes(compressed, 0, compressed.length);
+            final byte[] bytes = new byte[n_bytes];
+            compression.decompress(compressed, compressed.length, bytes);
+            in = new BufferedCodedInputStream(bytes, n_bytes);
+            block_bytes = n_bytes;
+        }
+        in.mark();
+        if ((flag & Writer.COLUMNAR) != 0) {
+            if (!(factory instanceof Item.BlockCoder))
+                throw new IOException("No block decoder for columnar block in trace '" + trace.name() + "'");
+            if (group != null)
+                ((Item.GroupBlockDecoder<E>) factory).readBlock(in, items, group);
+            else
+                ((Item.BlockCoder<E>) factory).readBlock(in, items);
+        } else if (group != null) {
+            final Item.GroupDecoder<E> decoder = (Item.GroupDecoder<E>) factory;
+            while (in.bytesReadSinceMark() < block_bytes) {
+                final E item = decoder.fromBinaryStream(in, group);
+                if (item != null)
+                    items.add(item);
+            }
+        } else {
+            while (in.bytesReadSinceMark() < block_bytes) {
+                items.add(factory.fromBinaryStream(in));
+            }
         }
         return items;
     }
 
-    private void reset() throws IOException {
-        close();
-        init();
-    }
-
     void fastSeek(long time) throws IOException {
         long absolutePosition = seek_map.getOffset(time);
-        if (cis.canFastForwardTo(absolutePosition)) {
-            cis.fastForwardTo(absolutePosition);
-            readHeader();
-        } else {
-            reset();
-            if (cis.canFastForwardTo(absolutePosition)) {
-                cis.fastForwardTo(absolutePosition);
-                readHeader();
-            }
+        if (absolutePosition == Long.MIN_VALUE) // before first index entry
+            absolutePosition = 0;
+        if (!cis.canFastForwardTo(absolutePosition)) {
+            // streams that cannot move backwards need to be re-opened
+            close();
+            open();
         }
+        cis.fastForwardTo(absolutePosition);
+        readHeader();
     }
 
     @Override
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+import java.io.IOException;
+import java.util.List;
+
+/*
+ * Rewrites the index of a trace under a new snapshot policy. Blocks of events
+ * are copied as they are. For stateful traces, the blocks of events are still
+ * decoded to keep track of the state, the old snapshots are dropped and new
+ * ones are written where the new policy asks for them.
+ */
+public final class Reindexer {
+
+    private final static String SUFFIX = ".reindex";
+
+    private final WritableStore _store;
+    private final Trace<?> _trace;
+
+    public Reindexer(WritableStore store, Trace<?> trace) {
+        _store = store;
+        _trace = trace;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void reindex(SnapshotPolicy policy) throws IOException {
+        _trace.set(Trace.snapshotPolicyKey, policy.toString());
+        if (_trace instanceof StatefulTrace) {
+            final StatefulTrace trace = (StatefulTrace) _trace;
+            copyBlocks(trace, new StatefulWriter(trace, SUFFIX), trace.stateFactory());
+        } else {
+            copyBlocks((Trace) _trace, new Writer(_trace, SUFFIX), null);
+        }
+        replace(_trace.traceFile());
+        replace(_trace.indexFile());
+        if (_store.hasFile(_trace.statsFile() + SUFFIX))
+            replace(_trace.statsFile());
+    }
+
+    private <E extends Item> void copyBlocks(Trace<E> trace, Writer<E> writer, Item.Factory<? extends Item> stateFactory) throws IOException {
+        // not memory mapped: the trace file is overwritten once copied
+        final CodedInputStream in = new BufferedCodedInputStream(_store.getInputStream(trace.traceFile()));
+        boolean init_state_set = false;
+        while (!in.isAtEnd()) {
+            final byte flag = in.readByte();
+            final int n_bytes = in.readInt();
+            final long time = in.readSLong();
+            final byte[] bytes = new byte[n_bytes];
+            in.readBytes(bytes, 0, n_bytes);
+            final CodedInputStream block = new BufferedCodedInputStream(bytes, n_bytes);
+            if ((flag & StatefulWriter.STATE) != 0) {
+                // only the initial state is kept
+                if (!init_state_set)
+                    setInitState(writer, time, Reader.readItemBlock(block, flag, n_bytes, stateFactory, trace));
+                init_state_set = true;
+            } else {
+                writer.copyBlock(time, flag, bytes, Reader.readItemBlock(block, flag, n_bytes, trace.factory(), trace));
+            }
+        }
+        in.close();
+        writer.close();
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void setInitState(Writer<?> writer, long time, List<?> states) throws IOException {
+        ((StatefulWriter) writer).setInitState(time, states);
+    }
+
+    private void replace(String file) throws IOException {
+        _store.copy(_store.getInputStream(file + SUFFIX), _store.getOutputStream(file));
+        _store.deleteFile(file + SUFFIX);
+    }
+}
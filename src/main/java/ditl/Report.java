@@ -22,6 +22,8 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Report {
 
@@ -29,6 +31,7 @@ public class Report {
 
     private final BufferedWriter writer;
     private final OutputStream _out;
+    private List<Object> shard_lines = null;
 
     public Report(OutputStream out) throws IOException {
         _out = out;
@@ -40,7 +43,25 @@ public class Report {
     }
 
     public void append(Object line) throws IOException {
-        writer.write(line + "\n");
+        if (shard_lines != null)
+            shard_lines.add(line);
+        else
+            writer.write(line + "\n");
+    }
+
+    // from now on, keep lines in memory until they are merged
+    // (see MergeableReport)
+    protected void bufferLines() {
+        shard_lines = new ArrayList<Object>();
+    }
+
+    // objects that are not lines yet, to be resolved by the merge
+    protected void appendMarker(Object marker) {
+        shard_lines.add(marker);
+    }
+
+    protected List<Object> bufferedLines() {
+        return shard_lines;
     }
 
     public void appendComment(Object comment) throws IOException {
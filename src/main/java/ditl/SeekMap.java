@@ -18,7 +18,6 @@
  *******************************************************************************/
 package ditl;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -35,7 +34,7 @@ public final class SeekMap {
 
     public static SeekMap open(InputStream is) throws IOException {
         SeekMap sm = new SeekMap();
-        CodedInputStream in = new CodedInputStream(new BufferedInputStream(is));
+        CodedInputStream in = new BufferedCodedInputStream(is);
         while (!in.isAtEnd()) {
             sm.byteOffsets.put(in.readSLong(), in.readLong());
         }
@@ -50,6 +49,12 @@ public final class SeekMap {
         return e.getValue();
     }
 
+    // true if the block at 'byteOffset' was indexed at 'timestamp'
+    boolean isMarked(long timestamp, long byteOffset) {
+        final Long offset = byteOffsets.get(timestamp);
+        return offset != null && offset == byteOffset;
+    }
+
     public static final class Writer {
         private final OutputStream _os;
         private final CodedBuffer _buffer;
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+/*
+ * When a writer marks a position in the index of a trace (and, for stateful
+ * traces, writes a snapshot of the full state). Policies are written as
+ * '<type>:<value>' in the 'snapshot policy' property of the trace info:
+ *   events:N    after more than N events since the last mark
+ *   interval:T  once T time units have passed since the last mark
+ *   bytes:B     once B bytes of events have been written since the last mark
+ *   adaptive:R  once the events written since the last mark weigh R times
+ *               the last snapshot (or R * 4KB for traces without states)
+ */
+public final class SnapshotPolicy {
+
+    public enum Type {
+        EVENTS, INTERVAL, BYTES, ADAPTIVE
+    }
+
+    // the historical policy of a mark every 10,000 events
+    public final static SnapshotPolicy DEFAULT = new SnapshotPolicy(Type.EVENTS, 10000);
+
+    private final static long MIN_ADAPTIVE_BYTES = 4096;
+
+    private final Type _type;
+    private final long _value;
+
+    public SnapshotPolicy(Type type, long value) {
+        if (value <= 0)
+            throw new IllegalArgumentException("Snapshot policy value must be positive");
+        _type = type;
+        _value = value;
+    }
+
+    public static SnapshotPolicy fromString(String spec) {
+        final int i = spec.indexOf(':');
+        if (i < 0)
+            throw new IllegalArgumentException("Snapshot policy '" + spec + "' is not of the form <type>:<value>");
+        final Type type = Type.valueOf(spec.substring(0, i).trim().toUpperCase());
+        return new SnapshotPolicy(type, Long.parseLong(spec.substring(i + 1).trim()));
+    }
+
+    static SnapshotPolicy fromTrace(Trace<?> trace) {
+        if (!trace.config.has(Trace.snapshotPolicyKey))
+            return DEFAULT;
+        return fromString(trace.config.getString(Trace.snapshotPolicyKey));
+    }
+
+    boolean isDue(int nEvents, long timeSinceMark, long bytesSinceMark, long stateBytes) {
+        switch (_type) {
+            case INTERVAL:
+                return timeSinceMark >= _value;
+            case BYTES:
+                return bytesSinceMark >= _value;
+            case ADAPTIVE:
+                return bytesSinceMark >= _value * Math.max(stateBytes, MIN_ADAPTIVE_BYTES);
+            default:
+                return nEvents > _value;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return _type.name().toLowerCase() + ":" + _value;
+    }
+}
@@ -21,17 +21,32 @@ package ditl;
 import java.io.IOException;
 import java.io.OutputStream;
 
-public class StateTimeReport extends Report {
+public class StateTimeReport extends Report implements MergeableReport<StateTimeReport> {
 
     protected long prev_time;
     protected Object prev_state;
 
+    // the line for the state at the start of a shard is only known once the
+    // previous shard has been merged
+    private final static class Head {
+        final long end_time;
+
+        Head(long endTime) {
+            end_time = endTime;
+        }
+    }
+
+    private boolean shard_head = false;
+
     public StateTimeReport(OutputStream out) throws IOException {
         super(out);
     }
 
     public void append(long time, Object s) throws IOException {
-        if (prev_state != null)
+        if (shard_head) {
+            appendMarker(new Head(time));
+            shard_head = false;
+        } else if (prev_state != null)
             append(prev_time + " " + (time - prev_time) + " " + prev_state);
         prev_time = time;
         prev_state = s;
@@ -42,4 +57,23 @@ public class StateTimeReport extends Report {
         finish();
     }
 
+    @Override
+    public void startShard(long time) throws IOException {
+        bufferLines();
+        shard_head = true;
+    }
+
+    @Override
+    public void merge(StateTimeReport shard) throws IOException {
+        for (final Object line : shard.bufferedLines())
+            if (line instanceof Head) {
+                if (prev_state != null)
+                    append(prev_time + " " + (((Head) line).end_time - prev_time) + " " + prev_state);
+            } else
+                append(line);
+        if (!shard.shard_head) {
+            prev_time = shard.prev_time;
+            prev_state = shard.prev_state;
+        }
+    }
 }
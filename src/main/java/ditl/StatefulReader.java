@@ -33,6 +33,11 @@ public class StatefulReader<E extends Item, S extends Item> extends Reader<E> {
         state_factory = trace.stateFactory();
     }
 
+    @Override
+    public boolean decodeOnly(Set<Integer> group) {
+        return canDecodeOnly(state_factory) && super.decodeOnly(group);
+    }
+
     public Set<S> referenceState() {
         return _updater.states();
     }
@@ -67,7 +72,7 @@ public class StatefulReader<E extends Item, S extends Item> extends Reader<E> {
 
     @Override
     public void step() throws IOException {
-        if (next_flag == StatefulWriter.STATE) {
+        if ((next_flag & StatefulWriter.STATE) != 0) {
             skipBlock();
             readHeader();
         }
@@ -21,18 +21,27 @@ package ditl;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 public class StatefulWriter<E extends Item, S extends Item> extends Writer<E> {
 
     private final StateUpdater<E, S> _updater;
+    private final Item.BlockCoder<S> state_coder;
+    private final Item.Factory<S> state_factory;
     private boolean init_state_set = false;
 
     final static byte STATE = 1;
 
     public StatefulWriter(StatefulTrace<E, S> trace) throws IOException {
-        super(trace);
+        this(trace, "");
+    }
+
+    StatefulWriter(StatefulTrace<E, S> trace, String suffix) throws IOException {
+        super(trace, suffix);
         _updater = trace.getNewUpdaterFactory();
+        state_factory = trace.stateFactory();
+        state_coder = blockCoder(state_factory);
     }
 
     public Set<S> states() {
@@ -57,10 +66,31 @@ public class StatefulWriter<E extends Item, S extends Item> extends Writer<E> {
     @Override
     void markPosition(long time) throws IOException {
         super.markPosition(time);
-        for (S state : _updater.states()) {
-            state.write(buffer);
+        final Set<S> states = _updater.states();
+        if (state_coder != null && states.size() >= MIN_COLUMNAR_BLOCK_SIZE) {
+            state_coder.writeBlock(buffer, states);
+            writeItemBlock((byte) (STATE | COLUMNAR), time);
+        } else {
+            for (S state : states) {
+                state.write(buffer);
+            }
+            writeItemBlock(STATE, time);
         }
-        writeItemBlockHeader(STATE, time);
-        writeItemBlock();
+        state_bytes = total_bytes_written - mark_bytes;
+        mark_bytes = total_bytes_written;
+    }
+
+    // note that spliced blocks do not update the states
+    @Override
+    protected boolean canSplice(Trace<?> from) {
+        return super.canSplice(from)
+                && ((StatefulTrace<?, ?>) from).stateFactory().getClass() == state_factory.getClass();
+    }
+
+    @Override
+    void copyBlock(long time, byte flag, byte[] bytes, List<E> events) throws IOException {
+        super.copyBlock(time, flag, bytes, events);
+        for (final E event : events)
+            _updater.handleEvent(time, event);
     }
 }
@@ -26,6 +26,7 @@ import java.io.InputStreamReader;
 import java.io.StringWriter;
 import java.lang.reflect.Constructor;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -35,19 +36,19 @@ import java.util.Set;
 
 import net.sf.json.JSONObject;
 
-import org.reflections.Reflections;
-import org.reflections.scanners.TypeAnnotationsScanner;
-
 public abstract class Store {
 
     final protected static String snapshotsFile = "snapshots";
     final protected static String infoFile = "info";
     final protected static String traceFile = "trace";
     final protected static String indexFile = "index";
+    final protected static String statsFile = "stats";
 
     protected String separator = "/";
 
-    final Map<String, Trace<?>> traces = new HashMap<String, Trace<?>>();
+    // synchronized so that several converters may load and create traces
+    // concurrently in the same store
+    final Map<String, Trace<?>> traces = Collections.synchronizedMap(new HashMap<String, Trace<?>>());
     final static Map<String, Class<? extends Trace<?>>> type_class_map = buildTypeClassMap();
 
     private final Set<Reader<?>> openReaders = new HashSet<Reader<?>>();
@@ -57,8 +58,7 @@ public abstract class Store {
     private static Map<String, Class<? extends Trace<?>>> buildTypeClassMap() {
         final Map<String, Class<? extends Trace<?>>> type_class = new HashMap<String, Class<? extends Trace<?>>>();
         if (type_class.isEmpty()) {
-            final Set<Class<?>> traceClasses = new Reflections("ditl", new TypeAnnotationsScanner()).
-                    getTypesAnnotatedWith(Trace.Type.class);
+            final Set<Class<?>> traceClasses = ClassIndex.getTypesAnnotatedWith(Trace.Type.class);
             for (final Class<?> klass : traceClasses)
                 if (Trace.class.isAssignableFrom(klass))
                     type_class.put(klass.getAnnotation(Trace.Type.class).value(),
@@ -79,6 +79,10 @@ public abstract class Store {
         return name + separator + indexFile;
     }
 
+    String statsFile(String name) {
+        return name + separator + statsFile;
+    }
+
     public Collection<Trace<?>> listTraces() {
         return traces.values();
     }
@@ -86,9 +90,11 @@ public abstract class Store {
     @SuppressWarnings("unchecked")
     public <T extends Trace<?>> List<T> listTraces(Class<T> klass) {
         final List<T> list = new LinkedList<T>();
-        for (final Trace<?> trace : traces.values())
-            if (klass.equals(trace.getClass()))
-                list.add((T) trace);
+        synchronized (traces) {
+            for (final Trace<?> trace : traces.values())
+                if (klass.equals(trace.getClass()))
+                    list.add((T) trace);
+        }
         return list;
     }
 
@@ -108,6 +114,10 @@ public abstract class Store {
 
     public abstract InputStream getInputStream(String name) throws IOException;
 
+    CodedInputStream getCodedInputStream(String name) throws IOException {
+        return new BufferedCodedInputStream(getInputStream(name));
+    }
+
     public String getTraceResource(Trace<?> trace, String resource) throws IOException {
         return trace.name() + separator + resource;
     }
@@ -135,20 +145,26 @@ public abstract class Store {
     }
 
     void notifyClose(Reader<?> reader) {
-        if (!closing)
-            openReaders.remove(reader);
+        synchronized (openReaders) {
+            if (!closing)
+                openReaders.remove(reader);
+        }
     }
 
     void notifyOpen(Reader<?> reader) {
-        openReaders.add(reader);
+        synchronized (openReaders) {
+            openReaders.add(reader);
+        }
     }
 
     public void close() throws IOException {
-        closing = true;
-        for (final Reader<?> reader : openReaders)
-            reader.close();
-        openReaders.clear();
-        closing = false;
+        synchronized (openReaders) {
+            closing = true;
+            for (final Reader<?> reader : openReaders)
+                reader.close();
+            openReaders.clear();
+            closing = false;
+        }
     }
 
     public Class<? extends Trace<?>> getTraceClass(String type) throws ClassNotFoundException {
@@ -43,8 +43,12 @@ public class SubtraceConverter implements Converter {
             ((StatefulWriter) writer).setInitState(_minTime,
                     ((StatefulReader) reader).referenceState());
         }
-        while (reader.hasNext() && reader.nextTime() <= _maxTime) {
-            writer.handle(reader.nextTime(), reader.next());
+        if (writer.canSplice(_from)) {
+            splice(reader, writer);
+        } else {
+            while (reader.hasNext() && reader.nextTime() <= _maxTime) {
+                writer.handle(reader.nextTime(), reader.next());
+            }
         }
         writer.setProperty(Trace.minTimeKey, _minTime);
         writer.setProperty(Trace.maxTimeKey, _maxTime);
@@ -54,4 +58,31 @@ public class SubtraceConverter implements Converter {
         reader.close();
         writer.close();
     }
+
+    // copies the blocks after the initial state as they are, up to _maxTime.
+    // A snapshot is only copied along with the events that follow it.
+    private void splice(Reader<?> reader, Writer<?> writer) throws IOException {
+        byte[] state = null;
+        byte state_flag = 0;
+        long state_time = 0;
+        boolean state_marked = false;
+        while (reader.hasNext() && reader.nextTime() <= _maxTime) {
+            final byte flag = reader.next_flag;
+            final long time = reader.nextTime();
+            final boolean marked = reader.seek_map.isMarked(time, reader.next_block_offset);
+            final byte[] bytes = reader.nextRawBlock();
+            if ((flag & StatefulWriter.STATE) != 0) {
+                state = bytes;
+                state_flag = flag;
+                state_time = time;
+                state_marked = marked;
+            } else {
+                if (state != null) {
+                    writer.spliceBlock(state_time, state_flag, state, state_marked);
+                    state = null;
+                }
+                writer.spliceBlock(time, flag, bytes, marked);
+            }
+        }
+    }
 }
@@ -44,7 +44,11 @@ public abstract class Trace<E extends Item> {
             minTimeKey = "min time",
             maxTimeKey = "max time",
             defaultPriorityKey = "default priority",
-            idMapKey = "id map";
+            idMapKey = "id map",
+            columnarKey = "columnar blocks",
+            compressionKey = "compression",
+            snapshotPolicyKey = "snapshot policy",
+            blockStatsKey = "block stats";
 
     final public static int
             defaultPriority = 100,
@@ -84,6 +88,10 @@ public abstract class Trace<E extends Item> {
         return _store.traceFile(_name);
     }
 
+    String statsFile() {
+        return _store.statsFile(_name);
+    }
+
     String infoFile() {
         return _store.infoFile(_name);
     }
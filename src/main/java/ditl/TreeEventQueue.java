@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.TreeMap;
+
+final class TreeEventQueue<E> extends EventQueue<E> {
+
+    private final TreeMap<Long, List<E>> buffer = new TreeMap<Long, List<E>>();
+
+    @Override
+    void clear() {
+        buffer.clear();
+    }
+
+    private List<E> eventsAt(long time) {
+        List<E> eventsAtTime = buffer.get(time);
+        if (eventsAtTime == null) {
+            eventsAtTime = new LinkedList<E>();
+            buffer.put(time, eventsAtTime);
+        }
+        return eventsAtTime;
+    }
+
+    @Override
+    void add(long time, E event) {
+        eventsAt(time).add(event);
+    }
+
+    @Override
+    void addAll(long time, Collection<E> events) {
+        eventsAt(time).addAll(events);
+    }
+
+    @Override
+    boolean isEmpty() {
+        return buffer.isEmpty();
+    }
+
+    @Override
+    long firstTime() {
+        return buffer.firstKey();
+    }
+
+    @Override
+    List<E> pollFirst() {
+        return buffer.pollFirstEntry().getValue();
+    }
+
+    @Override
+    boolean removeAfterTime(long time, Matcher<E> matcher) {
+        boolean changed = false;
+        final Iterator<List<E>> i = buffer.tailMap(time).values().iterator();
+        while (i.hasNext()) {
+            final List<E> events = i.next();
+            final Iterator<E> j = events.iterator();
+            while (j.hasNext()) {
+                final E event = j.next();
+                if (matcher.matches(event)) {
+                    j.remove();
+                    changed = true;
+                }
+            }
+            if (events.isEmpty())
+                i.remove();
+        }
+        return changed;
+    }
+}
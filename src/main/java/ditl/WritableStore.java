@@ -25,7 +25,9 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import net.sf.json.JSONObject;
@@ -33,6 +35,7 @@ import net.sf.json.JSONObject;
 public abstract class WritableStore extends Store {
 
     private final Map<String, Writer<?>> openWriters = new HashMap<String, Writer<?>>();
+    private final JSONObject trace_defaults = new JSONObject();
 
     public WritableStore() throws IOException {
         super();
@@ -61,7 +64,9 @@ public abstract class WritableStore extends Store {
     }
 
     void notifyClose(String name) throws IOException {
-        openWriters.remove(name);
+        synchronized (openWriters) {
+            openWriters.remove(name);
+        }
         try {
             loadTrace(name);
         } catch (final Exception e) {
@@ -69,18 +74,23 @@ public abstract class WritableStore extends Store {
         }
     }
 
+    // fails if another writer is already open on the same trace
     void notifyOpen(String name, Writer<?> writer) throws IOException {
-        openWriters.put(name, writer);
-    }
-
-    boolean isAlreadyWriting(String name) {
-        return openWriters.containsKey(name);
+        synchronized (openWriters) {
+            if (openWriters.containsKey(name))
+                throw new IOException("Trace '" + name + "' is already being written");
+            openWriters.put(name, writer);
+        }
     }
 
     @Override
     public void close() throws IOException {
         super.close();
-        for (final Writer<?> writer : openWriters.values())
+        final List<Writer<?>> writers;
+        synchronized (openWriters) {
+            writers = new ArrayList<Writer<?>>(openWriters.values());
+        }
+        for (final Writer<?> writer : writers)
             writer.close();
     }
 
@@ -100,7 +110,8 @@ public abstract class WritableStore extends Store {
         final String[] files = new String[] {
                 infoFile(trace.name()),
                 trace instanceof StatefulTrace ? indexFile(trace.name()) : null,
-                traceFile(trace.name()) };
+                traceFile(trace.name()),
+                store.hasFile(statsFile(trace.name())) ? statsFile(trace.name()) : null };
         for (final String file : files)
             if (file != null) {
                 final InputStream in = store.getInputStream(file);
@@ -116,7 +127,14 @@ public abstract class WritableStore extends Store {
     public <T extends Trace<?>> T newTrace(String name, Class<T> klass, boolean force) throws IOException, ClassNotFoundException {
         if (traces.containsKey(name) && !force)
             throw new IOException("A trace with name '" + name + "' already exists!");
-        return buildTrace(name, new JSONObject(), klass);
+        final JSONObject config = new JSONObject();
+        config.putAll(trace_defaults);
+        return buildTrace(name, config, klass);
+    }
+
+    // properties (e.g., block format) set on every trace created in this store
+    public void setTraceDefault(String key, Object value) {
+        trace_defaults.put(key, value);
     }
 
 }
@@ -21,57 +21,99 @@ package ditl;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import net.sf.json.JSONObject;
 
 public class Writer<I extends Item> extends Bus<I> implements Listener<I> {
 
-    // trigger an index action every 10,000 events
-    private final static int N_EVENT_TRIGGER = 10000;
-
     private final static int HEADER_BUFFER_SIZE = 32;
 
+    // block flag for items encoded by an Item.BlockCoder
+    final static byte COLUMNAR = 2;
+    // smaller blocks are cheaper to write item by item
+    final static int MIN_COLUMNAR_BLOCK_SIZE = 8;
+    // smaller blocks are not worth compressing
+    private final static int MIN_COMPRESSED_BLOCK_BYTES = 64;
+
     private final BufferedOutputStream out;
     private final SeekMap.Writer sm;
     final CodedBuffer buffer = new CodedBuffer();
     private final CodedBuffer header_buffer = new CodedBuffer(HEADER_BUFFER_SIZE);
+    private final CodedBuffer compressed_buffer = new CodedBuffer();
     long max_time;
     long min_time;
     private int n_events = 0;
-    private int total_bytes_written = 0;
+    long total_bytes_written = 0;
+    // position, time and state size of the last index mark
+    long mark_bytes = 0;
+    private long mark_time = Long.MIN_VALUE;
+    long state_bytes = 0;
     private long max_update_interval = 1;
 
     private final WritableStore _store;
     private final Trace<I> _trace;
+    private final Item.BlockCoder<I> block_coder;
+    private final List<I> block_items = new ArrayList<I>();
+    private final Compression compression;
+    private final SnapshotPolicy snapshot_policy;
+    private final BlockStats.Writer stats;
+    private final Item.NodeIdReporter<I> id_reporter;
+    private int n_block_items = 0;
 
     public Writer(Trace<I> trace) throws IOException {
+        this(trace, "");
+    }
+
+    // writes to the files of the trace with a suffix, see Reindexer
+    @SuppressWarnings("unchecked")
+    Writer(Trace<I> trace, String suffix) throws IOException {
         if (!(trace._store instanceof WritableStore))
             throw new IOException();
         _store = (WritableStore) trace._store;
-        if (_store.isAlreadyWriting(trace.name()))
-            throw new IOException();
         _trace = trace;
         _store.notifyOpen(trace.name(), this);
-        sm = new SeekMap.Writer(_store.getOutputStream(trace.indexFile()));
-        out = new BufferedOutputStream(_store.getOutputStream(trace.traceFile()));
+        sm = new SeekMap.Writer(_store.getOutputStream(trace.indexFile() + suffix));
+        out = new BufferedOutputStream(_store.getOutputStream(trace.traceFile() + suffix));
         min_time = Long.MAX_VALUE;
         max_time = Long.MIN_VALUE;
+        block_coder = blockCoder(trace.factory());
+        compression = Compression.fromName(trace.config.optString(Trace.compressionKey, Compression.NONE.name()));
+        snapshot_policy = SnapshotPolicy.fromTrace(trace);
+        if (trace.config.optBoolean(Trace.blockStatsKey) && trace.factory() instanceof Item.NodeIdReporter) {
+            stats = new BlockStats.Writer(_store.getOutputStream(trace.statsFile() + suffix));
+            id_reporter = (Item.NodeIdReporter<I>) trace.factory();
+        } else {
+            stats = null;
+            id_reporter = null;
+        }
         addListener(this);
     }
 
+    @SuppressWarnings("unchecked")
+    <T> Item.BlockCoder<T> blockCoder(Item.Factory<T> factory) {
+        if (_trace.config.optBoolean(Trace.columnarKey) && factory instanceof Item.BlockCoder)
+            return (Item.BlockCoder<T>) factory;
+        return null;
+    }
+
     void setRemainingInfo() {
         _trace.set(Trace.maxUpdateIntervalKey, max_update_interval);
         _trace.setIfUnset(Trace.maxTimeKey, max_time);
         _trace.setIfUnset(Trace.minTimeKey, min_time);
         _trace.setIfUnset(Trace.defaultPriorityKey, Trace.defaultPriority);
+        _trace.set(Trace.snapshotPolicyKey, snapshot_policy.toString());
     }
 
     public void close() throws IOException {
-        if (!buffer.isEmpty())
+        if (!buffer.isEmpty() || !block_items.isEmpty())
             flushBuffer();
         out.close();
         sm.close();
+        if (stats != null)
+            stats.close();
         setRemainingInfo();
         OutputStreamWriter info_os = new OutputStreamWriter(_store.getOutputStream(_trace.infoFile()));
         info_os.write(_trace.config.toString(4));
@@ -107,7 +149,14 @@ public class Writer<I extends Item> extends Bus<I> implements Listener<I> {
     }
 
     void write(long time, I item) throws IOException {
-        item.write(buffer);
+        if (stats != null) {
+            id_reporter.reportNodeIds(item, stats.ids);
+            n_block_items++;
+        }
+        if (block_coder != null)
+            block_items.add(item);
+        else
+            item.write(buffer);
     }
 
     private void updateTime(long time) throws IOException {
@@ -119,35 +168,126 @@ public class Writer<I extends Item> extends Bus<I> implements Listener<I> {
         if (time > max_time) {
             if (max_time != Long.MIN_VALUE) {
                 flushBuffer();
-                if (time - max_time > max_update_interval)
-                    max_update_interval = time - max_time;
-                if (n_events > N_EVENT_TRIGGER)
-                    markPosition(time);
+                newTime(time);
             }
             max_time = time;
         }
 
     }
 
+    private void newTime(long time) throws IOException {
+        if (time - max_time > max_update_interval)
+            max_update_interval = time - max_time;
+        final long since = time - ((mark_time == Long.MIN_VALUE) ? min_time : mark_time);
+        if (snapshot_policy.isDue(n_events, since, total_bytes_written - mark_bytes, state_bytes))
+            markPosition(time);
+    }
+
     void markPosition(long time) throws IOException {
         sm.append(time, total_bytes_written);
         n_events = 0;
+        mark_time = time;
+        mark_bytes = total_bytes_written;
     }
 
-    private void flushBuffer() throws IOException {
-        writeItemBlockHeader((byte) 0, max_time);
-        writeItemBlock();
+    // appends a block of events that is already encoded, see Reindexer
+    void copyBlock(long time, byte flag, byte[] bytes, List<I> items) throws IOException {
+        if (time < max_time)
+            throw new IOException("Block at time " + time + " is out of order");
+        if (time < min_time)
+            min_time = time;
+        if (time > max_time) {
+            if (max_time != Long.MIN_VALUE)
+                newTime(time);
+            max_time = time;
+        }
+        if (stats != null) {
+            for (final I item : items)
+                id_reporter.reportNodeIds(item, stats.ids);
+            stats.endBlock(total_bytes_written, items.size());
+        }
+        writeRawBlock(flag, time, bytes);
+        n_events += items.size();
     }
 
-    void writeItemBlock() throws IOException {
-        total_bytes_written += buffer.flush(out);
+    // true if the blocks of 'from' can be spliced into this trace as they
+    // are, i.e., they are decoded by the same factory and were written with
+    // the same options
+    protected boolean canSplice(Trace<?> from) {
+        return stats == null
+                && from.factory().getClass() == _trace.factory().getClass()
+                && compression == Compression.fromName(from.config.optString(Trace.compressionKey, Compression.NONE.name()))
+                && _trace.config.optBoolean(Trace.columnarKey) == from.config.optBoolean(Trace.columnarKey)
+                && snapshot_policy.toString().equals(SnapshotPolicy.fromTrace(from).toString());
     }
 
-    void writeItemBlockHeader(byte flag, long time) throws IOException {
+    // appends a block copied from another trace without decoding it, see
+    // SubtraceConverter. The snapshot policy is not applied: since both
+    // traces share it, the block is indexed if it was marked in the original
+    // trace, as are all snapshots.
+    void spliceBlock(long time, byte flag, byte[] bytes, boolean marked) throws IOException {
+        if (time < max_time)
+            throw new IOException("Block at time " + time + " is out of order");
+        if (time < min_time)
+            min_time = time;
+        if (time > max_time) {
+            if (max_time != Long.MIN_VALUE && time - max_time > max_update_interval)
+                max_update_interval = time - max_time;
+            max_time = time;
+        }
+        if (marked || (flag & StatefulWriter.STATE) != 0) {
+            sm.append(time, total_bytes_written);
+            mark_time = time;
+            mark_bytes = total_bytes_written;
+        }
+        writeRawBlock(flag, time, bytes);
+    }
+
+    private void writeRawBlock(byte flag, long time, byte[] bytes) throws IOException {
+        header_buffer.writeByte(flag);
+        header_buffer.writeInt(bytes.length);
+        header_buffer.writeSLong(time);
+        total_bytes_written += header_buffer.flush(out);
+        out.write(bytes);
+        total_bytes_written += bytes.length;
+    }
+
+    private void flushBuffer() throws IOException {
+        byte flag = 0;
+        if (block_items.size() >= MIN_COLUMNAR_BLOCK_SIZE) {
+            block_coder.writeBlock(buffer, block_items);
+            flag = COLUMNAR;
+        } else {
+            for (final I item : block_items)
+                item.write(buffer);
+        }
+        block_items.clear();
+        writeItemBlock(flag, max_time);
+    }
+
+    void writeItemBlock(byte flag, long time) throws IOException {
+        CodedBuffer block = buffer;
+        final int n_bytes = buffer.bytesInBuffer();
+        if (compression != Compression.NONE && n_bytes >= MIN_COMPRESSED_BLOCK_BYTES) {
+            // compressed blocks start with their uncompressed length
+            compressed_buffer.writeInt(n_bytes);
+            compression.compress(buffer.bytes(), n_bytes, compressed_buffer);
+            if (compressed_buffer.bytesInBuffer() < n_bytes) {
+                block = compressed_buffer;
+                flag |= compression.flag();
+            }
+        }
+        if (stats != null && (flag & StatefulWriter.STATE) == 0) {
+            stats.endBlock(total_bytes_written, n_block_items);
+            n_block_items = 0;
+        }
         header_buffer.writeByte(flag);
-        header_buffer.writeInt(buffer.bytesInBuffer());
+        header_buffer.writeInt(block.bytesInBuffer());
         header_buffer.writeSLong(time);
         total_bytes_written += header_buffer.flush(out);
+        total_bytes_written += block.flush(out);
+        buffer.clear();
+        compressed_buffer.clear();
     }
 
     @Override
@@ -61,7 +61,8 @@ public abstract class App {
             forceOption = "force",
             typeOption = "type",
             stringIdsOption = "string-ids",
-            minIdOption = "min-id";
+            minIdOption = "min-id",
+            threadsOption = "threads";
 
     protected Options options = new Options();
     protected String usageString;
@@ -25,8 +25,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
-import org.reflections.Reflections;
-import org.reflections.scanners.TypeAnnotationsScanner;
+import ditl.ClassIndex;
 
 public class CLI {
 
@@ -135,8 +134,7 @@ public class CLI {
     }
 
     private void findPackages() throws IOException {
-        final Set<Class<?>> appKlasses = new Reflections("ditl", new TypeAnnotationsScanner()).
-                getTypesAnnotatedWith(App.Cli.class);
+        final Set<Class<?>> appKlasses = ClassIndex.getTypesAnnotatedWith(App.Cli.class);
         for (final Class<?> klass : appKlasses) {
             final String pkg_name = klass.getAnnotation(App.Cli.class).pkg();
             final String cmd_name = klass.getAnnotation(App.Cli.class).cmd();
@@ -35,11 +35,13 @@ public abstract class ConvertApp extends App {
     protected Store orig_store;
     protected WritableStore dest_store;
     protected boolean force;
+    protected final WriterOptions writer_options = new WriterOptions();
 
     @Override
     protected void initOptions() {
         options.addOption(new Option("f", forceOption, false, "Force overwrite existing traces."));
         options.addOption(null, storeOutputOption, true, "Name of store to output new traces to");
+        writer_options.setOptions(options);
     }
 
     @Override
@@ -48,11 +50,13 @@ public abstract class ConvertApp extends App {
         orig_store_file = new File(args[0]);
         dest_store_file = new File(cli.getOptionValue(storeOutputOption, args[0]));
         force = cli.hasOption(forceOption);
+        writer_options.parse(cli);
     }
 
     @Override
     protected void init() throws Exception {
         dest_store = WritableStore.open(dest_store_file);
+        writer_options.apply(dest_store);
         if (orig_store_file.equals(dest_store_file))
             orig_store = dest_store;
         else
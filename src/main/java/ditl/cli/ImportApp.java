@@ -28,11 +28,13 @@ public abstract class ImportApp extends WriteApp {
 
     protected String in_file_name;
     protected InputStream _in;
+    protected int n_threads;
 
     @Override
     protected void initOptions() {
         super.initOptions();
         options.addOption(null, outputOption, true, "output file");
+        options.addOption(null, threadsOption, true, "number of threads parsing the input file (default: 1)");
     }
 
     @Override
@@ -40,6 +42,7 @@ public abstract class ImportApp extends WriteApp {
             throws ParseException, ArrayIndexOutOfBoundsException, HelpException {
         super.parseArgs(cli, args);
         in_file_name = args[1];
+        n_threads = Integer.parseInt(cli.getOptionValue(threadsOption, "1"));
     }
 
     @Override
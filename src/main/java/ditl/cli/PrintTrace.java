@@ -19,10 +19,16 @@
 package ditl.cli;
 
 import java.io.IOException;
+import java.util.Set;
+
+import net.sf.json.JSONArray;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.ParseException;
 
+import ditl.BlockStats;
+import ditl.Groups;
+import ditl.Item;
 import ditl.Reader;
 import ditl.StatefulReader;
 import ditl.StatefulTrace;
@@ -31,35 +37,66 @@ import ditl.Trace;
 @App.Cli(cmd = "pt")
 public class PrintTrace extends ReadOnlyApp {
 
+    private final static String nodesOption = "nodes";
+
     private String trace_name;
+    private JSONArray nodes_json = null;
+    private final BlockStats.Collector ids = new BlockStats.Collector();
+
+    @Override
+    protected void initOptions() {
+        super.initOptions();
+        options.addOption(null, nodesOption, true, "only print items mentioning these nodes (JSON, e.g. [1,[4,8]])");
+    }
 
     @Override
     protected void parseArgs(CommandLine cli, String[] args) throws ParseException, HelpException, ArrayIndexOutOfBoundsException {
         super.parseArgs(cli, args);
         trace_name = args[1];
+        if (cli.hasOption(nodesOption))
+            nodes_json = JSONArray.fromObject(cli.getOptionValue(nodesOption));
     }
 
-    @SuppressWarnings("rawtypes")
+    @SuppressWarnings({ "rawtypes", "unchecked" })
     @Override
     protected void run() throws IOException {
         final Trace trace = _store.getTrace(trace_name);
         final Reader reader = trace.getReader();
+        Set<Integer> nodes = null;
+        if (nodes_json != null) {
+            nodes = Groups.parse(nodes_json, trace.idMap());
+            reader.skipBlocksWithout(nodes);
+        }
         if (trace instanceof StatefulTrace) {
             reader.seek(trace.minTime());
+            final Item.Factory stateFactory = ((StatefulTrace) trace).stateFactory();
             for (Object state : ((StatefulReader) reader).referenceState()) {
-                System.out.println(trace.minTime() + " " + state);
+                if (mentions(stateFactory, state, nodes))
+                    System.out.println(trace.minTime() + " " + state);
             }
             System.out.println("-----------------------------");
         }
         while (reader.hasNext()) {
             long time = reader.nextTime();
             for (Object obj : reader.next()) {
-                System.out.println(time + " " + obj);
+                if (mentions(trace.factory(), obj, nodes))
+                    System.out.println(time + " " + obj);
             }
         }
         reader.close();
     }
 
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private boolean mentions(Item.Factory factory, Object item, Set<Integer> nodes) throws IOException {
+        if (nodes == null)
+            return true;
+        if (!(factory instanceof Item.NodeIdReporter))
+            throw new IOException("Items of trace '" + trace_name + "' do not report their nodes");
+        ids.clear();
+        ((Item.NodeIdReporter) factory).reportNodeIds(item, ids);
+        return ids.mentionsAny(nodes);
+    }
+
     @Override
     protected String getUsageString() {
         return "[OPTIONS] STORE TRACE_NAME TIME";
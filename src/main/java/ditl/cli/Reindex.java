@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.ParseException;
+
+import ditl.Reindexer;
+import ditl.SnapshotPolicy;
+import ditl.Trace;
+
+@App.Cli(cmd = "reindex")
+public class Reindex extends WriteApp {
+
+    private String trace_name;
+    private SnapshotPolicy policy;
+
+    @Override
+    protected void parseArgs(CommandLine cli, String[] args) throws ParseException, HelpException, ArrayIndexOutOfBoundsException {
+        super.parseArgs(cli, args);
+        trace_name = args[1];
+        policy = WriterOptions.parseSnapshotPolicy(args[2]);
+    }
+
+    @Override
+    protected String getUsageString() {
+        return "[OPTIONS] STORE TRACE POLICY";
+    }
+
+    @Override
+    protected void run() throws Exception {
+        final Trace<?> trace = _store.getTrace(trace_name);
+        new Reindexer(_store, trace).reindex(policy);
+    }
+}
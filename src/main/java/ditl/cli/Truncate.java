@@ -51,6 +51,7 @@ public class Truncate extends ConvertApp {
             minTime = Long.parseLong(args[2]);
             maxTime = Long.parseLong(args[3]);
             force = cli.hasOption(forceOption);
+            writer_options.parse(cli);
         }
     }
 
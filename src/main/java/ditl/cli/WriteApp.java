@@ -32,10 +32,12 @@ public abstract class WriteApp extends App {
     protected File store_file;
     protected WritableStore _store;
     protected boolean force;
+    protected final WriterOptions writer_options = new WriterOptions();
 
     @Override
     protected void initOptions() {
         options.addOption(new Option("f", forceOption, false, "Force overwrite existing traces."));
+        writer_options.setOptions(options);
     }
 
     @Override
@@ -43,11 +45,13 @@ public abstract class WriteApp extends App {
             throws ParseException, ArrayIndexOutOfBoundsException, HelpException {
         store_file = new File(args[0]);
         force = cli.hasOption(forceOption);
+        writer_options.parse(cli);
     }
 
     @Override
     protected void init() throws Exception {
         _store = WritableStore.open(store_file);
+        writer_options.apply(_store);
     }
 
     @Override
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import ditl.Compression;
+import ditl.SnapshotPolicy;
+import ditl.Trace;
+import ditl.WritableStore;
+
+public final class WriterOptions {
+
+    private final static String
+            columnarOption = "columnar",
+            compressionOption = "compression",
+            snapshotPolicyOption = "snapshot-policy",
+            blockStatsOption = "block-stats";
+
+    private boolean columnar = false;
+    private Compression compression = Compression.NONE;
+    private SnapshotPolicy snapshot_policy = null;
+    private boolean block_stats = false;
+
+    public void setOptions(Options options) {
+        options.addOption(null, columnarOption, false, "write columnar delta-coded blocks when supported by the trace type");
+        options.addOption(null, compressionOption, true, "compress trace blocks [none, deflate, lz] (default: none)");
+        options.addOption(null, blockStatsOption, false, "write per-block node statistics that let readers skip irrelevant blocks");
+        options.addOption(null, snapshotPolicyOption, true, "when to index and snapshot traces [events:N, interval:T, bytes:B, adaptive:R] (default: " + SnapshotPolicy.DEFAULT + ")");
+    }
+
+    public void parse(CommandLine cli) throws ParseException {
+        columnar = cli.hasOption(columnarOption);
+        block_stats = cli.hasOption(blockStatsOption);
+        if (cli.hasOption(compressionOption)) {
+            try {
+                compression = Compression.fromName(cli.getOptionValue(compressionOption));
+            } catch (final IllegalArgumentException e) {
+                throw new ParseException("Unknown compression '" + cli.getOptionValue(compressionOption) + "'");
+            }
+        }
+        if (cli.hasOption(snapshotPolicyOption))
+            snapshot_policy = parseSnapshotPolicy(cli.getOptionValue(snapshotPolicyOption));
+    }
+
+    public static SnapshotPolicy parseSnapshotPolicy(String spec) throws ParseException {
+        try {
+            return SnapshotPolicy.fromString(spec);
+        } catch (final IllegalArgumentException e) {
+            throw new ParseException("Invalid snapshot policy '" + spec + "'");
+        }
+    }
+
+    public void apply(WritableStore store) {
+        if (columnar)
+            store.setTraceDefault(Trace.columnarKey, true);
+        if (compression != Compression.NONE)
+            store.setTraceDefault(Trace.compressionKey, compression.name().toLowerCase());
+        if (block_stats)
+            store.setTraceDefault(Trace.blockStatsKey, true);
+        if (snapshot_policy != null)
+            store.setTraceDefault(Trace.snapshotPolicyKey, snapshot_policy.toString());
+    }
+}
@@ -19,10 +19,12 @@
 package ditl.graphs;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.List;
 
 import ditl.Bus;
 import ditl.Converter;
@@ -50,14 +52,24 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
     private final long eta;
     private boolean init_state_set = false;
     private long min_time;
+    private final ArcBitsets bitsets;
 
     public AddingReachableConverter(ReachabilityTrace addedTrace, ReachabilityFamily family1, ReachabilityFamily family2, long delay) {
+        this(addedTrace, family1, family2, delay, false);
+    }
+
+    // with useBitsets, arc scores and waypoints are kept in primitive arrays
+    // and bitsets (see ArcBitsets). The events of each time step are then
+    // written in order of first appearance of their nodes.
+    public AddingReachableConverter(ReachabilityTrace addedTrace, ReachabilityFamily family1, ReachabilityFamily family2, long delay,
+            boolean useBitsets) {
         added_trace = addedTrace;
         _family1 = family1;
         _family2 = family2;
         _delay = delay;
         eta = family1.eta();
         tau = family1.tau();
+        bitsets = useBitsets ? new ArcBitsets() : null;
     }
 
     @Override
@@ -109,32 +121,46 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
         update_bus.queue(time, Collections.<Object> emptyList());
     }
 
-    private final class Waypoints {
+    private interface Waypoints {
+        void addDeltaArc(Arc de);
+
+        void addShiftedMuArc(Arc me);
+
+        void removeDeltaArc(Arc de);
+
+        void removeShiftedMuArc(Arc me);
+    }
+
+    private final class HashWaypoints implements Waypoints {
         AdjacencySet.Arcs delta_arcs = new AdjacencySet.Arcs();
         AdjacencySet.Arcs mu_arcs = new AdjacencySet.Arcs();
 
-        void addDeltaArc(Arc de) {
+        @Override
+        public void addDeltaArc(Arc de) {
             delta_arcs.add(de.reverse());
             for (final Integer to : mu_arcs.getNext(de.to))
                 if (!to.equals(de.from)) // prevent loops on self
                     increment(new Arc(de.from, to));
         }
 
-        void addShiftedMuArc(Arc me) {
+        @Override
+        public void addShiftedMuArc(Arc me) {
             mu_arcs.add(me);
             for (final Integer from : delta_arcs.getNext(me.from))
                 if (!from.equals(me.to)) // prevent loops on self
                     increment(new Arc(from, me.to));
         }
 
-        void removeDeltaArc(Arc de) {
+        @Override
+        public void removeDeltaArc(Arc de) {
             delta_arcs.remove(de.reverse());
             for (final Integer to : mu_arcs.getNext(de.to))
                 if (!to.equals(de.from)) // prevent loops on self
                     decrement(new Arc(de.from, to));
         }
 
-        void removeShiftedMuArc(Arc me) {
+        @Override
+        public void removeShiftedMuArc(Arc me) {
             mu_arcs.remove(me);
             for (final Integer from : delta_arcs.getNext(me.from))
                 if (!from.equals(me.to)) // prevent loops on self
@@ -143,6 +169,30 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
 
     };
 
+    private final class BitsetWaypoints implements Waypoints {
+        final ArcBitsets.Waypoints waypoints = bitsets.new Waypoints();
+
+        @Override
+        public void addDeltaArc(Arc de) {
+            waypoints.addDeltaArc(bitsets.index(de.from), bitsets.index(de.to));
+        }
+
+        @Override
+        public void addShiftedMuArc(Arc me) {
+            waypoints.addShiftedMuArc(bitsets.index(me.from), bitsets.index(me.to));
+        }
+
+        @Override
+        public void removeDeltaArc(Arc de) {
+            waypoints.removeDeltaArc(bitsets.index(de.from), bitsets.index(de.to));
+        }
+
+        @Override
+        public void removeShiftedMuArc(Arc me) {
+            waypoints.removeShiftedMuArc(bitsets.index(me.from), bitsets.index(me.to));
+        }
+    }
+
     private final class ArcInfo {
         Arc _arc;
         int score = 0;
@@ -186,6 +236,11 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
     }
 
     void flushState(long time) throws IOException {
+        if (bitsets != null) {
+            if (time >= min_time)
+                flushBitsets(time);
+            return;
+        }
         if (time >= min_time) {
             if (!init_state_set) {
                 writer.setInitState(min_time, to_bring_up);
@@ -202,6 +257,20 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
         }
     }
 
+    private void flushBitsets(long time) throws IOException {
+        final List<Arc> up = new ArrayList<Arc>();
+        final List<Arc> down = new ArrayList<Arc>();
+        bitsets.flush(up, down);
+        if (!init_state_set) {
+            writer.setInitState(min_time, up);
+            init_state_set = true;
+        } else
+            for (final Arc a : up)
+                writer.append(time, new ArcEvent(a, ArcEvent.Type.UP));
+        for (final Arc a : down)
+            writer.append(time, new ArcEvent(a, ArcEvent.Type.DOWN));
+    }
+
     @Override
     public void handle(long time, Collection<Object> events) throws IOException {
         for (final Composer composer : composers)
@@ -219,19 +288,24 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
         scheduleUpdate(time + eta);
     }
 
-    ArcInfo increment(Arc a) {
-        ArcInfo ai = arc_infos.get(a);
+    void increment(Arc a) {
+        if (bitsets != null) {
+            bitsets.increment(bitsets.index(a.from), bitsets.index(a.to));
+            return;
+        }
+        final ArcInfo ai = arc_infos.get(a);
         if (ai == null)
-            ai = new ArcInfo(a);
+            new ArcInfo(a);
         else
             ai.increment();
-        return ai;
     }
 
-    ArcInfo decrement(Arc a) {
-        final ArcInfo ai = arc_infos.get(a);
-        ai.decrement();
-        return ai;
+    void decrement(Arc a) {
+        if (bitsets != null) {
+            bitsets.decrement(bitsets.index(a.from), bitsets.index(a.to));
+            return;
+        }
+        arc_infos.get(a).decrement();
     }
 
     private final class Composer implements Generator {
@@ -243,7 +317,7 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
         Deque<Arc> mu_up_events = new LinkedList<Arc>();
         Deque<Arc> delta_down_events = new LinkedList<Arc>();
         Deque<Arc> delta_up_events = new LinkedList<Arc>();
-        Waypoints waypoints = new Waypoints();
+        Waypoints waypoints = (bitsets != null) ? new BitsetWaypoints() : new HashWaypoints();
 
         Composer(ReachabilityTrace deltaTrace, ReachabilityTrace muTrace) throws IOException {
             init(deltaTrace, muTrace, deltaTrace.delay());
@@ -265,13 +339,8 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
         }
 
         void processDeltaUpEvents() {
-            for (final Arc a : delta_up_events) {
-                ArcInfo ai = arc_infos.get(a);
-                if (ai == null)
-                    ai = new ArcInfo(a);
-                else
-                    ai.increment();
-            }
+            for (final Arc a : delta_up_events)
+                increment(a);
         }
 
         void processDeltaUpJourneyEvents() {
@@ -19,8 +19,11 @@
 package ditl.graphs;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
+import ditl.BlockStats;
 import ditl.CodedBuffer;
 import ditl.CodedInputStream;
 import ditl.Filter;
@@ -46,11 +49,51 @@ public final class Arc implements Item, Couple {
         return to;
     }
 
-    public final static class Factory implements Item.Factory<Arc> {
+    public final static class Factory implements Item.Factory<Arc>, Item.BlockCoder<Arc>, Item.NodeIdReporter<Arc>,
+            Item.GroupDecoder<Arc>, Item.GroupBlockDecoder<Arc> {
         @Override
         public Arc fromBinaryStream(CodedInputStream in) throws IOException {
             return new Arc(in.readSInt(), in.readSInt());
         }
+
+        @Override
+        public Arc fromBinaryStream(CodedInputStream in, Set<Integer> group) throws IOException {
+            final int from = in.readSInt(), to = in.readSInt();
+            if (group.contains(from) && group.contains(to))
+                return new Arc(from, to);
+            return null;
+        }
+
+        @Override
+        public void writeBlock(CodedBuffer out, Collection<Arc> items) {
+            final CoupleBlock block = new CoupleBlock(items.size(), false);
+            int i = 0;
+            for (final Arc a : items) {
+                block.ids1[i] = a.from;
+                block.ids2[i] = a.to;
+                ++i;
+            }
+            block.write(out);
+        }
+
+        @Override
+        public void readBlock(CodedInputStream in, List<Arc> items) throws IOException {
+            readBlock(in, items, null);
+        }
+
+        @Override
+        public void readBlock(CodedInputStream in, List<Arc> items, Set<Integer> group) throws IOException {
+            final CoupleBlock block = CoupleBlock.read(in, false);
+            for (int i = 0; i < block.size; ++i)
+                if (block.isInternal(i, group))
+                    items.add(new Arc(block.ids1[i], block.ids2[i]));
+        }
+
+        @Override
+        public void reportNodeIds(Arc item, BlockStats.Collector ids) {
+            ids.add(item.from);
+            ids.add(item.to);
+        }
     }
 
     public Arc reverse() {
@@ -67,6 +110,11 @@ public final class Arc implements Item, Couple {
         return (l.from.equals(from)) && (l.to.equals(to));
     }
 
+    @Override
+    public int hashCode() {
+        return 31 * from.hashCode() + to.hashCode();
+    }
+
     @Override
     public String toString() {
         return from + " " + to;
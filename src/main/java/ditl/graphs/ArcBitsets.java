@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Arc scores of AddingReachableConverter held in primitive arrays. Node ids
+ * are mapped to dense indices in order of appearance. For each source node,
+ * the scores of its known arcs are kept in a small hash table, and the arcs
+ * that are to be brought up or down are kept in bitsets. Waypoints keep, for
+ * each node, the bitset of the sources of the delta arcs that end there and
+ * the bitset of the destinations of the shifted mu arcs that start there.
+ * Composing an arc with these sets is then a scan over set bits rather than
+ * a walk over boxed adjacency maps.
+ *
+ * Bitsets only store their non-zero 64-bit words and scores are only stored
+ * for known arcs, so that memory grows with the number of arcs rather than
+ * with the square of the number of nodes.
+ */
+final class ArcBitsets {
+
+    private final Map<Integer, Integer> indices = new HashMap<Integer, Integer>();
+    private int[] ids = new int[16];
+    private int n_nodes = 0;
+
+    private Scores[] scores = new Scores[16];
+    private Bits[] to_bring_up = new Bits[16];
+    private Bits[] to_bring_down = new Bits[16];
+    private final BitSet dirty = new BitSet(); // sources with pending changes
+
+    int index(Integer id) {
+        Integer i = indices.get(id);
+        if (i == null) {
+            i = n_nodes++;
+            if (i == ids.length) {
+                final int n = 2 * ids.length;
+                ids = Arrays.copyOf(ids, n);
+                scores = Arrays.copyOf(scores, n);
+                to_bring_up = Arrays.copyOf(to_bring_up, n);
+                to_bring_down = Arrays.copyOf(to_bring_down, n);
+            }
+            ids[i] = id;
+            scores[i] = new Scores();
+            to_bring_up[i] = new Bits();
+            to_bring_down[i] = new Bits();
+            indices.put(id, i);
+        }
+        return i;
+    }
+
+    void increment(int i, int j) {
+        final int s = scores[i].increment(j);
+        if (s < 0) {
+            to_bring_up[i].set(j);
+            dirty.set(i);
+        } else if (s == 0)
+            to_bring_down[i].clear(j);
+    }
+
+    void decrement(int i, int j) {
+        if (scores[i].decrement(j) == 0) {
+            to_bring_down[i].set(j);
+            dirty.set(i);
+        }
+    }
+
+    // moves the pending arcs to the given collections, by source and
+    // destination index
+    void flush(Collection<Arc> up, Collection<Arc> down) {
+        for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+            final Bits bu = to_bring_up[i];
+            for (int j = bu.nextSetBit(0); j >= 0; j = bu.nextSetBit(j + 1))
+                up.add(new Arc(ids[i], ids[j]));
+            bu.clear();
+        }
+        for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+            final Bits bd = to_bring_down[i];
+            for (int j = bd.nextSetBit(0); j >= 0; j = bd.nextSetBit(j + 1)) {
+                scores[i].remove(j);
+                down.add(new Arc(ids[i], ids[j]));
+            }
+            bd.clear();
+        }
+        dirty.clear();
+    }
+
+    final class Waypoints {
+        private Bits[] delta_sources = new Bits[0];
+        private Bits[] mu_dests = new Bits[0];
+
+        private Bits row(boolean delta, int k) {
+            if (k >= delta_sources.length) {
+                final int n = Math.max(k + 1, ids.length);
+                delta_sources = Arrays.copyOf(delta_sources, n);
+                mu_dests = Arrays.copyOf(mu_dests, n);
+            }
+            final Bits[] rows = delta ? delta_sources : mu_dests;
+            if (rows[k] == null)
+                rows[k] = new Bits();
+            return rows[k];
+        }
+
+        // delta arc i->k: compose with all shifted mu arcs k->j
+        void addDeltaArc(int i, int k) {
+            row(true, k).set(i);
+            final Bits dests = row(false, k);
+            for (int j = dests.nextSetBit(0); j >= 0; j = dests.nextSetBit(j + 1))
+                if (j != i) // prevent loops on self
+                    increment(i, j);
+        }
+
+        void removeDeltaArc(int i, int k) {
+            row(true, k).clear(i);
+            final Bits dests = row(false, k);
+            for (int j = dests.nextSetBit(0); j >= 0; j = dests.nextSetBit(j + 1))
+                if (j != i)
+                    decrement(i, j);
+        }
+
+        // shifted mu arc k->j: compose with all delta arcs i->k
+        void addShiftedMuArc(int k, int j) {
+            row(false, k).set(j);
+            final Bits sources = row(true, k);
+            for (int i = sources.nextSetBit(0); i >= 0; i = sources.nextSetBit(i + 1))
+                if (i != j)
+                    increment(i, j);
+        }
+
+        void removeShiftedMuArc(int k, int j) {
+            row(false, k).clear(j);
+            final Bits sources = row(true, k);
+            for (int i = sources.nextSetBit(0); i >= 0; i = sources.nextSetBit(i + 1))
+                if (i != j)
+                    decrement(i, j);
+        }
+    }
+
+    // a bitset that only stores its non-zero words, sorted by word number
+    final static class Bits {
+        private int[] word_ids = new int[1];
+        private long[] words = new long[1];
+        private int n_words = 0;
+
+        private int find(int w) {
+            return Arrays.binarySearch(word_ids, 0, n_words, w);
+        }
+
+        void set(int j) {
+            final int w = j >>> 6;
+            int k = find(w);
+            if (k < 0) {
+                k = -k - 1;
+                if (n_words == words.length) {
+                    word_ids = Arrays.copyOf(word_ids, 2 * n_words);
+                    words = Arrays.copyOf(words, 2 * n_words);
+                }
+                System.arraycopy(word_ids, k, word_ids, k + 1, n_words - k);
+                System.arraycopy(words, k, words, k + 1, n_words - k);
+                word_ids[k] = w;
+                words[k] = 0;
+                n_words++;
+            }
+            words[k] |= 1L << j;
+        }
+
+        void clear(int j) {
+            final int k = find(j >>> 6);
+            if (k >= 0) {
+                words[k] &= ~(1L << j);
+                if (words[k] == 0) {
+                    System.arraycopy(word_ids, k + 1, word_ids, k, n_words - k - 1);
+                    System.arraycopy(words, k + 1, words, k, n_words - k - 1);
+                    n_words--;
+                }
+            }
+        }
+
+        void clear() {
+            n_words = 0;
+        }
+
+        // the first set bit at or after 'from', or -1
+        int nextSetBit(int from) {
+            int k = find(from >>> 6);
+            if (k >= 0) {
+                final long word = words[k] & (-1L << from);
+                if (word != 0)
+                    return (word_ids[k] << 6) + Long.numberOfTrailingZeros(word);
+                ++k;
+            } else
+                k = -k - 1;
+            if (k < n_words)
+                return (word_ids[k] << 6) + Long.numberOfTrailingZeros(words[k]);
+            return -1;
+        }
+    }
+
+    // the scores of the known arcs of a source, by destination index, in an
+    // open addressing table with linear probing
+    final static class Scores {
+        private int[] keys = new int[8]; // destination + 1, 0 if free
+        private int[] values = new int[8];
+        private int size = 0;
+
+        private int home(int j) {
+            final int h = j * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & (keys.length - 1);
+        }
+
+        private int slot(int j) {
+            final int mask = keys.length - 1;
+            int h = home(j);
+            while (keys[h] != 0 && keys[h] != j + 1)
+                h = (h + 1) & mask;
+            return h;
+        }
+
+        // adds one to the score of j, and returns its previous score, or -1
+        // if j was not known (it then has a score of 1)
+        int increment(int j) {
+            final int h = slot(j);
+            if (keys[h] == 0) {
+                keys[h] = j + 1;
+                values[h] = 1;
+                if (4 * ++size > 3 * keys.length)
+                    rehash(2 * keys.length);
+                return -1;
+            }
+            return values[h]++;
+        }
+
+        // removes one from the known score of j and returns the new score
+        int decrement(int j) {
+            return --values[slot(j)];
+        }
+
+        void remove(int j) {
+            final int mask = keys.length - 1;
+            int h = slot(j);
+            if (keys[h] == 0)
+                return;
+            size--;
+            // shift back the following entries of the probe sequence
+            int next = (h + 1) & mask;
+            while (keys[next] != 0) {
+                final int home = home(keys[next] - 1);
+                if (((next - home) & mask) >= ((next - h) & mask)) {
+                    keys[h] = keys[next];
+                    values[h] = values[next];
+                    h = next;
+                }
+                next = (next + 1) & mask;
+            }
+            keys[h] = 0;
+        }
+
+        private void rehash(int capacity) {
+            final int[] old_keys = keys, old_values = values;
+            keys = new int[capacity];
+            values = new int[capacity];
+            for (int h = 0; h < old_keys.length; ++h)
+                if (old_keys[h] != 0) {
+                    final int s = slot(old_keys[h] - 1);
+                    keys[s] = old_keys[h];
+                    values[s] = old_values[h];
+                }
+        }
+    }
+}
@@ -19,8 +19,11 @@
 package ditl.graphs;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
+import ditl.BlockStats;
 import ditl.CodedBuffer;
 import ditl.CodedInputStream;
 import ditl.Filter;
@@ -56,11 +59,53 @@ public final class ArcEvent implements Item {
         return new Arc(from, to);
     }
 
-    public static final class Factory implements Item.Factory<ArcEvent> {
+    public static final class Factory implements Item.Factory<ArcEvent>, Item.BlockCoder<ArcEvent>, Item.NodeIdReporter<ArcEvent>,
+            Item.GroupDecoder<ArcEvent>, Item.GroupBlockDecoder<ArcEvent> {
         @Override
         public ArcEvent fromBinaryStream(CodedInputStream in) throws IOException {
             return new ArcEvent(in.readSInt(), in.readSInt(), Type.values()[in.readByte()]);
         }
+
+        @Override
+        public ArcEvent fromBinaryStream(CodedInputStream in, Set<Integer> group) throws IOException {
+            final int from = in.readSInt(), to = in.readSInt();
+            final byte type = in.readByte();
+            if (group.contains(from) && group.contains(to))
+                return new ArcEvent(from, to, Type.values()[type]);
+            return null;
+        }
+
+        @Override
+        public void writeBlock(CodedBuffer out, Collection<ArcEvent> items) {
+            final CoupleBlock block = new CoupleBlock(items.size(), true);
+            int i = 0;
+            for (final ArcEvent a : items) {
+                block.ids1[i] = a.from;
+                block.ids2[i] = a.to;
+                block.flags[i] = (a.type == Type.DOWN);
+                ++i;
+            }
+            block.write(out);
+        }
+
+        @Override
+        public void readBlock(CodedInputStream in, List<ArcEvent> items) throws IOException {
+            readBlock(in, items, null);
+        }
+
+        @Override
+        public void readBlock(CodedInputStream in, List<ArcEvent> items, Set<Integer> group) throws IOException {
+            final CoupleBlock block = CoupleBlock.read(in, true);
+            for (int i = 0; i < block.size; ++i)
+                if (block.isInternal(i, group))
+                    items.add(new ArcEvent(block.ids1[i], block.ids2[i], block.flags[i] ? Type.DOWN : Type.UP));
+        }
+
+        @Override
+        public void reportNodeIds(ArcEvent item, BlockStats.Collector ids) {
+            ids.add(item.from);
+            ids.add(item.to);
+        }
     }
 
     @Override
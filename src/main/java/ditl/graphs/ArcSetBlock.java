@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import ditl.CodedBuffer;
+import ditl.CodedInputStream;
+
+/*
+ * Per-source encoding of sets of arcs, used by columnar reachability traces
+ * where states hold up to n^2 arcs. Arcs are sorted by source then
+ * destination. Each source stores the delta with the previous source, its
+ * first destination relative to itself, and the remaining destinations
+ * either as gaps or, when smaller, as a bitmap over the range from the first
+ * to the last destination.
+ *
+ * Blocks of events are cut into segments in which no arc appears twice.
+ * Within a segment the events commute, so each segment is stored as the set
+ * of arcs brought up followed by the set of arcs brought down, and is read
+ * back in that order.
+ */
+final class ArcSetBlock {
+
+    private final static int LIST = 0, BITMAP = 1;
+
+    private long[] keys;
+    private int size = 0;
+
+    ArcSetBlock(int capacity) {
+        keys = new long[Math.max(capacity, 1)];
+    }
+
+    void add(int from, int to) {
+        if (size == keys.length)
+            keys = Arrays.copyOf(keys, 2 * size);
+        keys[size++] = ((long) from << 32) | ((long) to - Integer.MIN_VALUE);
+    }
+
+    private static int from(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int to(long key) {
+        return (int) ((key & 0xFFFFFFFFL) + Integer.MIN_VALUE);
+    }
+
+    void write(CodedBuffer out) {
+        Arrays.sort(keys, 0, size);
+        int n_sources = 0;
+        for (int i = 0; i < size; ++i)
+            if (i == 0 || from(keys[i]) != from(keys[i - 1]))
+                n_sources++;
+        out.writeInt(n_sources);
+        int prev_from = 0;
+        int i = 0;
+        while (i < size) {
+            final int from = from(keys[i]);
+            int j = i + 1;
+            while (j < size && from(keys[j]) == from)
+                ++j;
+            out.writeSInt(from - prev_from);
+            writeDestinations(out, from, i, j);
+            prev_from = from;
+            i = j;
+        }
+    }
+
+    private void writeDestinations(CodedBuffer out, int from, int i, int j) {
+        final int first = to(keys[i]);
+        final int range = to(keys[j - 1]) - first;
+        int list_bytes = 0;
+        for (int k = i + 1; k < j; ++k)
+            list_bytes += varIntSize(to(keys[k]) - to(keys[k - 1]) - 1);
+        final int bitmap_bytes = varIntSize(range) + (range + 7) / 8;
+        final int mode = (bitmap_bytes < list_bytes) ? BITMAP : LIST;
+        out.writeSInt(first - from);
+        out.writeInt(((j - i - 1) << 1) | mode);
+        if (mode == LIST) {
+            for (int k = i + 1; k < j; ++k)
+                out.writeInt(to(keys[k]) - to(keys[k - 1]) - 1);
+        } else {
+            out.writeInt(range);
+            final byte[] bits = new byte[(range + 7) / 8];
+            for (int k = i + 1; k < j; ++k) {
+                final int b = to(keys[k]) - first - 1;
+                bits[b >> 3] |= (1 << (b & 7));
+            }
+            out.writeBytes(bits, 0, bits.length);
+        }
+    }
+
+    // only the arcs between members of the group are handed over, unless the
+    // group is null. Sources outside of the group are skipped.
+    static void read(CodedInputStream in, Set<Integer> group, ArcSetBlock.Handler handler) throws IOException {
+        final int n_sources = in.readInt();
+        int from = 0;
+        for (int s = 0; s < n_sources; ++s) {
+            from += in.readSInt();
+            int to = from + in.readSInt();
+            final boolean keep = group == null || group.contains(from);
+            if (keep && (group == null || group.contains(to)))
+                handler.handle(from, to);
+            final int h = in.readInt();
+            final int n = h >>> 1;
+            if ((h & 1) == LIST) {
+                for (int k = 0; k < n; ++k) {
+                    to += in.readInt() + 1;
+                    if (keep && (group == null || group.contains(to)))
+                        handler.handle(from, to);
+                }
+            } else if (!keep) {
+                in.skip((in.readInt() + 7) / 8);
+            } else {
+                final int first = to;
+                final byte[] bits = new byte[(in.readInt() + 7) / 8];
+                in.readBytes(bits, 0, bits.length);
+                for (int b = 0; b < 8 * bits.length; ++b)
+                    if ((bits[b >> 3] & (1 << (b & 7))) != 0
+                            && (group == null || group.contains(first + b + 1)))
+                        handler.handle(from, first + b + 1);
+            }
+        }
+    }
+
+    interface Handler {
+        void handle(int from, int to);
+    }
+
+    private static int varIntSize(int value) {
+        int n = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            n++;
+        }
+        return n;
+    }
+
+    static void writeArcs(CodedBuffer out, Collection<Arc> arcs) {
+        final ArcSetBlock block = new ArcSetBlock(arcs.size());
+        for (final Arc a : arcs)
+            block.add(a.from, a.to);
+        block.write(out);
+    }
+
+    static void readArcs(CodedInputStream in, final List<Arc> arcs, Set<Integer> group) throws IOException {
+        read(in, group, new Handler() {
+            @Override
+            public void handle(int from, int to) {
+                arcs.add(new Arc(from, to));
+            }
+        });
+    }
+
+    static void writeEvents(CodedBuffer out, Collection<ArcEvent> events) {
+        // count the segments first
+        final Set<Arc> seen = new HashSet<Arc>();
+        int n_segments = 0;
+        for (final ArcEvent aev : events)
+            if (!seen.add(aev.arc()) || n_segments == 0) {
+                if (n_segments > 0) {
+                    seen.clear();
+                    seen.add(aev.arc());
+                }
+                n_segments++;
+            }
+        out.writeInt(n_segments);
+        seen.clear();
+        ArcSetBlock up = new ArcSetBlock(events.size());
+        ArcSetBlock down = new ArcSetBlock(events.size());
+        for (final ArcEvent aev : events) {
+            if (!seen.add(aev.arc())) {
+                up.write(out);
+                down.write(out);
+                up = new ArcSetBlock(events.size());
+                down = new ArcSetBlock(events.size());
+                seen.clear();
+                seen.add(aev.arc());
+            }
+            if (aev.isUp())
+                up.add(aev.from, aev.to);
+            else
+                down.add(aev.from, aev.to);
+        }
+        if (n_segments > 0) {
+            up.write(out);
+            down.write(out);
+        }
+    }
+
+    static void readEvents(CodedInputStream in, final List<ArcEvent> events, Set<Integer> group) throws IOException {
+        final int n_segments = in.readInt();
+        for (int s = 0; s < n_segments; ++s) {
+            read(in, group, new Handler() {
+                @Override
+                public void handle(int from, int to) {
+                    events.add(new ArcEvent(from, to, ArcEvent.Type.UP));
+                }
+            });
+            read(in, group, new Handler() {
+                @Override
+                public void handle(int from, int to) {
+                    events.add(new ArcEvent(from, to, ArcEvent.Type.DOWN));
+                }
+            });
+        }
+    }
+}
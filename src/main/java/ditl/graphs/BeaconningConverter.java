@@ -26,7 +26,6 @@ import ditl.Bus;
 import ditl.Converter;
 import ditl.Generator;
 import ditl.Listener;
-import ditl.Matcher;
 import ditl.Runner;
 import ditl.StatefulListener;
 import ditl.StatefulReader;
@@ -56,6 +55,7 @@ public final class BeaconningConverter implements PresenceTrace.Handler, Convert
         _edges = edges;
         _presence = presence;
         next_scans.addListener(nextScansListener());
+        next_scans.addIndexer(Bus.<Integer> identityIndexer());
     }
 
     public Listener<Integer> nextScansListener() {
@@ -95,13 +95,8 @@ public final class BeaconningConverter implements PresenceTrace.Handler, Convert
         next_scans.queue(nextScan, id);
     }
 
-    private void stopBeaconning(long time, final Integer id) {
-        next_scans.removeFromQueueAfterTime(time, new Matcher<Integer>() {
-            @Override
-            public boolean matches(Integer item) {
-                return item.equals(id);
-            }
-        });
+    private void stopBeaconning(long time, Integer id) {
+        next_scans.removeFromQueueAfterTime(time, Bus.<Integer> identityIndexer(), id);
     }
 
     @Override
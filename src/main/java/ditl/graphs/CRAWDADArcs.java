@@ -18,15 +18,17 @@
  *******************************************************************************/
 package ditl.graphs;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
+import ditl.ChunkedLineParser;
+import ditl.ExternalSorter;
 import ditl.IdGenerator;
 import ditl.StatefulReader;
 import ditl.StatefulWriter;
@@ -38,25 +40,53 @@ public class CRAWDADArcs {
     public static void fromCRAWDAD(ArcTrace arcs,
             InputStream in, double timeMul, long ticsPerSecond,
             long offset, IdGenerator idGen) throws IOException {
+        fromCRAWDAD(arcs, in, timeMul, ticsPerSecond, offset, idGen, 1);
+    }
+
+    public static void fromCRAWDAD(ArcTrace arcs,
+            InputStream in, double timeMul, long ticsPerSecond,
+            long offset, IdGenerator idGen, int nThreads) throws IOException {
 
         final StatefulWriter<ArcEvent, Arc> arcWriter = arcs.getWriter();
-        final BufferedReader br = new BufferedReader(new InputStreamReader(in));
-        String line;
+        final ChunkedLineParser parser = new ChunkedLineParser(in, 2, 2, CRAWDADEdges.lineParser, nThreads);
+        // events are sorted out of core: dumps may not fit in memory
+        final ExternalSorter sorter = new ExternalSorter(3);
+        final long[] record = new long[3];
 
-        while ((line = br.readLine()) != null) {
-            final String[] elems = line.split("[ \t]+");
-            final Integer id1 = idGen.getInternalId(elems[0]);
-            final Integer id2 = idGen.getInternalId(elems[1]);
-            final long begin = (long) (Double.parseDouble(elems[2]) * timeMul) + offset;
-            final long end = (long) (Double.parseDouble(elems[3]) * timeMul) + offset;
-            arcWriter.queue(begin, new ArcEvent(id1, id2, ArcEvent.Type.UP));
-            arcWriter.queue(end, new ArcEvent(id1, id2, ArcEvent.Type.DOWN));
+        ChunkedLineParser.Records records;
+        while ((records = parser.next()) != null)
+            for (int r = 0; r < records.size(); ++r) {
+                final Integer id1 = idGen.getInternalId(records.string(r, 0));
+                final Integer id2 = idGen.getInternalId(records.string(r, 1));
+                final long begin = (long) (records.number(r, 0) * timeMul) + offset;
+                final long end = (long) (records.number(r, 1) * timeMul) + offset;
+                record[0] = id1;
+                record[1] = id2;
+                record[2] = ArcEvent.Type.UP.ordinal();
+                sorter.add(begin, record);
+                record[2] = ArcEvent.Type.DOWN.ordinal();
+                sorter.add(end, record);
+            }
+        parser.close();
+        // replay the events in time order, one batch per time
+        sorter.sort();
+        final List<ArcEvent> events = new ArrayList<ArcEvent>();
+        long time = Long.MIN_VALUE;
+        while (sorter.hasNext()) {
+            final long t = sorter.next(record);
+            if (t != time && !events.isEmpty()) {
+                arcWriter.handle(time, events);
+                events.clear();
+            }
+            time = t;
+            events.add(new ArcEvent((int) record[0], (int) record[1], ArcEvent.Type.values()[(int) record[2]]));
         }
-        arcWriter.flush();
+        if (!events.isEmpty())
+            arcWriter.handle(time, events);
+        sorter.close();
         arcWriter.setProperty(Trace.timeUnitKey, Units.toTimeUnit(ticsPerSecond));
         idGen.writeTraceInfo(arcWriter);
         arcWriter.close();
-        br.close();
     }
 
     public static void toCRAWDAD(ArcTrace arcs,
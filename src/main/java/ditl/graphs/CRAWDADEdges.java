@@ -18,16 +18,19 @@
  *******************************************************************************/
 package ditl.graphs;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
+import ditl.ChunkedLineParser;
+import ditl.ExternalSorter;
 import ditl.IdGenerator;
+import ditl.LineTokenizer;
 import ditl.StatefulReader;
 import ditl.StatefulWriter;
 import ditl.Trace;
@@ -35,28 +38,68 @@ import ditl.Units;
 
 public class CRAWDADEdges {
 
+    // "id1 id2 begin end" lines, shared with CRAWDADArcs
+    final static ChunkedLineParser.LineParser lineParser = new ChunkedLineParser.LineParser() {
+        @Override
+        public void parse(LineTokenizer tok, ChunkedLineParser.Records out) {
+            final int r = out.add();
+            out.setString(r, 0, tok.string(0));
+            out.setString(r, 1, tok.string(1));
+            out.setNumber(r, 0, tok.parseDouble(2));
+            out.setNumber(r, 1, tok.parseDouble(3));
+        }
+    };
+
     public static void fromCRAWDAD(EdgeTrace edges,
             InputStream in, double timeMul, long ticsPerSecond,
             long offset, IdGenerator idGen) throws IOException {
+        fromCRAWDAD(edges, in, timeMul, ticsPerSecond, offset, idGen, 1);
+    }
+
+    public static void fromCRAWDAD(EdgeTrace edges,
+            InputStream in, double timeMul, long ticsPerSecond,
+            long offset, IdGenerator idGen, int nThreads) throws IOException {
 
         final StatefulWriter<EdgeEvent, Edge> edgeWriter = edges.getWriter();
-        final BufferedReader br = new BufferedReader(new InputStreamReader(in));
-        String line;
+        final ChunkedLineParser parser = new ChunkedLineParser(in, 2, 2, lineParser, nThreads);
+        // events are sorted out of core: dumps may not fit in memory
+        final ExternalSorter sorter = new ExternalSorter(3);
+        final long[] record = new long[3];
 
-        while ((line = br.readLine()) != null) {
-            final String[] elems = line.split("[ \t]+");
-            final Integer id1 = idGen.getInternalId(elems[0]);
-            final Integer id2 = idGen.getInternalId(elems[1]);
-            final long begin = (long) (Double.parseDouble(elems[2]) * timeMul) + offset;
-            final long end = (long) (Double.parseDouble(elems[3]) * timeMul) + offset;
-            edgeWriter.queue(begin, new EdgeEvent(id1, id2, EdgeEvent.Type.UP));
-            edgeWriter.queue(end, new EdgeEvent(id1, id2, EdgeEvent.Type.DOWN));
+        ChunkedLineParser.Records records;
+        while ((records = parser.next()) != null)
+            for (int r = 0; r < records.size(); ++r) {
+                final Integer id1 = idGen.getInternalId(records.string(r, 0));
+                final Integer id2 = idGen.getInternalId(records.string(r, 1));
+                final long begin = (long) (records.number(r, 0) * timeMul) + offset;
+                final long end = (long) (records.number(r, 1) * timeMul) + offset;
+                record[0] = id1;
+                record[1] = id2;
+                record[2] = EdgeEvent.Type.UP.ordinal();
+                sorter.add(begin, record);
+                record[2] = EdgeEvent.Type.DOWN.ordinal();
+                sorter.add(end, record);
+            }
+        parser.close();
+        // replay the events in time order, one batch per time
+        sorter.sort();
+        final List<EdgeEvent> events = new ArrayList<EdgeEvent>();
+        long time = Long.MIN_VALUE;
+        while (sorter.hasNext()) {
+            final long t = sorter.next(record);
+            if (t != time && !events.isEmpty()) {
+                edgeWriter.handle(time, events);
+                events.clear();
+            }
+            time = t;
+            events.add(new EdgeEvent((int) record[0], (int) record[1], EdgeEvent.Type.values()[(int) record[2]]));
         }
-        edgeWriter.flush();
+        if (!events.isEmpty())
+            edgeWriter.handle(time, events);
+        sorter.close();
         edgeWriter.setProperty(Trace.timeUnitKey, Units.toTimeUnit(ticsPerSecond));
         idGen.writeTraceInfo(edgeWriter);
         edgeWriter.close();
-        br.close();
     }
 
     public static void toCRAWDAD(EdgeTrace edges,
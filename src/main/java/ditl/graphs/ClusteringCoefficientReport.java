@@ -22,9 +22,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 
 import ditl.Listener;
 import ditl.ReportFactory;
@@ -34,7 +32,11 @@ import ditl.StatefulListener;
 public final class ClusteringCoefficientReport extends StateTimeReport
         implements PresenceTrace.Handler, EdgeTrace.Handler {
 
-    private final AdjacencySet.Edges adjacency = new AdjacencySet.Edges();
+    private final IntAdjacencySet.Edges adjacency = new IntAdjacencySet.Edges();
+    // reused across updates to avoid allocating on every edge event
+    private IntAdjacencyMap.Neighbours<Boolean> nbrs = null;
+    private IntAdjacencyMap.Neighbours<Boolean> coeff_nbrs = null;
+    private int[] buff = new int[16];
     private final Map<Integer, Double> coeffs = new HashMap<Integer, Double>();
     private final boolean remove_leaves;
 
@@ -58,39 +60,39 @@ public final class ClusteringCoefficientReport extends StateTimeReport
     }
 
     private void updateSurroundingCoeffs(Edge edge) {
-        final Integer i1 = edge.id1;
-        final Integer i2 = edge.id2;
-        final Set<Integer> n1 = adjacency.getNext(i1);
-        final Set<Integer> n2 = adjacency.getNext(i2);
-        if (!n1.isEmpty() && !n2.isEmpty())
-            for (final Integer k : n1)
-                if (n2.contains(k))
+        final int i1 = edge.id1;
+        final int i2 = edge.id2;
+        if (adjacency.degree(i1) > 0 && adjacency.degree(i2) > 0) {
+            nbrs = adjacency.neighbours(i1, nbrs);
+            while (nbrs.next()) {
+                final int k = nbrs.id();
+                if (adjacency.containsPair(i2, k))
                     updateCoeff(k);
+            }
+        }
         updateCoeff(i1);
         updateCoeff(i2);
     }
 
-    private void updateCoeff(Integer i) {
-        final Set<Integer> neighbs = adjacency.getNext(i);
-        if (neighbs.isEmpty())
+    private void updateCoeff(int i) {
+        final int k = adjacency.degree(i);
+        if (k < 2)
             coeffs.put(i, 0.0);
         else {
-            final int k = neighbs.size();
-            if (k < 2)
-                coeffs.put(i, 0.0);
-            else {
-                final Set<Integer> buff = new HashSet<Integer>();
-                int n_edges = 0;
-                for (final Integer j : neighbs) {
-                    final Set<Integer> j_neighbs = adjacency.getNext(j);
-                    for (final Integer l : buff)
-                        if (j_neighbs.contains(l))
-                            n_edges++;
-                    buff.add(j);
-                }
-                final double coeff = 2 * (double) n_edges / (k * (k - 1));
-                coeffs.put(i, coeff);
+            if (buff.length < k)
+                buff = new int[2 * k];
+            int n = 0;
+            int n_edges = 0;
+            coeff_nbrs = adjacency.neighbours(i, coeff_nbrs);
+            while (coeff_nbrs.next()) {
+                final int j = coeff_nbrs.id();
+                for (int l = 0; l < n; ++l)
+                    if (adjacency.containsPair(j, buff[l]))
+                        n_edges++;
+                buff[n++] = j;
             }
+            final double coeff = 2 * (double) n_edges / (k * (k - 1));
+            coeffs.put(i, coeff);
         }
     }
 
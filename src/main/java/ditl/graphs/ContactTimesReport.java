@@ -21,17 +21,33 @@ package ditl.graphs;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Collection;
-import java.util.Map;
 
 import ditl.Listener;
+import ditl.MergeableReport;
 import ditl.Report;
 import ditl.ReportFactory;
 import ditl.StatefulListener;
 
-public final class ContactTimesReport extends Report implements EdgeTrace.Handler {
+public final class ContactTimesReport extends Report implements EdgeTrace.Handler, MergeableReport<ContactTimesReport> {
 
     private final boolean _contacts;
-    private final Map<Edge, Long> activeContacts = new AdjacencyMap.Edges<Long>();
+    private final IntAdjacencyMap.Edges<Long> activeContacts = new IntAdjacencyMap.Edges<Long>();
+
+    // when running on a shard, the periods that were already open at the
+    // start of the shard end on an edge whose begin time is only known to the
+    // previous shards
+    private boolean in_shard = false;
+    private final IntAdjacencySet.Edges openAtStart = new IntAdjacencySet.Edges();
+
+    private final static class Unresolved {
+        final Edge edge;
+        final long end;
+
+        Unresolved(Edge e, long time) {
+            edge = e;
+            end = time;
+        }
+    }
 
     public ContactTimesReport(OutputStream out, boolean contacts) throws IOException {
         super(out);
@@ -58,14 +74,14 @@ public final class ContactTimesReport extends Report implements EdgeTrace.Handle
             @Override
             public void handle(long time, Collection<EdgeEvent> events) throws IOException {
                 for (final EdgeEvent event : events) {
-                    final Edge e = event.edge();
                     if (event.isUp() == _contacts)
-                        activeContacts.put(e, time);
+                        activeContacts.putPair(event.id1, event.id2, time);
                     else {
-                        final Long b = activeContacts.get(e);
+                        final Long b = activeContacts.removePair(event.id1, event.id2);
                         if (b != null) {
-                            activeContacts.remove(e);
-                            append(e + " " + b + " " + time + " " + (time - b));
+                            append(event.edge() + " " + b + " " + time + " " + (time - b));
+                        } else if (in_shard && (!_contacts || openAtStart.removePair(event.id1, event.id2))) {
+                            appendMarker(new Unresolved(event.edge(), time));
                         }
                     }
                 }
@@ -89,4 +105,27 @@ public final class ContactTimesReport extends Report implements EdgeTrace.Handle
             }
         };
     }
+
+    @Override
+    public void startShard(long time) throws IOException {
+        bufferLines();
+        in_shard = true;
+        if (_contacts) {
+            openAtStart.addAll(activeContacts.keySet());
+            activeContacts.clear();
+        }
+    }
+
+    @Override
+    public void merge(ContactTimesReport shard) throws IOException {
+        for (final Object line : shard.bufferedLines())
+            if (line instanceof Unresolved) {
+                final Unresolved u = (Unresolved) line;
+                final Long b = activeContacts.removePair(u.edge.id1, u.edge.id2);
+                if (b != null)
+                    append(u.edge + " " + b + " " + u.end + " " + (u.end - b));
+            } else
+                append(line);
+        activeContacts.putAll(shard.activeContacts);
+    }
 }
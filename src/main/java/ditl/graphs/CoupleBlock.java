@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import ditl.CodedBuffer;
+import ditl.CodedInputStream;
+
+/*
+ * Columnar encoding of a block of couples (edges, arcs and their events).
+ * Consecutive couples sharing their first id are grouped in runs. Each run
+ * stores the delta of its first id with the previous run, its length, and the
+ * deltas between successive second ids. Event types, if any, are packed in a
+ * trailing bitmap.
+ *
+ * Before encoding, the block is cut into segments in which no couple appears
+ * twice, and each segment is sorted by first then second id so that runs
+ * form. Items of a set and events on distinct couples commute, so only the
+ * order of successive events on the same couple is kept.
+ */
+final class CoupleBlock {
+
+    final int size;
+    final int[] ids1;
+    final int[] ids2;
+    final boolean[] flags;
+
+    CoupleBlock(int n, boolean hasFlags) {
+        size = n;
+        ids1 = new int[n];
+        ids2 = new int[n];
+        flags = hasFlags ? new boolean[n] : null;
+    }
+
+    // true if both ids of the i-th couple are in the group (or no group given)
+    boolean isInternal(int i, Set<Integer> group) {
+        return group == null || (group.contains(ids1[i]) && group.contains(ids2[i]));
+    }
+
+    private static long key(int id1, int id2) {
+        return ((long) id1 << 32) | ((long) id2 - Integer.MIN_VALUE);
+    }
+
+    private void sortSegments() {
+        // edges may come in either direction, so both are treated as one
+        final Set<Long> seen = new HashSet<Long>();
+        int start = 0;
+        for (int i = 0; i < size; ++i)
+            if (!seen.add(key(Math.min(ids1[i], ids2[i]), Math.max(ids1[i], ids2[i])))) {
+                sortSegment(start, i);
+                seen.clear();
+                seen.add(key(Math.min(ids1[i], ids2[i]), Math.max(ids1[i], ids2[i])));
+                start = i;
+            }
+        sortSegment(start, size);
+    }
+
+    // sorts the couples in [from,to), which are all distinct, keeping each
+    // couple's flag by sorting the flagged and unflagged ones separately and
+    // merging them back
+    private void sortSegment(int from, int to) {
+        final long[] up = new long[to - from];
+        final long[] down = new long[to - from];
+        int n_up = 0, n_down = 0;
+        for (int i = from; i < to; ++i)
+            if (flags != null && flags[i])
+                down[n_down++] = key(ids1[i], ids2[i]);
+            else
+                up[n_up++] = key(ids1[i], ids2[i]);
+        Arrays.sort(up, 0, n_up);
+        Arrays.sort(down, 0, n_down);
+        int u = 0, d = 0;
+        for (int i = from; i < to; ++i) {
+            final boolean is_down = u == n_up || (d < n_down && down[d] < up[u]);
+            final long k = is_down ? down[d++] : up[u++];
+            ids1[i] = (int) (k >> 32);
+            ids2[i] = (int) ((k & 0xFFFFFFFFL) + Integer.MIN_VALUE);
+            if (flags != null)
+                flags[i] = is_down;
+        }
+    }
+
+    void write(CodedBuffer out) {
+        sortSegments();
+        out.writeInt(size);
+        int prev_id1 = 0;
+        int i = 0;
+        while (i < size) {
+            final int id1 = ids1[i];
+            int j = i + 1;
+            while (j < size && ids1[j] == id1)
+                ++j;
+            out.writeSInt(id1 - prev_id1);
+            out.writeInt(j - i);
+            int prev_id2 = id1;
+            for (int k = i; k < j; ++k) {
+                out.writeSInt(ids2[k] - prev_id2);
+                prev_id2 = ids2[k];
+            }
+            prev_id1 = id1;
+            i = j;
+        }
+        if (flags != null)
+            for (int k = 0; k < size; k += 8) {
+                int b = 0;
+                for (int l = 0; l < 8 && k + l < size; ++l)
+                    if (flags[k + l])
+                        b |= (1 << l);
+                out.writeByte(b);
+            }
+    }
+
+    static CoupleBlock read(CodedInputStream in, boolean hasFlags) throws IOException {
+        final CoupleBlock block = new CoupleBlock(in.readInt(), hasFlags);
+        int prev_id1 = 0;
+        int i = 0;
+        while (i < block.size) {
+            final int id1 = prev_id1 + in.readSInt();
+            final int j = i + in.readInt();
+            int prev_id2 = id1;
+            for (int k = i; k < j; ++k) {
+                block.ids1[k] = id1;
+                prev_id2 += in.readSInt();
+                block.ids2[k] = prev_id2;
+            }
+            prev_id1 = id1;
+            i = j;
+        }
+        if (hasFlags)
+            for (int k = 0; k < block.size; k += 8) {
+                final int b = in.readByte();
+                for (int l = 0; l < 8 && k + l < block.size; ++l)
+                    block.flags[k + l] = ((b >> l) & 1) != 0;
+            }
+        return block;
+    }
+}
@@ -0,0 +1,399 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/*
+ * Fully dynamic connectivity after Holm, de Lichtenberg and Thorup. Each edge
+ * has a level. F_i is a spanning forest of the edges of level >= i, and each
+ * tree of F_i has at most n/2^i vertices. The trees of every F_i are kept as
+ * Euler tours in treaps, whose nodes aggregate the number of vertices and
+ * whether some vertex has tree or non-tree edges of exactly that level.
+ * Insertions and deletions take O(log^2 n) amortized time.
+ */
+final class DynamicConnectivity {
+
+    private final static class Node {
+        Node left, right, parent;
+        final int priority;
+        final Integer vertex; // null for arc nodes
+        int count; // nodes in subtree
+        int vcount; // vertex nodes in subtree
+        boolean tree_flag, nontree_flag; // vertex nodes only
+        boolean any_tree, any_nontree;
+
+        Node(Integer v, int prio) {
+            vertex = v;
+            priority = prio;
+            update();
+        }
+
+        void update() {
+            count = 1;
+            vcount = (vertex != null) ? 1 : 0;
+            any_tree = tree_flag;
+            any_nontree = nontree_flag;
+            if (left != null) {
+                count += left.count;
+                vcount += left.vcount;
+                any_tree |= left.any_tree;
+                any_nontree |= left.any_nontree;
+            }
+            if (right != null) {
+                count += right.count;
+                vcount += right.vcount;
+                any_tree |= right.any_tree;
+                any_nontree |= right.any_nontree;
+            }
+        }
+
+        void updateToRoot() {
+            Node n = this;
+            while (n != null) {
+                n.update();
+                n = n.parent;
+            }
+        }
+    }
+
+    private final static class EdgeInfo {
+        int level = 0;
+        boolean tree;
+    }
+
+    private final static class Level {
+        final Map<Integer, Node> vertex_nodes = new HashMap<Integer, Node>();
+        final Map<Arc, Node> arc_nodes = new HashMap<Arc, Node>();
+        final Map<Integer, Set<Integer>> tree_adj = new HashMap<Integer, Set<Integer>>();
+        final Map<Integer, Set<Integer>> nontree_adj = new HashMap<Integer, Set<Integer>>();
+    }
+
+    private final Map<Edge, EdgeInfo> edges = new HashMap<Edge, EdgeInfo>();
+    private final List<Level> levels = new ArrayList<Level>();
+    private final Random rng = new Random(0);
+    private Node split_left, split_right;
+
+    private Level level(int i) {
+        while (levels.size() <= i)
+            levels.add(new Level());
+        return levels.get(i);
+    }
+
+    private Node vertexNode(int i, Integer v) {
+        final Level lvl = level(i);
+        Node n = lvl.vertex_nodes.get(v);
+        if (n == null) {
+            n = new Node(v, rng.nextInt());
+            lvl.vertex_nodes.put(v, n);
+        }
+        return n;
+    }
+
+    public boolean connected(Integer u, Integer v) {
+        return connected(0, u, v);
+    }
+
+    public int componentSize(Integer v) {
+        return root(vertexNode(0, v)).vcount;
+    }
+
+    public Set<Integer> component(Integer v) {
+        final Set<Integer> members = new HashSet<Integer>();
+        final LinkedList<Node> toVisit = new LinkedList<Node>();
+        toVisit.add(root(vertexNode(0, v)));
+        while (!toVisit.isEmpty()) {
+            final Node n = toVisit.pop();
+            if (n.vertex != null)
+                members.add(n.vertex);
+            if (n.left != null)
+                toVisit.add(n.left);
+            if (n.right != null)
+                toVisit.add(n.right);
+        }
+        return members;
+    }
+
+    public void addEdge(Integer u, Integer v) {
+        final Edge e = new Edge(u, v);
+        if (u.equals(v) || edges.containsKey(e))
+            return;
+        final EdgeInfo info = new EdgeInfo();
+        edges.put(e, info);
+        if (connected(0, u, v)) {
+            addAdj(0, u, v, false);
+        } else {
+            info.tree = true;
+            addAdj(0, u, v, true);
+            link(0, u, v);
+        }
+    }
+
+    // returns true if u and v are no longer connected
+    public boolean removeEdge(Integer u, Integer v) {
+        final EdgeInfo info = edges.remove(new Edge(u, v));
+        if (info == null)
+            return false;
+        if (!info.tree) {
+            removeAdj(info.level, u, v, false);
+            return false;
+        }
+        removeAdj(info.level, u, v, true);
+        for (int i = 0; i <= info.level; ++i)
+            cut(i, u, v);
+        for (int i = info.level; i >= 0; --i)
+            if (replace(i, u, v))
+                return false;
+        return true;
+    }
+
+    // looks for a level i replacement edge for the tree edge (u,v) that has
+    // just been cut, pushing the edges of the smaller side to level i+1
+    private boolean replace(int i, Integer u, Integer v) {
+        final Node ru = root(vertexNode(i, u));
+        final Node rv = root(vertexNode(i, v));
+        final Node small = (ru.vcount <= rv.vcount) ? ru : rv;
+        final Level lvl = levels.get(i);
+
+        Node x;
+        while ((x = findTreeFlag(small)) != null) {
+            final Integer xv = x.vertex;
+            for (final Integer y : new ArrayList<Integer>(lvl.tree_adj.get(xv))) {
+                removeAdj(i, xv, y, true);
+                addAdj(i + 1, xv, y, true);
+                edges.get(new Edge(xv, y)).level = i + 1;
+                link(i + 1, xv, y);
+            }
+        }
+
+        while ((x = findNontreeFlag(small)) != null) {
+            final Integer xv = x.vertex;
+            final Set<Integer> others = lvl.nontree_adj.get(xv);
+            while (!others.isEmpty()) {
+                final Integer y = others.iterator().next();
+                final EdgeInfo info = edges.get(new Edge(xv, y));
+                removeAdj(i, xv, y, false);
+                if (root(vertexNode(i, y)) != small) { // found a replacement
+                    info.tree = true;
+                    addAdj(i, xv, y, true);
+                    for (int j = 0; j <= i; ++j)
+                        link(j, xv, y);
+                    return true;
+                }
+                info.level = i + 1;
+                addAdj(i + 1, xv, y, false);
+            }
+        }
+        return false;
+    }
+
+    private void addAdj(int i, Integer u, Integer v, boolean tree) {
+        addHalfAdj(i, u, v, tree);
+        addHalfAdj(i, v, u, tree);
+    }
+
+    private void addHalfAdj(int i, Integer u, Integer v, boolean tree) {
+        final Level lvl = level(i);
+        final Map<Integer, Set<Integer>> adj = tree ? lvl.tree_adj : lvl.nontree_adj;
+        Set<Integer> next = adj.get(u);
+        if (next == null) {
+            next = new HashSet<Integer>();
+            adj.put(u, next);
+        }
+        next.add(v);
+        if (next.size() == 1)
+            setFlag(vertexNode(i, u), tree, true);
+    }
+
+    private void removeAdj(int i, Integer u, Integer v, boolean tree) {
+        removeHalfAdj(i, u, v, tree);
+        removeHalfAdj(i, v, u, tree);
+    }
+
+    private void removeHalfAdj(int i, Integer u, Integer v, boolean tree) {
+        final Level lvl = levels.get(i);
+        final Map<Integer, Set<Integer>> adj = tree ? lvl.tree_adj : lvl.nontree_adj;
+        final Set<Integer> next = adj.get(u);
+        next.remove(v);
+        if (next.isEmpty()) {
+            adj.remove(u);
+            setFlag(vertexNode(i, u), tree, false);
+        }
+    }
+
+    private void setFlag(Node n, boolean tree, boolean value) {
+        if (tree)
+            n.tree_flag = value;
+        else
+            n.nontree_flag = value;
+        n.updateToRoot();
+    }
+
+    private static Node findTreeFlag(Node n) {
+        if (!n.any_tree)
+            return null;
+        while (true) {
+            if (n.left != null && n.left.any_tree)
+                n = n.left;
+            else if (n.tree_flag)
+                return n;
+            else
+                n = n.right;
+        }
+    }
+
+    private static Node findNontreeFlag(Node n) {
+        if (!n.any_nontree)
+            return null;
+        while (true) {
+            if (n.left != null && n.left.any_nontree)
+                n = n.left;
+            else if (n.nontree_flag)
+                return n;
+            else
+                n = n.right;
+        }
+    }
+
+    private boolean connected(int i, Integer u, Integer v) {
+        return root(vertexNode(i, u)) == root(vertexNode(i, v));
+    }
+
+    // Euler tour operations
+
+    private void link(int i, Integer u, Integer v) {
+        final Level lvl = levels.get(i);
+        final Node tu = reroot(vertexNode(i, u));
+        final Node tv = reroot(vertexNode(i, v));
+        final Node uv = new Node(null, rng.nextInt());
+        final Node vu = new Node(null, rng.nextInt());
+        lvl.arc_nodes.put(new Arc(u, v), uv);
+        lvl.arc_nodes.put(new Arc(v, u), vu);
+        merge(merge(merge(tu, uv), tv), vu).parent = null;
+    }
+
+    private void cut(int i, Integer u, Integer v) {
+        final Level lvl = levels.get(i);
+        Node a1 = lvl.arc_nodes.remove(new Arc(u, v));
+        Node a2 = lvl.arc_nodes.remove(new Arc(v, u));
+        final Node r = root(a1);
+        int p1 = index(a1), p2 = index(a2);
+        if (p1 > p2) {
+            final int p = p1;
+            p1 = p2;
+            p2 = p;
+        }
+        // tour is X a1 Y a2 Z, the result is the two tours Y and X Z
+        split(r, p2 + 1);
+        final Node z = split_right;
+        split(split_left, p2);
+        split(split_left, p1 + 1);
+        final Node y = split_right;
+        split(split_left, p1);
+        final Node x = split_left;
+        if (y != null)
+            y.parent = null;
+        final Node xz = merge(x, z);
+        if (xz != null)
+            xz.parent = null;
+    }
+
+    private Node reroot(Node n) {
+        final Node r = root(n);
+        split(r, index(n));
+        final Node t = merge(split_right, split_left);
+        t.parent = null;
+        return t;
+    }
+
+    private static Node root(Node n) {
+        while (n.parent != null)
+            n = n.parent;
+        return n;
+    }
+
+    private static int count(Node n) {
+        return (n == null) ? 0 : n.count;
+    }
+
+    private static int index(Node n) {
+        int idx = count(n.left);
+        while (n.parent != null) {
+            if (n == n.parent.right)
+                idx += count(n.parent.left) + 1;
+            n = n.parent;
+        }
+        return idx;
+    }
+
+    private static Node merge(Node a, Node b) {
+        if (a == null)
+            return b;
+        if (b == null)
+            return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            a.right.parent = a;
+            a.update();
+            return a;
+        }
+        b.left = merge(a, b.left);
+        b.left.parent = b;
+        b.update();
+        return b;
+    }
+
+    // splits t into its first k nodes (split_left) and the others (split_right)
+    private void split(Node t, int k) {
+        splitRec(t, k);
+        if (split_left != null)
+            split_left.parent = null;
+        if (split_right != null)
+            split_right.parent = null;
+    }
+
+    private void splitRec(Node t, int k) {
+        if (t == null) {
+            split_left = split_right = null;
+            return;
+        }
+        if (k <= count(t.left)) {
+            splitRec(t.left, k);
+            t.left = split_right;
+            if (t.left != null)
+                t.left.parent = t;
+            t.update();
+            split_right = t;
+        } else {
+            splitRec(t.right, k - count(t.left) - 1);
+            t.right = split_left;
+            if (t.right != null)
+                t.right.parent = t;
+            t.update();
+            split_left = t;
+        }
+    }
+}
@@ -19,8 +19,11 @@
 package ditl.graphs;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
+import ditl.BlockStats;
 import ditl.CodedBuffer;
 import ditl.CodedInputStream;
 import ditl.Filter;
@@ -51,11 +54,51 @@ public final class Edge implements Couple, Item {
         return id2;
     }
 
-    public static final class Factory implements Item.Factory<Edge> {
+    public static final class Factory implements Item.Factory<Edge>, Item.BlockCoder<Edge>, Item.NodeIdReporter<Edge>,
+            Item.GroupDecoder<Edge>, Item.GroupBlockDecoder<Edge> {
         @Override
         public Edge fromBinaryStream(CodedInputStream in) throws IOException {
             return new Edge(in.readSInt(), in.readSInt());
         }
+
+        @Override
+        public Edge fromBinaryStream(CodedInputStream in, Set<Integer> group) throws IOException {
+            final int id1 = in.readSInt(), id2 = in.readSInt();
+            if (group.contains(id1) && group.contains(id2))
+                return new Edge(id1, id2);
+            return null;
+        }
+
+        @Override
+        public void writeBlock(CodedBuffer out, Collection<Edge> items) {
+            final CoupleBlock block = new CoupleBlock(items.size(), false);
+            int i = 0;
+            for (final Edge e : items) {
+                block.ids1[i] = e.id1;
+                block.ids2[i] = e.id2;
+                ++i;
+            }
+            block.write(out);
+        }
+
+        @Override
+        public void readBlock(CodedInputStream in, List<Edge> items) throws IOException {
+            readBlock(in, items, null);
+        }
+
+        @Override
+        public void readBlock(CodedInputStream in, List<Edge> items, Set<Integer> group) throws IOException {
+            final CoupleBlock block = CoupleBlock.read(in, false);
+            for (int i = 0; i < block.size; ++i)
+                if (block.isInternal(i, group))
+                    items.add(new Edge(block.ids1[i], block.ids2[i]));
+        }
+
+        @Override
+        public void reportNodeIds(Edge item, BlockStats.Collector ids) {
+            ids.add(item.id1);
+            ids.add(item.id2);
+        }
     }
 
     public boolean hasVertex(Integer id) {
@@ -68,6 +111,11 @@ public final class Edge implements Couple, Item {
         return (ct.id1.equals(id1)) && (ct.id2.equals(id2));
     }
 
+    @Override
+    public int hashCode() {
+        return 31 * id1.hashCode() + id2.hashCode();
+    }
+
     @Override
     public String toString() {
         return id1 + " " + id2;
@@ -19,8 +19,11 @@
 package ditl.graphs;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
+import ditl.BlockStats;
 import ditl.CodedBuffer;
 import ditl.CodedInputStream;
 import ditl.Filter;
@@ -61,11 +64,53 @@ public final class EdgeEvent implements Item {
         return new Edge(id1, id2);
     }
 
-    public static final class Factory implements Item.Factory<EdgeEvent> {
+    public static final class Factory implements Item.Factory<EdgeEvent>, Item.BlockCoder<EdgeEvent>, Item.NodeIdReporter<EdgeEvent>,
+            Item.GroupDecoder<EdgeEvent>, Item.GroupBlockDecoder<EdgeEvent> {
         @Override
         public EdgeEvent fromBinaryStream(CodedInputStream in) throws IOException {
             return new EdgeEvent(in.readSInt(), in.readSInt(), Type.values()[in.readByte()]);
         }
+
+        @Override
+        public EdgeEvent fromBinaryStream(CodedInputStream in, Set<Integer> group) throws IOException {
+            final int id1 = in.readSInt(), id2 = in.readSInt();
+            final byte type = in.readByte();
+            if (group.contains(id1) && group.contains(id2))
+                return new EdgeEvent(id1, id2, Type.values()[type]);
+            return null;
+        }
+
+        @Override
+        public void writeBlock(CodedBuffer out, Collection<EdgeEvent> items) {
+            final CoupleBlock block = new CoupleBlock(items.size(), true);
+            int i = 0;
+            for (final EdgeEvent e : items) {
+                block.ids1[i] = e.id1;
+                block.ids2[i] = e.id2;
+                block.flags[i] = (e.type == Type.DOWN);
+                ++i;
+            }
+            block.write(out);
+        }
+
+        @Override
+        public void readBlock(CodedInputStream in, List<EdgeEvent> items) throws IOException {
+            readBlock(in, items, null);
+        }
+
+        @Override
+        public void readBlock(CodedInputStream in, List<EdgeEvent> items, Set<Integer> group) throws IOException {
+            final CoupleBlock block = CoupleBlock.read(in, true);
+            for (int i = 0; i < block.size; ++i)
+                if (block.isInternal(i, group))
+                    items.add(new EdgeEvent(block.ids1[i], block.ids2[i], block.flags[i] ? Type.DOWN : Type.UP));
+        }
+
+        @Override
+        public void reportNodeIds(EdgeEvent item, BlockStats.Collector ids) {
+            ids.add(item.id1);
+            ids.add(item.id2);
+        }
     }
 
     @Override
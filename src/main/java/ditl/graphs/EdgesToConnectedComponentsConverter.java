@@ -41,10 +41,16 @@ public final class EdgesToConnectedComponentsConverter implements Converter {
     private int counter = 0;
     private final GroupTrace _ccs;
     private final EdgeTrace _edges;
+    private final DynamicConnectivity connectivity;
 
     public EdgesToConnectedComponentsConverter(GroupTrace ccs, EdgeTrace edges) {
+        this(ccs, edges, false);
+    }
+
+    public EdgesToConnectedComponentsConverter(GroupTrace ccs, EdgeTrace edges, boolean dynamicConnectivity) {
         _ccs = ccs;
         _edges = edges;
+        connectivity = dynamicConnectivity ? new DynamicConnectivity() : null;
     }
 
     private void merge(long time, Group cc1, Group cc2) throws IOException {
@@ -56,6 +62,23 @@ public final class EdgesToConnectedComponentsConverter implements Converter {
         group_writer.append(time, new GroupEvent(cc1.gid, GroupEvent.Type.JOIN, cc2._members));
     }
 
+    // same as checkSplit but only enumerates the smaller side of the split
+    private void checkDynamicSplit(long time, Edge e, Group cc) throws IOException {
+        if (connectivity.removeEdge(e.id1, e.id2)) { // the CC has split!
+            final int half = cc.size() / 2;
+            final Group ncc = newCC(time);
+            if (connectivity.componentSize(e.id1) > half)
+                ncc._members = connectivity.component(e.id2);
+            else
+                ncc._members = connectivity.component(e.id1);
+            cc._members.removeAll(ncc._members);
+            group_writer.append(time, new GroupEvent(cc.gid, GroupEvent.Type.LEAVE, ncc._members));
+            for (final Integer j : ncc._members)
+                cc_map.put(j, ncc);
+            group_writer.append(time, new GroupEvent(ncc.gid, GroupEvent.Type.JOIN, ncc._members));
+        }
+    }
+
     private void checkSplit(long time, Integer i, Group cc) throws IOException {
         final LinkedList<Integer> toVisit = new LinkedList<Integer>();
         final Set<Integer> visited = new HashSet<Integer>();
@@ -145,8 +168,13 @@ public final class EdgesToConnectedComponentsConverter implements Converter {
             removeSingleton(time, e.id1);
         if (singleton2) // id2 has become a singleton
             removeSingleton(time, e.id2);
-        if (!singleton1 && !singleton2)
-            checkSplit(time, e.id1, cc_map.get(e.id1));
+        if (!singleton1 && !singleton2) {
+            if (connectivity != null)
+                checkDynamicSplit(time, e, cc_map.get(e.id1));
+            else
+                checkSplit(time, e.id1, cc_map.get(e.id1));
+        } else if (connectivity != null)
+            connectivity.removeEdge(e.id1, e.id2);
     }
 
     public void handleEvents(long time, Collection<EdgeEvent> events) throws IOException {
@@ -155,6 +183,8 @@ public final class EdgesToConnectedComponentsConverter implements Converter {
             final Edge e = eev.edge();
             if (eev.isUp()) {
                 adjacency.add(e);
+                if (connectivity != null)
+                    connectivity.addEdge(e.id1, e.id2);
                 addEdge(time, e);
             } else
                 down_events.addLast(eev);
@@ -212,8 +242,11 @@ public final class EdgesToConnectedComponentsConverter implements Converter {
         final long minTime = _edges.minTime();
         edge_reader.seek(minTime);
         final Collection<Edge> initEdges = edge_reader.referenceState();
-        for (final Edge e : initEdges)
+        for (final Edge e : initEdges) {
             adjacency.add(e);
+            if (connectivity != null)
+                connectivity.addEdge(e.id1, e.id2);
+        }
         setInitState(minTime);
         while (edge_reader.hasNext()) {
             final long time = edge_reader.nextTime();
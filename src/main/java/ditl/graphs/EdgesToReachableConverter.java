@@ -29,7 +29,6 @@ import ditl.Bus;
 import ditl.Converter;
 import ditl.Generator;
 import ditl.Listener;
-import ditl.Matcher;
 import ditl.Runner;
 import ditl.StatefulReader;
 import ditl.StatefulWriter;
@@ -58,6 +57,7 @@ public class EdgesToReachableConverter implements EdgeTrace.Handler, Generator,
         _delay = delay;
         _eta = eta;
         edge_bus.addListener(new EdgeListener());
+        edge_bus.addIndexer(Bus.<Edge> identityIndexer());
         outbus.addListener(new Outputer());
     }
 
@@ -74,12 +74,7 @@ public class EdgesToReachableConverter implements EdgeTrace.Handler, Generator,
                         fire(time - _tau, e, false);
                         cur_edges.remove(e);
                     } else
-                        edge_bus.removeFromQueueAfterTime(time - _tau, new Matcher<Edge>() {
-                            @Override
-                            public boolean matches(Edge item) {
-                                return item.equals(e);
-                            }
-                        });
+                        edge_bus.removeFromQueueAfterTime(time - _tau, Bus.<Edge> identityIndexer(), e);
                 }
             }
         };
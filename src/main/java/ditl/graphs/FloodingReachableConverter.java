@@ -19,17 +19,25 @@
 package ditl.graphs;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import ditl.Bus;
 import ditl.Converter;
 import ditl.Generator;
 import ditl.Listener;
-import ditl.Matcher;
 import ditl.Runner;
 import ditl.StatefulReader;
 import ditl.StatefulWriter;
@@ -44,7 +52,7 @@ public class FloodingReachableConverter implements
 
     private StatefulWriter<ArcEvent, Arc> arc_writer;
 
-    private final Set<Arc> state = new TreeSet<Arc>();
+    private final Set<Arc> state = new AdjacencySet.Arcs();
     private final Set<Integer> present = new HashSet<Integer>();
     private final AdjacencySet.Arcs rev_matrix = new AdjacencySet.Arcs();
     private final AdjacencySet.Edges matrix = new AdjacencySet.Edges();
@@ -55,10 +63,28 @@ public class FloodingReachableConverter implements
     private final ReachabilityTrace _reachability;
 
     private final Bus<Object> update_bus = new Bus<Object>();
-    private final Bus<Infection> infection_bus = new Bus<Infection>();
+    private final Bus<Infection> infection_bus = new Bus<Infection>(Bus.QueueType.HEAP);
+
+    // Origins do not interact, so with several threads each thread floods
+    // from its own shard of the origins (o mod n_shards == shard) over its
+    // own replay of the edges and presence. The shards hand the changes of
+    // their state at the end of each period to the merging thread through
+    // a bounded queue.
+    private final int n_threads;
+    private int shard = 0;
+    private int n_shards = 1;
+    private BlockingQueue<Period> periods = null;
+    private Set<Arc> prev_state = null;
+    private final static int MAX_QUEUED_PERIODS = 4;
 
     public FloodingReachableConverter(ReachabilityTrace reachability, PresenceTrace presence,
             EdgeTrace edges, long tau, long period, long minTime) {
+        this(reachability, presence, edges, tau, period, minTime, 1);
+    }
+
+    public FloodingReachableConverter(ReachabilityTrace reachability, PresenceTrace presence,
+            EdgeTrace edges, long tau, long period, long minTime, int nThreads) {
+        n_threads = nThreads;
         min_time = minTime;
         _edges = edges;
         _presence = presence;
@@ -67,6 +93,9 @@ public class FloodingReachableConverter implements
         _delay = period;
         update_bus.addListener(new UpdateListener());
         infection_bus.addListener(new InfectionListener());
+        infection_bus.addIndexer(edge_indexer);
+        infection_bus.addIndexer(node_indexer);
+        infection_bus.addIndexer(transfer_indexer);
     }
 
     @Override
@@ -94,7 +123,7 @@ public class FloodingReachableConverter implements
                         }
                     } else {
                         matrix.remove(e);
-                        infection_bus.removeFromQueueAfterTime(time, new EdgeMatcher(e));
+                        infection_bus.removeFromQueueAfterTime(time, edge_indexer, e);
                     }
                 }
             }
@@ -123,9 +152,6 @@ public class FloodingReachableConverter implements
 
     @Override
     public void convert() throws IOException {
-        final StatefulReader<EdgeEvent, Edge> edge_reader = _edges.getReader();
-        final StatefulReader<PresenceEvent, Presence> presence_reader = _presence.getReader();
-
         arc_writer = _reachability.getWriter();
 
         arc_writer.setProperty(ReachabilityTrace.delayKey, _delay);
@@ -134,6 +160,19 @@ public class FloodingReachableConverter implements
         arc_writer.setProperty(Trace.minTimeKey, _edges.minTime());
         arc_writer.setProperty(Trace.maxTimeKey, _edges.maxTime());
 
+        if (n_threads > 1)
+            floodInParallel();
+        else
+            flood();
+
+        arc_writer.flush();
+        arc_writer.close();
+    }
+
+    private void flood() throws IOException {
+        final StatefulReader<EdgeEvent, Edge> edge_reader = _edges.getReader();
+        final StatefulReader<PresenceEvent, Presence> presence_reader = _presence.getReader();
+
         edge_reader.stateBus().addListener(edgeListener());
         edge_reader.bus().addListener(edgeEventListener());
 
@@ -146,12 +185,136 @@ public class FloodingReachableConverter implements
         runner.addGenerator(this);
         runner.run();
 
-        arc_writer.flush();
-        arc_writer.close();
         edge_reader.close();
         presence_reader.close();
     }
 
+    private void floodInParallel() throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(n_threads);
+        final List<FloodingReachableConverter> shards = new ArrayList<FloodingReachableConverter>();
+        final List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        for (int k = 0; k < n_threads; ++k) {
+            final FloodingReachableConverter s = new FloodingReachableConverter(_reachability, _presence, _edges, _tau, _delay, min_time);
+            s.shard = k;
+            s.n_shards = n_threads;
+            s.periods = new ArrayBlockingQueue<Period>(MAX_QUEUED_PERIODS);
+            shards.add(s);
+            futures.add(executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    try {
+                        s.flood();
+                    } finally {
+                        s.periods.put(Period.END);
+                    }
+                    return null;
+                }
+            }));
+        }
+        try {
+            int ended = -1;
+            while (ended < 0) {
+                final Period[] ps = new Period[n_threads];
+                for (int k = 0; k < n_threads && ended < 0; ++k) {
+                    ps[k] = shards.get(k).periods.take();
+                    if (ps[k] == Period.END)
+                        ended = k;
+                }
+                if (ended < 0)
+                    merge(ps);
+            }
+            // the first shard to end is the one that failed, if any
+            futures.get(ended).get();
+            for (final Future<Object> f : futures)
+                f.get();
+        } catch (final InterruptedException e) {
+            throw new IOException(e);
+        } catch (final ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void merge(Period[] ps) throws IOException {
+        final long t = ps[0].time;
+        if (ps[0].down == null) {
+            final List<Arc> states = new ArrayList<Arc>();
+            for (final Period p : ps)
+                states.addAll(p.up);
+            arc_writer.setInitState(t, states);
+        } else {
+            for (final Period p : ps)
+                for (final Arc a : p.up)
+                    arc_writer.queue(t, new ArcEvent(a, ArcEvent.Type.UP));
+            for (final Period p : ps)
+                for (final Arc a : p.down)
+                    arc_writer.queue(t, new ArcEvent(a, ArcEvent.Type.DOWN));
+            arc_writer.flush();
+        }
+    }
+
+    // the arcs of a shard that came up and went down at the end of a period,
+    // or its whole initial state if down is null
+    private final static class Period {
+        final static Period END = new Period(Long.MAX_VALUE, null, null);
+
+        final long time;
+        final Collection<Arc> up;
+        final Collection<Arc> down;
+
+        Period(long t, Collection<Arc> upArcs, Collection<Arc> downArcs) {
+            time = t;
+            up = upArcs;
+            down = downArcs;
+        }
+    }
+
+    private void setInitState(long time, Set<Arc> states) throws IOException {
+        if (periods == null)
+            arc_writer.setInitState(time, states);
+        else {
+            prev_state = new HashSet<Arc>(states);
+            hand(new Period(time, new ArrayList<Arc>(states), null));
+        }
+    }
+
+    private void writeState(long t) throws IOException {
+        if (periods == null) {
+            final Set<Arc> cur_state = arc_writer.states();
+            for (final Arc a : state)
+                if (!cur_state.contains(a))
+                    arc_writer.queue(t, new ArcEvent(a, ArcEvent.Type.UP));
+            for (final Arc a : cur_state)
+                if (!state.contains(a))
+                    arc_writer.queue(t, new ArcEvent(a, ArcEvent.Type.DOWN));
+            arc_writer.flush();
+        } else {
+            final List<Arc> up = new ArrayList<Arc>();
+            final List<Arc> down = new ArrayList<Arc>();
+            for (final Arc a : state)
+                if (!prev_state.contains(a))
+                    up.add(a);
+            for (final Arc a : prev_state)
+                if (!state.contains(a))
+                    down.add(a);
+            prev_state = new HashSet<Arc>(state);
+            hand(new Period(t, up, down));
+        }
+    }
+
+    private void hand(Period p) throws IOException {
+        try {
+            periods.put(p);
+        } catch (final InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private boolean isOrigin(int id) {
+        return ((id % n_shards) + n_shards) % n_shards == shard;
+    }
+
     @Override
     public Bus<?>[] busses() {
         return new Bus<?>[] { infection_bus, update_bus };
@@ -192,17 +355,9 @@ public class FloodingReachableConverter implements
                 // first handle previous time period
                 final long t = time - _delay;
                 if (t == _edges.minTime())
-                    arc_writer.setInitState(min_time, state);
-                else {
-                    final Set<Arc> cur_state = arc_writer.states();
-                    for (final Arc a : state)
-                        if (!cur_state.contains(a))
-                            arc_writer.queue(t, new ArcEvent(a, ArcEvent.Type.UP));
-                    for (final Arc a : cur_state)
-                        if (!state.contains(a))
-                            arc_writer.queue(t, new ArcEvent(a, ArcEvent.Type.DOWN));
-                    arc_writer.flush();
-                }
+                    setInitState(min_time, state);
+                else
+                    writeState(t);
 
                 // then clear state and start new epidemic
                 state.clear();
@@ -212,13 +367,14 @@ public class FloodingReachableConverter implements
                 started = true;
                 if (min_time > _edges.minTime()) // starting after min_time =>
                                                  // empty initial state
-                    arc_writer.setInitState(_edges.minTime(), Collections.<Arc> emptySet());
+                    setInitState(_edges.minTime(), Collections.<Arc> emptySet());
             }
 
-            for (final Integer i : present) {
-                rev_matrix.add(new Arc(i, i));
-                broadcast(time, i, i);
-            }
+            for (final Integer i : present)
+                if (isOrigin(i)) {
+                    rev_matrix.add(new Arc(i, i));
+                    broadcast(time, i, i);
+                }
 
             update_bus.queue(time + _delay, Collections.emptySet());
         }
@@ -231,7 +387,7 @@ public class FloodingReachableConverter implements
                 final Arc a = infection.arc();
                 state.add(a);
                 rev_matrix.add(a.reverse());
-                infection_bus.removeFromQueueAfterTime(time, new TransferMatcher(infection.rcpt(), infection._orig));
+                infection_bus.removeFromQueueAfterTime(time, transfer_indexer, a);
                 broadcast(time, infection.rcpt(), infection._orig);
             }
         }
@@ -249,46 +405,29 @@ public class FloodingReachableConverter implements
             }
     }
 
-    private final class EdgeMatcher implements Matcher<Infection> {
-        Edge _edge;
-
-        EdgeMatcher(Edge edge) {
-            _edge = edge;
-        }
-
+    // pending infections by the edge they travel over
+    private final Bus.Indexer<Infection> edge_indexer = new Bus.Indexer<Infection>() {
         @Override
-        public boolean matches(Infection item) {
-            return item._arc.edge().equals(_edge);
-        }
-    }
-
-    private final class NodeMatcher implements Matcher<Infection> {
-        Integer _id;
-
-        NodeMatcher(Integer id) {
-            _id = id;
+        public Collection<Edge> keys(Infection item) {
+            return Collections.singleton(item._arc.edge());
         }
+    };
 
+    // pending infections by their sending and receiving nodes
+    private final Bus.Indexer<Infection> node_indexer = new Bus.Indexer<Infection>() {
         @Override
-        public boolean matches(Infection item) {
-            return item._arc.from.equals(_id) || item._arc.to.equals(_id);
-        }
-    }
-
-    private final class TransferMatcher implements Matcher<Infection> {
-        Integer _id;
-        Integer _orig;
-
-        TransferMatcher(Integer id, Integer orig) {
-            _id = id;
-            _orig = orig;
+        public Collection<Integer> keys(Infection item) {
+            return Arrays.asList(item._arc.from, item._arc.to);
         }
+    };
 
+    // pending infections by the (origin, recipient) arc they would create
+    private final Bus.Indexer<Infection> transfer_indexer = new Bus.Indexer<Infection>() {
         @Override
-        public boolean matches(Infection item) {
-            return _orig.equals(item._orig) && item._arc.to.equals(_id);
+        public Collection<Arc> keys(Infection item) {
+            return Collections.singleton(item.arc());
         }
-    }
+    };
 
     @Override
     public Listener<Presence> presenceListener() {
@@ -310,11 +449,13 @@ public class FloodingReachableConverter implements
                     final Integer id = pev.id;
                     if (pev.isIn()) {
                         present.add(id);
-                        rev_matrix.add(new Arc(id, id));
-                        broadcast(time, id, id);
+                        if (isOrigin(id)) {
+                            rev_matrix.add(new Arc(id, id));
+                            broadcast(time, id, id);
+                        }
                     } else {
                         present.remove(id);
-                        infection_bus.removeFromQueueAfterTime(time, new NodeMatcher(id));
+                        infection_bus.removeFromQueueAfterTime(time, node_indexer, id);
                     }
                 }
             }
@@ -0,0 +1,354 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/*
+ * Same as AdjacencyMap but backed by primitive open-addressing tables, with
+ * id-based accessors that neither box ids nor allocate couples. The Map<C,T>
+ * interface is kept for compatibility. Iteration order differs from
+ * AdjacencyMap.
+ */
+public abstract class IntAdjacencyMap<C extends Couple, T> extends AbstractMap<C, T> {
+
+    final IntTable<IntTable<T>> rows = new IntTable<IntTable<T>>();
+    int size = 0;
+
+    // allocation-free cursor over the neighbours of a vertex, see neighbours()
+    public final static class Neighbours<T> {
+        private IntTable<T> row;
+        private int slot;
+
+        public boolean next() {
+            if (row == null)
+                return false;
+            slot = row.nextSlot(slot + 1);
+            return slot >= 0;
+        }
+
+        public int id() {
+            return row.keyAt(slot);
+        }
+
+        public T value() {
+            return row.valueAt(slot);
+        }
+    }
+
+    public Neighbours<T> neighbours(int id, Neighbours<T> cursor) {
+        final Neighbours<T> n = (cursor != null) ? cursor : new Neighbours<T>();
+        n.row = rows.get(id);
+        n.slot = -1;
+        return n;
+    }
+
+    public int degree(int id) {
+        final IntTable<T> row = rows.get(id);
+        return (row == null) ? 0 : row.size();
+    }
+
+    public boolean containsPair(int id1, int id2) {
+        final IntTable<T> row = rows.get(id1);
+        return row != null && row.containsKey(id2);
+    }
+
+    public T getPair(int id1, int id2) {
+        final IntTable<T> row = rows.get(id1);
+        return (row == null) ? null : row.get(id2);
+    }
+
+    public T putPair(int id1, int id2, T obj) {
+        final T prev = putDirected(id1, id2, obj);
+        if (prev == null)
+            size++;
+        return prev;
+    }
+
+    public T removePair(int id1, int id2) {
+        final T obj = removeDirected(id1, id2);
+        if (obj != null)
+            size--;
+        return obj;
+    }
+
+    T putDirected(int id1, int id2, T obj) {
+        IntTable<T> row = rows.get(id1);
+        if (row == null) {
+            row = new IntTable<T>();
+            rows.put(id1, row);
+        }
+        return row.put(id2, obj);
+    }
+
+    T removeDirected(int id1, int id2) {
+        final IntTable<T> row = rows.get(id1);
+        if (row == null)
+            return null;
+        final T obj = row.remove(id2);
+        if (row.isEmpty())
+            rows.remove(id1);
+        return obj;
+    }
+
+    public Set<Integer> vertices() {
+        final Set<Integer> vertices = new HashSet<Integer>();
+        for (int s = rows.nextSlot(0); s >= 0; s = rows.nextSlot(s + 1)) {
+            vertices.add(rows.keyAt(s));
+            final IntTable<T> row = rows.valueAt(s);
+            for (int t = row.nextSlot(0); t >= 0; t = row.nextSlot(t + 1))
+                vertices.add(row.keyAt(t));
+        }
+        return Collections.unmodifiableSet(vertices);
+    }
+
+    protected abstract C newCouple(int id1, int id2);
+
+    // whether the iterators should skip the couple (id1,id2)
+    boolean skip(int id1, int id2) {
+        return false;
+    }
+
+    @Override
+    public T get(Object key) {
+        final Couple c = (Couple) key;
+        return getPair(c.id1(), c.id2());
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        final Couple c = (Couple) key;
+        return containsPair(c.id1(), c.id2());
+    }
+
+    @Override
+    public T put(C c, T obj) {
+        return putPair(c.id1(), c.id2(), obj);
+    }
+
+    @Override
+    public T remove(Object key) {
+        final Couple c = (Couple) key;
+        return removePair(c.id1(), c.id2());
+    }
+
+    @Override
+    public void clear() {
+        rows.clear();
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Set<Map.Entry<C, T>> entrySet() {
+        return new AbstractSet<Map.Entry<C, T>>() {
+            @Override
+            public Iterator<Map.Entry<C, T>> iterator() {
+                return new CoupleIterator<Map.Entry<C, T>>() {
+                    @Override
+                    Map.Entry<C, T> current(int id1, int id2, T value) {
+                        return new AbstractMap.SimpleImmutableEntry<C, T>(newCouple(id1, id2), value);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Set<C> keySet() {
+        return new AbstractSet<C>() {
+            @Override
+            public Iterator<C> iterator() {
+                return keysIterator();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                return IntAdjacencyMap.this.remove(o) != null;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    Iterator<C> keysIterator() {
+        return new CoupleIterator<C>() {
+            @Override
+            C current(int id1, int id2, T value) {
+                return newCouple(id1, id2);
+            }
+        };
+    }
+
+    abstract class CoupleIterator<E> implements Iterator<E> {
+        private int row_slot = -1;
+        private IntTable<T> row = null;
+        private int slot = -1;
+        // removals shift entries within the tables, so the first remove()
+        // copies the couples that are left to visit
+        private int[] rest = null;
+        private int rest_pos = 0, rest_end = 0;
+        private boolean has_last = false;
+        private int last_id1, last_id2;
+
+        CoupleIterator() {
+            peek();
+        }
+
+        private void peek() {
+            while (true) {
+                if (row != null) {
+                    slot = row.nextSlot(slot + 1);
+                    if (slot >= 0) {
+                        if (skip(rows.keyAt(row_slot), row.keyAt(slot)))
+                            continue;
+                        return;
+                    }
+                }
+                row_slot = rows.nextSlot(row_slot + 1);
+                if (row_slot < 0) {
+                    row = null;
+                    return;
+                }
+                row = rows.valueAt(row_slot);
+                slot = -1;
+            }
+        }
+
+        private void copyRest() {
+            rest = new int[16];
+            while (row != null) {
+                if (rest_end + 2 > rest.length)
+                    rest = Arrays.copyOf(rest, 2 * rest.length);
+                rest[rest_end++] = rows.keyAt(row_slot);
+                rest[rest_end++] = row.keyAt(slot);
+                peek();
+            }
+        }
+
+        abstract E current(int id1, int id2, T value);
+
+        @Override
+        public boolean hasNext() {
+            return (rest != null) ? rest_pos < rest_end : row != null;
+        }
+
+        @Override
+        public E next() {
+            final E e;
+            if (rest != null) {
+                if (rest_pos >= rest_end)
+                    throw new NoSuchElementException();
+                last_id1 = rest[rest_pos++];
+                last_id2 = rest[rest_pos++];
+                e = current(last_id1, last_id2, getPair(last_id1, last_id2));
+            } else {
+                if (row == null)
+                    throw new NoSuchElementException();
+                last_id1 = rows.keyAt(row_slot);
+                last_id2 = row.keyAt(slot);
+                e = current(last_id1, last_id2, row.valueAt(slot));
+                peek();
+            }
+            has_last = true;
+            return e;
+        }
+
+        @Override
+        public void remove() {
+            if (!has_last)
+                throw new IllegalStateException();
+            if (rest == null)
+                copyRest();
+            removePair(last_id1, last_id2);
+            has_last = false;
+        }
+    }
+
+    public final static class Arcs<T> extends IntAdjacencyMap<Arc, T> {
+        @Override
+        protected Arc newCouple(int id1, int id2) {
+            return new Arc(id1, id2);
+        }
+    }
+
+    public final static class Edges<T> extends IntAdjacencyMap<Edge, T> {
+        @Override
+        protected Edge newCouple(int id1, int id2) {
+            return new Edge(id1, id2);
+        }
+
+        @Override
+        T putDirected(int id1, int id2, T obj) {
+            final T prev = super.putDirected(id1, id2, obj);
+            super.putDirected(id2, id1, obj);
+            return prev;
+        }
+
+        @Override
+        T removeDirected(int id1, int id2) {
+            final T obj = super.removeDirected(id1, id2);
+            super.removeDirected(id2, id1);
+            return obj;
+        }
+
+        @Override
+        boolean skip(int id1, int id2) {
+            return id2 <= id1;
+        }
+
+        @Override
+        public Set<Integer> vertices() {
+            final Set<Integer> vertices = new HashSet<Integer>();
+            for (int s = rows.nextSlot(0); s >= 0; s = rows.nextSlot(s + 1))
+                vertices.add(rows.keyAt(s));
+            return Collections.unmodifiableSet(vertices);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import ditl.Listener;
+import ditl.StatefulListener;
+
+/*
+ * Same as AdjacencySet but backed by an IntAdjacencyMap, see there.
+ */
+public abstract class IntAdjacencySet<C extends Couple> extends AbstractSet<C> {
+
+    protected IntAdjacencyMap<C, Boolean> map = null;
+
+    public boolean containsPair(int id1, int id2) {
+        return map.containsPair(id1, id2);
+    }
+
+    public boolean addPair(int id1, int id2) {
+        return (map.putPair(id1, id2, Boolean.TRUE) == null);
+    }
+
+    public boolean removePair(int id1, int id2) {
+        return (map.removePair(id1, id2) != null);
+    }
+
+    public int degree(int id) {
+        return map.degree(id);
+    }
+
+    public IntAdjacencyMap.Neighbours<Boolean> neighbours(int id, IntAdjacencyMap.Neighbours<Boolean> cursor) {
+        return map.neighbours(id, cursor);
+    }
+
+    public Set<Integer> getNext(final Integer i) {
+        return new AbstractSet<Integer>() {
+            @Override
+            public boolean contains(Object o) {
+                return map.containsPair(i, (Integer) o);
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                return map.removePair(i, (Integer) o) != null;
+            }
+
+            @Override
+            public Iterator<Integer> iterator() {
+                final IntAdjacencyMap.Neighbours<Boolean> n = map.neighbours(i, null);
+                return new Iterator<Integer>() {
+                    boolean has_next = n.next();
+                    // see IntAdjacencyMap.CoupleIterator
+                    int[] rest = null;
+                    int rest_pos = 0, rest_end = 0;
+                    Integer last = null;
+
+                    @Override
+                    public boolean hasNext() {
+                        return (rest != null) ? rest_pos < rest_end : has_next;
+                    }
+
+                    @Override
+                    public Integer next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        if (rest != null) {
+                            last = rest[rest_pos++];
+                        } else {
+                            last = n.id();
+                            has_next = n.next();
+                        }
+                        return last;
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last == null)
+                            throw new IllegalStateException();
+                        if (rest == null) {
+                            rest = new int[map.degree(i)];
+                            while (has_next) {
+                                rest[rest_end++] = n.id();
+                                has_next = n.next();
+                            }
+                        }
+                        map.removePair(i, last);
+                        last = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return map.degree(i);
+            }
+        };
+    }
+
+    public Set<Integer> vertices() {
+        return map.vertices();
+    }
+
+    @Override
+    public boolean add(C c) {
+        return (map.put(c, Boolean.TRUE) == null);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return map.containsKey(o);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return (map.remove(o) != null);
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+
+    @Override
+    public Iterator<C> iterator() {
+        return map.keysIterator();
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    public final static class Edges extends IntAdjacencySet<Edge>
+            implements EdgeTrace.Handler {
+
+        public Edges() {
+            map = new IntAdjacencyMap.Edges<Boolean>();
+        }
+
+        @Override
+        public Listener<Edge> edgeListener() {
+            return new StatefulListener<Edge>() {
+                @Override
+                public void handle(long time, Collection<Edge> events) {
+                    for (final Edge ct : events)
+                        add(ct);
+                }
+
+                @Override
+                public void reset() {
+                    clear();
+                }
+            };
+        }
+
+        @Override
+        public Listener<EdgeEvent> edgeEventListener() {
+            return new Listener<EdgeEvent>() {
+                @Override
+                public void handle(long time, Collection<EdgeEvent> events) {
+                    for (final EdgeEvent cev : events)
+                        if (cev.isUp())
+                            addPair(cev.id1, cev.id2);
+                        else
+                            removePair(cev.id1, cev.id2);
+                }
+            };
+        }
+    }
+
+    public final static class Arcs extends IntAdjacencySet<Arc>
+            implements ArcTrace.Handler {
+
+        public Arcs() {
+            map = new IntAdjacencyMap.Arcs<Boolean>();
+        }
+
+        @Override
+        public Listener<Arc> arcListener() {
+            return new StatefulListener<Arc>() {
+                @Override
+                public void handle(long time, Collection<Arc> events) {
+                    for (final Arc a : events)
+                        add(a);
+                }
+
+                @Override
+                public void reset() {
+                    clear();
+                }
+            };
+        }
+
+        @Override
+        public Listener<ArcEvent> arcEventListener() {
+            return new Listener<ArcEvent>() {
+                @Override
+                public void handle(long time, Collection<ArcEvent> events) {
+                    for (final ArcEvent aev : events)
+                        if (aev.isUp())
+                            addPair(aev.from, aev.to);
+                        else
+                            removePair(aev.from, aev.to);
+                }
+            };
+        }
+    }
+}
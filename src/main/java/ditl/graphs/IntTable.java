@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs;
+
+import java.util.Arrays;
+
+/*
+ * Open-addressing hash table from primitive int keys to non-null values,
+ * with linear probing and backward-shift deletion. Iterate over the used
+ * slots with nextSlot(), keyAt() and valueAt().
+ */
+final class IntTable<V> {
+
+    private final static int INITIAL_CAPACITY = 4;
+
+    private int[] keys;
+    private Object[] vals;
+    private int mask;
+    private int size = 0;
+
+    IntTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    IntTable(int capacity) {
+        int cap = INITIAL_CAPACITY;
+        while (cap < 2 * capacity)
+            cap <<= 1;
+        keys = new int[cap];
+        vals = new Object[cap];
+        mask = cap - 1;
+    }
+
+    private static int hash(int key) {
+        final int h = key * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private int slot(int key) {
+        int i = hash(key) & mask;
+        while (vals[i] != null) {
+            if (keys[i] == key)
+                return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean containsKey(int key) {
+        return slot(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        final int i = slot(key);
+        return (i >= 0) ? (V) vals[i] : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V put(int key, V value) {
+        if (value == null)
+            throw new NullPointerException();
+        int i = hash(key) & mask;
+        while (vals[i] != null) {
+            if (keys[i] == key) {
+                final V prev = (V) vals[i];
+                vals[i] = value;
+                return prev;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        vals[i] = value;
+        if (++size * 2 > keys.length)
+            rehash(keys.length << 1);
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V remove(int key) {
+        int i = slot(key);
+        if (i < 0)
+            return null;
+        final V prev = (V) vals[i];
+        vals[i] = null;
+        --size;
+        // shift back the following entries of the probe sequence
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (vals[j] == null)
+                break;
+            final int k = hash(keys[j]) & mask;
+            if ((i <= j) ? (i < k && k <= j) : (i < k || k <= j))
+                continue;
+            keys[i] = keys[j];
+            vals[i] = vals[j];
+            vals[j] = null;
+            i = j;
+        }
+        return prev;
+    }
+
+    void clear() {
+        Arrays.fill(vals, null);
+        size = 0;
+    }
+
+    // first used slot at or after 'from', or -1
+    int nextSlot(int from) {
+        for (int i = from; i < vals.length; ++i)
+            if (vals[i] != null)
+                return i;
+        return -1;
+    }
+
+    int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    V valueAt(int slot) {
+        return (V) vals[slot];
+    }
+
+    private void rehash(int capacity) {
+        final int[] old_keys = keys;
+        final Object[] old_vals = vals;
+        keys = new int[capacity];
+        vals = new Object[capacity];
+        mask = capacity - 1;
+        for (int s = 0; s < old_keys.length; ++s)
+            if (old_vals[s] != null) {
+                int i = hash(old_keys[s]) & mask;
+                while (vals[i] != null)
+                    i = (i + 1) & mask;
+                keys[i] = old_keys[s];
+                vals[i] = old_vals[s];
+            }
+    }
+}
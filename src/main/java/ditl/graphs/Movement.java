@@ -19,8 +19,10 @@
 package ditl.graphs;
 
 import java.io.IOException;
+import java.util.Comparator;
 import java.util.Set;
 
+import ditl.BlockStats;
 import ditl.CodedBuffer;
 import ditl.CodedInputStream;
 import ditl.Filter;
@@ -78,10 +80,14 @@ public final class Movement implements Item {
         }
     }
 
-    public static final class Factory implements Item.Factory<Movement> {
+    public static final class Factory implements Item.Factory<Movement>, Item.NodeIdReporter<Movement>, Item.GroupDecoder<Movement> {
         @Override
         public Movement fromBinaryStream(CodedInputStream in) throws IOException {
-            Movement m = new Movement(in.readSInt());
+            return read(in.readSInt(), in);
+        }
+
+        private Movement read(int id, CodedInputStream in) throws IOException {
+            Movement m = new Movement(id);
             Type type = Type.values()[in.readByte()];
             if (type == Type.STATIONNARY) {
                 m.init(in.readDouble(), in.readDouble());
@@ -96,6 +102,26 @@ public final class Movement implements Item {
             }
             return m;
         }
+
+        @Override
+        public Movement fromBinaryStream(CodedInputStream in, Set<Integer> group) throws IOException {
+            final int id = in.readSInt();
+            if (group.contains(id))
+                return read(id, in);
+            if (Type.values()[in.readByte()] == Type.STATIONNARY) {
+                in.skip(16); // x, y
+            } else {
+                in.skip(16); // x, y
+                in.readSLong(); // since
+                in.skip(24); // dx, dy, sp
+            }
+            return null;
+        }
+
+        @Override
+        public void reportNodeIds(Movement item, BlockStats.Collector ids) {
+            ids.add(item.id);
+        }
     }
 
     public Point positionAtTime(long t) {
@@ -184,6 +210,25 @@ public final class Movement implements Item {
         return null;
     }
 
+    // bounding box {min x, min y, max x, max y} of the positions between t0
+    // and t1, also containing the reference point used by meetingTimes for
+    // parallel trajectories
+    void bounds(long t0, long t1, double[] box) {
+        final double x0 = x + sx * (t0 - since), y0 = y + sy * (t0 - since);
+        final double x1 = x + sx * (t1 - since), y1 = y + sy * (t1 - since);
+        box[0] = Math.min(x, Math.min(x0, x1));
+        box[1] = Math.min(y, Math.min(y0, y1));
+        box[2] = Math.max(x, Math.max(x0, x1));
+        box[3] = Math.max(y, Math.max(y0, y1));
+    }
+
+    final static Comparator<Movement> id_comparator = new Comparator<Movement>() {
+        @Override
+        public int compare(Movement m1, Movement m2) {
+            return m1.id.compareTo(m2.id);
+        }
+    };
+
     public static final class GroupFilter implements Filter<Movement> {
         private final Set<Integer> _group;
 
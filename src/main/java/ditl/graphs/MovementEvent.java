@@ -21,6 +21,7 @@ package ditl.graphs;
 import java.io.IOException;
 import java.util.Set;
 
+import ditl.BlockStats;
 import ditl.CodedBuffer;
 import ditl.CodedInputStream;
 import ditl.Filter;
@@ -62,10 +63,30 @@ public final class MovementEvent implements Item {
         return new Movement(id, dest);
     }
 
-    public static final class Factory implements Item.Factory<MovementEvent> {
+    public static final class Factory implements Item.Factory<MovementEvent>, Item.NodeIdReporter<MovementEvent>, Item.GroupDecoder<MovementEvent> {
         @Override
         public MovementEvent fromBinaryStream(CodedInputStream in) throws IOException {
-            int id = in.readSInt();
+            return read(in.readSInt(), in);
+        }
+
+        @Override
+        public MovementEvent fromBinaryStream(CodedInputStream in, Set<Integer> group) throws IOException {
+            final int id = in.readSInt();
+            if (group.contains(id))
+                return read(id, in);
+            switch (Type.values()[in.readByte()]) {
+                case OUT:
+                    break;
+                case IN:
+                    in.skip(16); // dest
+                    break;
+                default: // NEW_DEST
+                    in.skip(24); // speed, dest
+            }
+            return null;
+        }
+
+        private MovementEvent read(int id, CodedInputStream in) throws IOException {
             Type type = Type.values()[in.readByte()];
             switch (type) {
                 case OUT:
@@ -76,6 +97,11 @@ public final class MovementEvent implements Item {
                     return new MovementEvent(id, in.readDouble(), new Point(in.readDouble(), in.readDouble()));
             }
         }
+
+        @Override
+        public void reportNodeIds(MovementEvent item, BlockStats.Collector ids) {
+            ids.add(item.id);
+        }
     }
 
     @Override
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Uniform grid over the boxes swept by valid movements. Boxes cover the
+ * positions over the whole current epoch plus the meeting horizon, so that
+ * two movements that come within range of each other during
+ * [time, time + horizon] always have overlapping boxes once one of them is
+ * expanded by the range. The grid is rebuilt when time leaves the epoch.
+ */
+final class MovementGrid {
+
+    // boxes spanning more cells than this are kept aside and checked linearly
+    private final static int MAX_CELLS = 1024;
+
+    private final double cell_size;
+    private final double margin;
+    private final long horizon;
+    private long epoch_start;
+    private long epoch_end;
+    private boolean started = false;
+
+    private final Map<Integer, Slot> slots = new HashMap<Integer, Slot>();
+    private final Map<Long, Set<Slot>> cells = new HashMap<Long, Set<Slot>>();
+    private final Set<Slot> large = new HashSet<Slot>();
+
+    private final static class Slot {
+        final Movement movement;
+        final double[] box = new double[4];
+        int cx0, cy0, cx1, cy1;
+        boolean is_large;
+
+        Slot(Movement m) {
+            movement = m;
+        }
+    }
+
+    MovementGrid(double range, long maxInterval) {
+        cell_size = (range > 0) ? 2 * range : 1;
+        // slack against rounding errors in meetingTimes
+        margin = range * (1 + 1e-6) + 1e-6;
+        horizon = maxInterval;
+    }
+
+    void clear() {
+        slots.clear();
+        cells.clear();
+        large.clear();
+        started = false;
+    }
+
+    void add(Movement m, long time) {
+        checkEpoch(time);
+        final Slot slot = new Slot(m);
+        slots.put(m.id, slot);
+        insert(slot);
+    }
+
+    void remove(Integer id) {
+        final Slot slot = slots.remove(id);
+        if (slot != null) {
+            if (slot.is_large)
+                large.remove(slot);
+            else
+                for (int cx = slot.cx0; cx <= slot.cx1; ++cx)
+                    for (int cy = slot.cy0; cy <= slot.cy1; ++cy) {
+                        final Long key = key(cx, cy);
+                        final Set<Slot> cell = cells.get(key);
+                        cell.remove(slot);
+                        if (cell.isEmpty())
+                            cells.remove(key);
+                    }
+        }
+    }
+
+    // returns the movements that may come within range of m during
+    // [time, time + horizon], ordered by id. Once the grid is in the epoch
+    // of 'time', this only reads the grid and may be called concurrently.
+    List<Movement> near(Movement m, long time) {
+        checkEpoch(time);
+        final double[] query = new double[4];
+        m.bounds(time - 1, plus(time, horizon + 1), query);
+        query[0] -= margin;
+        query[1] -= margin;
+        query[2] += margin;
+        query[3] += margin;
+        final Set<Slot> found = new HashSet<Slot>();
+        for (final Slot slot : large)
+            if (overlaps(slot.box, query))
+                found.add(slot);
+        final int cx0 = cell(query[0]), cy0 = cell(query[1]);
+        final int cx1 = cell(query[2]), cy1 = cell(query[3]);
+        if ((long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) > slots.size()) {
+            for (final Slot slot : slots.values())
+                if (!slot.is_large && overlaps(slot.box, query))
+                    found.add(slot);
+        } else {
+            for (int cx = cx0; cx <= cx1; ++cx)
+                for (int cy = cy0; cy <= cy1; ++cy) {
+                    final Set<Slot> cell = cells.get(key(cx, cy));
+                    if (cell != null)
+                        for (final Slot slot : cell)
+                            if (overlaps(slot.box, query))
+                                found.add(slot);
+                }
+        }
+        final List<Movement> near = new ArrayList<Movement>(found.size());
+        for (final Slot slot : found)
+            if (!slot.movement.id.equals(m.id))
+                near.add(slot.movement);
+        Collections.sort(near, Movement.id_comparator);
+        return near;
+    }
+
+    private static boolean overlaps(double[] box, double[] query) {
+        return box[0] <= query[2] && query[0] <= box[2] && box[1] <= query[3] && query[1] <= box[3];
+    }
+
+    private void checkEpoch(long time) {
+        if (!started || time < epoch_start || time > epoch_end) {
+            started = true;
+            epoch_start = time;
+            epoch_end = plus(time, horizon);
+            cells.clear();
+            large.clear();
+            for (final Slot slot : slots.values())
+                insert(slot);
+        }
+    }
+
+    private void insert(Slot slot) {
+        slot.movement.bounds(epoch_start - 1, plus(epoch_end, horizon + 1), slot.box);
+        slot.cx0 = cell(slot.box[0]);
+        slot.cy0 = cell(slot.box[1]);
+        slot.cx1 = cell(slot.box[2]);
+        slot.cy1 = cell(slot.box[3]);
+        slot.is_large = (long) (slot.cx1 - slot.cx0 + 1) * (slot.cy1 - slot.cy0 + 1) > MAX_CELLS;
+        if (slot.is_large)
+            large.add(slot);
+        else
+            for (int cx = slot.cx0; cx <= slot.cx1; ++cx)
+                for (int cy = slot.cy0; cy <= slot.cy1; ++cy) {
+                    final Long key = key(cx, cy);
+                    Set<Slot> cell = cells.get(key);
+                    if (cell == null) {
+                        cell = new HashSet<Slot>();
+                        cells.put(key, cell);
+                    }
+                    cell.add(slot);
+                }
+    }
+
+    private int cell(double coord) {
+        final double c = Math.floor(coord / cell_size);
+        if (c >= Integer.MAX_VALUE)
+            return Integer.MAX_VALUE - 1;
+        if (c <= Integer.MIN_VALUE)
+            return Integer.MIN_VALUE + 1;
+        return (int) c;
+    }
+
+    // bijective mix of the cell coordinates, since Long.hashCode() would
+    // simply xor them together
+    private static Long key(int cx, int cy) {
+        long k = ((long) cx << 32) | (cy & 0xffffffffL);
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static long plus(long time, long dt) {
+        final long t = time + dt;
+        return (dt > 0 && t < time) ? Long.MAX_VALUE : t;
+    }
+}
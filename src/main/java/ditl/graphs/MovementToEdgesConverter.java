@@ -19,16 +19,25 @@
 package ditl.graphs;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import ditl.Bus;
 import ditl.Converter;
 import ditl.Incrementable;
 import ditl.Listener;
-import ditl.Matcher;
 import ditl.Runner;
 import ditl.StatefulListener;
 import ditl.StatefulReader;
@@ -45,13 +54,49 @@ public class MovementToEdgesConverter implements Incrementable, MovementTrace.Ha
     private final MovementTrace _movement;
     private final EdgeTrace _edges;
     private long cur_time;
+    private final MovementGrid grid;
+    private final int n_threads;
+    private ExecutorService executor = null;
+
+    // pending edge events are indexed by both their vertices
+    private final Bus.Indexer<EdgeEvent> vertex_indexer = new Bus.Indexer<EdgeEvent>() {
+        @Override
+        public Collection<Integer> keys(EdgeEvent event) {
+            return Arrays.asList(event.id1, event.id2);
+        }
+    };
 
     public MovementToEdgesConverter(EdgeTrace edges, MovementTrace movement,
             double range, long maxInterval) {
+        this(edges, movement, range, maxInterval, false);
+    }
+
+    public MovementToEdgesConverter(EdgeTrace edges, MovementTrace movement,
+            double range, long maxInterval, boolean useGrid) {
+        this(edges, movement, range, maxInterval, useGrid, 1);
+    }
+
+    public MovementToEdgesConverter(EdgeTrace edges, MovementTrace movement,
+            double range, long maxInterval, boolean useGrid, int nThreads) {
         _edges = edges;
         _movement = movement;
         r2 = range * range;
         max_interval = maxInterval;
+        grid = useGrid ? new MovementGrid(range, maxInterval) : null;
+        n_threads = nThreads;
+    }
+
+    // the edge events found when checking an invalid movement against the
+    // valid ones, in the order in which they should be queued
+    private final static class Meetings {
+        final List<Edge> up_edges = new ArrayList<Edge>(); // initial state only
+        final List<Long> times = new ArrayList<Long>();
+        final List<EdgeEvent> events = new ArrayList<EdgeEvent>();
+
+        void queue(long time, EdgeEvent event) {
+            times.add(time);
+            events.add(event);
+        }
     }
 
     @Override
@@ -68,39 +113,53 @@ public class MovementToEdgesConverter implements Incrementable, MovementTrace.Ha
             public void reset() {
                 valid_movements.clear();
                 invalid_movements.clear();
+                if (grid != null)
+                    grid.clear();
             }
         };
     }
 
     private void setInitialState(long time) throws IOException {
         final Set<Edge> initEdges = new AdjacencySet.Edges();
-        final Iterator<Movement> i = invalid_movements.values().iterator();
-        while (i.hasNext()) {
-            final Movement im = i.next();
-            for (final Movement vm : valid_movements.values()) {
-                final long[] meetings = im.meetingTimes(vm, r2);
-                if (meetings != null) {
-                    final long begin = meetings[0], end = meetings[1];
-                    final Edge e = new Edge(im.id, vm.id);
-                    if (begin < time) {
-                        if (time <= end) {
-                            initEdges.add(e); // edge is already up
-                            if (end - time < max_interval) // edge goes down
-                                                           // before
-                                                           // max_interval
-                                edge_writer.queue(end, new EdgeEvent(e, EdgeEvent.Type.DOWN));
-                        }
-                    } else if (begin - time < max_interval) {
-                        edge_writer.queue(begin, new EdgeEvent(e, EdgeEvent.Type.UP));
-                        if (end - time < max_interval)
-                            edge_writer.queue(end, new EdgeEvent(e, EdgeEvent.Type.DOWN));
+        checkInvalidMovements(time, initEdges);
+        edge_writer.setInitState(time, initEdges);
+    }
+
+    private void meet(long time, boolean init, Movement m, Movement vm, Meetings meetings) {
+        final long[] times = m.meetingTimes(vm, r2);
+        if (times != null) {
+            final long begin = times[0], end = times[1];
+            final Edge e = new Edge(m.id, vm.id);
+            if (init) {
+                if (begin < time) {
+                    if (time <= end) {
+                        meetings.up_edges.add(e); // edge is already up
+                        if (end - time < max_interval) // edge goes down
+                                                       // before
+                                                       // max_interval
+                            meetings.queue(end, new EdgeEvent(e, EdgeEvent.Type.DOWN));
                     }
+                } else if (begin - time < max_interval) {
+                    meetings.queue(begin, new EdgeEvent(e, EdgeEvent.Type.UP));
+                    if (end - time < max_interval)
+                        meetings.queue(end, new EdgeEvent(e, EdgeEvent.Type.DOWN));
                 }
+            } else {
+                if (begin >= time && begin - time < max_interval)
+                    meetings.queue(begin, new EdgeEvent(e, EdgeEvent.Type.UP));
+                if (end >= time && end - time < max_interval) // edge goes
+                                                              // down before
+                                                              // max_interval
+                    meetings.queue(end, new EdgeEvent(e, EdgeEvent.Type.DOWN));
             }
-            i.remove();
-            valid_movements.put(im.id, im);
         }
-        edge_writer.setInitState(time, initEdges);
+    }
+
+    private void write(Meetings meetings, Set<Edge> upEdges) {
+        if (upEdges != null)
+            upEdges.addAll(meetings.up_edges);
+        for (int k = 0; k < meetings.events.size(); ++k)
+            edge_writer.queue(meetings.times.get(k), meetings.events.get(k));
     }
 
     @Override
@@ -116,7 +175,7 @@ public class MovementToEdgesConverter implements Incrementable, MovementTrace.Ha
                             break;
 
                         case OUT:
-                            valid_movements.remove(id);
+                            removeValid(id);
                             invalidNodeMeetings(time, id);
                             break;
 
@@ -126,7 +185,7 @@ public class MovementToEdgesConverter implements Incrementable, MovementTrace.Ha
                                 m = invalid_movements.get(id);
                                 m.handleEvent(time, event);
                             } else {
-                                m = valid_movements.remove(id);
+                                m = removeValid(id);
                                 invalidNodeMeetings(time, id);
                                 m.handleEvent(time, event);
                                 invalid_movements.put(id, m);
@@ -139,35 +198,109 @@ public class MovementToEdgesConverter implements Incrementable, MovementTrace.Ha
         };
     }
 
-    private void updateNextMeetings(long time) {
+    private void updateNextMeetings(long time) throws IOException {
+        checkInvalidMovements(time, null);
+    }
+
+    // checks each invalid movement against the valid ones (including the
+    // invalid movements already checked) and then makes it valid. upEdges
+    // is null except when setting the initial state.
+    private void checkInvalidMovements(long time, Set<Edge> upEdges) throws IOException {
+        if (executor != null) {
+            checkInvalidMovementsInParallel(time, upEdges);
+            return;
+        }
         final Iterator<Movement> i = invalid_movements.values().iterator();
         while (i.hasNext()) {
             final Movement m = i.next();
-            for (final Movement vm : valid_movements.values()) {
-                final long[] meetings = m.meetingTimes(vm, r2);
-                if (meetings != null) {
-                    final long begin = meetings[0], end = meetings[1];
-                    final Edge e = new Edge(m.id, vm.id);
-                    if (begin >= time && begin - time < max_interval)
-                        edge_writer.queue(begin, new EdgeEvent(e, EdgeEvent.Type.UP));
-                    if (end >= time && end - time < max_interval) // edge goes
-                                                                  // down before
-                                                                  // max_interval
-                        edge_writer.queue(end, new EdgeEvent(e, EdgeEvent.Type.DOWN));
-                }
-            }
-            valid_movements.put(m.id, m);
+            final Meetings meetings = new Meetings();
+            for (final Movement vm : candidates(m, time))
+                meet(time, upEdges != null, m, vm, meetings);
+            write(meetings, upEdges);
+            addValid(time, m);
             i.remove();
         }
     }
 
-    private void invalidNodeMeetings(final long time, final Integer i) {
-        edge_writer.removeFromQueueAfterTime(time, new Matcher<EdgeEvent>() {
-            @Override
-            public boolean matches(EdgeEvent item) {
-                return item.edge().hasVertex(i);
-            }
-        });
+    // Same as above with the invalid movements split across the executor's
+    // threads. Each invalid movement is checked against the valid movements
+    // and the invalid movements that precede it, in id order. The events
+    // are then queued in the original order of the invalid movements, so
+    // the output does not depend on the number of threads.
+    private void checkInvalidMovementsInParallel(final long time, Set<Edge> upEdges) throws IOException {
+        final boolean init = (upEdges != null);
+        final List<Movement> batch = new ArrayList<Movement>(invalid_movements.values());
+        final Map<Integer, Integer> batch_index = new HashMap<Integer, Integer>();
+        for (int k = 0; k < batch.size(); ++k)
+            batch_index.put(batch.get(k).id, k);
+        invalid_movements.clear();
+        for (final Movement m : batch)
+            addValid(time, m);
+
+        final List<Movement> sorted;
+        if (grid == null) {
+            sorted = new ArrayList<Movement>(valid_movements.values());
+            Collections.sort(sorted, Movement.id_comparator);
+        } else
+            sorted = null;
+
+        final Meetings[] results = new Meetings[batch.size()];
+        final int chunk = Math.max(1, batch.size() / (4 * n_threads));
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (int lo = 0; lo < batch.size(); lo += chunk) {
+            final int from = lo, to = Math.min(lo + chunk, batch.size());
+            tasks.add(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    for (int k = from; k < to; ++k) {
+                        final Movement m = batch.get(k);
+                        final Meetings meetings = new Meetings();
+                        for (final Movement vm : (grid == null) ? sorted : grid.near(m, time)) {
+                            final Integer j = batch_index.get(vm.id);
+                            if (j == null || j < k)
+                                meet(time, init, m, vm, meetings);
+                        }
+                        results[k] = meetings;
+                    }
+                    return null;
+                }
+            });
+        }
+        try {
+            for (final Future<Object> f : executor.invokeAll(tasks))
+                f.get();
+        } catch (final InterruptedException e) {
+            throw new IOException(e);
+        } catch (final ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+
+        for (final Meetings meetings : results)
+            write(meetings, upEdges);
+    }
+
+    // in grid mode, only the valid movements whose swept boxes come within
+    // range of m over the next max_interval, ordered by id
+    private Collection<Movement> candidates(Movement m, long time) {
+        if (grid == null)
+            return valid_movements.values();
+        return grid.near(m, time);
+    }
+
+    private void addValid(long time, Movement m) {
+        valid_movements.put(m.id, m);
+        if (grid != null)
+            grid.add(m, time);
+    }
+
+    private Movement removeValid(Integer id) {
+        if (grid != null)
+            grid.remove(id);
+        return valid_movements.remove(id);
+    }
+
+    private void invalidNodeMeetings(long time, Integer i) {
+        edge_writer.removeFromQueueAfterTime(time, vertex_indexer, i);
     }
 
     @Override
@@ -184,15 +317,25 @@ public class MovementToEdgesConverter implements Incrementable, MovementTrace.Ha
     @Override
     public void convert() throws IOException {
         edge_writer = _edges.getWriter();
+        edge_writer.setQueueType(Bus.QueueType.HEAP);
+        edge_writer.addIndexer(vertex_indexer);
         movement_reader = _movement.getReader();
 
         movement_reader.stateBus().addListener(movementListener());
         movement_reader.bus().addListener(movementEventListener());
 
+        if (n_threads > 1)
+            executor = Executors.newFixedThreadPool(n_threads);
+
         final Runner runner = new Runner(_movement.maxUpdateInterval(), _movement.minTime(), _movement.maxTime());
         runner.addGenerator(movement_reader);
         runner.add(this);
-        runner.run();
+        try {
+            runner.run();
+        } finally {
+            if (executor != null)
+                executor.shutdown();
+        }
 
         edge_writer.flush(_movement.maxTime());
         edge_writer.setPropertiesFromTrace(_movement);
@@ -176,6 +176,12 @@ public class MovementTrace extends StatefulTrace<MovementEvent, Movement>
                 update(mv.from());
         }
 
+        // the bounds are computed from the events that are written
+        @Override
+        protected boolean canSplice(Trace<?> from) {
+            return false;
+        }
+
         @Override
         public void close() throws IOException {
             setProperty(MovementTrace.minXKey, minX);
@@ -18,11 +18,9 @@
  *******************************************************************************/
 package ditl.graphs;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.util.Collection;
@@ -30,7 +28,9 @@ import java.util.HashMap;
 import java.util.Map;
 
 import ditl.Bus;
+import ditl.ChunkedLineParser;
 import ditl.IdGenerator;
+import ditl.LineTokenizer;
 import ditl.Listener;
 import ditl.Matcher;
 import ditl.StatefulReader;
@@ -40,30 +40,67 @@ import ditl.Units;
 
 public class NS2Movement {
 
+    private final static int NODE = 0, NS = 1;
+
+    // '$node_(id) set X_|Y_|Z_ c' lines become (NODE, c, axis) records, where
+    // axis is 0 for X_, 1 for Y_ and -1 otherwise, and
+    // '$ns_ at t "$node_(id) setdest x y s"' lines become (NS, t, x, y, s)
+    // records. Other lines are skipped.
+    private final static ChunkedLineParser.LineParser lineParser = new ChunkedLineParser.LineParser() {
+        @Override
+        public void parse(LineTokenizer tok, ChunkedLineParser.Records out) {
+            if (tok.isEmptyLine())
+                return;
+            if (tok.fieldStartsWith(0, "$node")) {
+                final String id_str = tok.between(0, '(', ')');
+                final double c = tok.parseDouble(3);
+                final int r = out.add();
+                out.setNumber(r, 0, NODE);
+                out.setString(r, 0, id_str);
+                out.setNumber(r, 1, c);
+                out.setNumber(r, 2, tok.fieldEquals(2, "X_") ? 0 : tok.fieldEquals(2, "Y_") ? 1 : -1);
+            } else if (tok.fieldStartsWith(0, "$ns")) {
+                final double t = tok.parseDouble(2);
+                final String id_str = tok.between(3, '(', ')');
+                final int r = out.add();
+                out.setNumber(r, 0, NS);
+                out.setNumber(r, 1, t);
+                out.setString(r, 0, id_str);
+                out.setNumber(r, 2, tok.parseDouble(5));
+                out.setNumber(r, 3, tok.parseDouble(6));
+                out.setNumber(r, 4, tok.parseDouble(7, 1));
+            }
+        }
+    };
+
     public static void fromNS2(MovementTrace movement,
             InputStream in, Long maxTime, double timeMul, long ticsPerSecond,
             long offset, final boolean fixPauseTimes, Long initStateTime, IdGenerator idGen) throws IOException {
+        fromNS2(movement, in, maxTime, timeMul, ticsPerSecond, offset, fixPauseTimes, initStateTime, idGen, 1);
+    }
+
+    public static void fromNS2(MovementTrace movement,
+            InputStream in, Long maxTime, double timeMul, long ticsPerSecond,
+            long offset, final boolean fixPauseTimes, Long initStateTime, IdGenerator idGen, int nThreads)
+            throws IOException {
 
         final StatefulWriter<MovementEvent, Movement> movementWriter = movement.getWriter();
         final Map<Integer, Movement> positions = new HashMap<Integer, Movement>();
-        final BufferedReader br = new BufferedReader(new InputStreamReader(in));
+        final ChunkedLineParser parser = new ChunkedLineParser(in, 5, 1, lineParser, nThreads);
         final Bus<MovementEvent> buffer = new Bus<MovementEvent>();
-        String line;
         long last_time = Long.MIN_VALUE;
 
-        while ((line = br.readLine()) != null)
-            if (!line.isEmpty()) {
+        ChunkedLineParser.Records records;
+        while ((records = parser.next()) != null)
+            for (int r = 0; r < records.size(); ++r) {
                 Integer id;
-                String id_str;
                 double s;
                 Movement m;
                 long time;
-                final String[] elems = line.split("\\p{Blank}+");
 
-                if (line.startsWith("$node")) {
-                    id_str = elems[0].split("\\(|\\)")[1];
-                    id = idGen.getInternalId(id_str);
-                    final double c = Double.parseDouble(elems[3]);
+                if (records.number(r, 0) == NODE) {
+                    id = idGen.getInternalId(records.string(r, 0));
+                    final double c = records.number(r, 1);
 
                     m = positions.get(id);
                     if (m == null) {
@@ -71,23 +108,22 @@ public class NS2Movement {
                         positions.put(id, m);
                     }
 
-                    if (elems[2].equals("X_"))
+                    if (records.number(r, 2) == 0)
                         m.x = c;
-                    else if (elems[2].equals("Y_"))
+                    else if (records.number(r, 2) == 1)
                         m.y = c;
 
-                } else if (line.startsWith("$ns")) {
-                    time = (long) (Double.parseDouble(elems[2]) * timeMul) + offset;
+                } else {
+                    time = (long) (records.number(r, 1) * timeMul) + offset;
                     if (time > last_time)
                         last_time = time;
-                    id_str = elems[3].split("\\(|\\)")[1];
-                    id = idGen.getInternalId(id_str);
-                    final Point dest = new Point(Double.parseDouble(elems[5]), Double.parseDouble(elems[6]));
-                    s = Double.parseDouble(elems[7].substring(0, elems[7].length() - 1)) / timeMul;
+                    id = idGen.getInternalId(records.string(r, 0));
+                    final Point dest = new Point(records.number(r, 2), records.number(r, 3));
+                    s = records.number(r, 4) / timeMul;
                     buffer.queue(time, new MovementEvent(id, s, dest));
                 }
             }
-        br.close();
+        parser.close();
 
         final long init_time = (initStateTime != null) ? initStateTime : 0;
         movementWriter.setInitState(init_time + offset, positions.values());
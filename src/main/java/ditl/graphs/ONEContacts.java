@@ -18,15 +18,15 @@
  *******************************************************************************/
 package ditl.graphs;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 
+import ditl.ChunkedLineParser;
 import ditl.IdGenerator;
+import ditl.LineTokenizer;
 import ditl.StatefulReader;
 import ditl.StatefulWriter;
 import ditl.Trace;
@@ -34,26 +34,43 @@ import ditl.Units;
 
 public class ONEContacts {
 
+    // "time CONN id1 id2 UP|DOWN" lines
+    private final static ChunkedLineParser.LineParser lineParser = new ChunkedLineParser.LineParser() {
+        @Override
+        public void parse(LineTokenizer tok, ChunkedLineParser.Records out) {
+            final int r = out.add();
+            out.setNumber(r, 0, tok.parseDouble(0));
+            out.setString(r, 0, tok.string(2));
+            out.setString(r, 1, tok.string(3));
+            out.setNumber(r, 1, tok.fieldEqualsIgnoreCase(4, "UP") ? 1 : 0);
+        }
+    };
+
     public static void fromONE(EdgeTrace edges,
             InputStream in, double timeMul, long ticsPerSecond,
             long offset, IdGenerator idGen) throws IOException {
+        fromONE(edges, in, timeMul, ticsPerSecond, offset, idGen, 1);
+    }
+
+    public static void fromONE(EdgeTrace edges,
+            InputStream in, double timeMul, long ticsPerSecond,
+            long offset, IdGenerator idGen, int nThreads) throws IOException {
         final StatefulWriter<EdgeEvent, Edge> edgeWriter = edges.getWriter();
-        final BufferedReader br = new BufferedReader(new InputStreamReader(in));
-        String line;
-        while ((line = br.readLine()) != null) {
-            final String[] elems = line.split("[ \t]+");
-            final long time = (long) (Double.parseDouble(elems[0]) * timeMul) + offset;
-            final Integer id1 = idGen.getInternalId(elems[2]);
-            final Integer id2 = idGen.getInternalId(elems[3]);
-            final String action = elems[4].toUpperCase();
-            if (action.equals("UP"))
-                edgeWriter.append(time, new EdgeEvent(id1, id2, EdgeEvent.Type.UP));
-            else
-                edgeWriter.append(time, new EdgeEvent(id1, id2, EdgeEvent.Type.DOWN));
-        }
+        final ChunkedLineParser parser = new ChunkedLineParser(in, 2, 2, lineParser, nThreads);
+        ChunkedLineParser.Records records;
+        while ((records = parser.next()) != null)
+            for (int r = 0; r < records.size(); ++r) {
+                final long time = (long) (records.number(r, 0) * timeMul) + offset;
+                final Integer id1 = idGen.getInternalId(records.string(r, 0));
+                final Integer id2 = idGen.getInternalId(records.string(r, 1));
+                if (records.number(r, 1) != 0)
+                    edgeWriter.append(time, new EdgeEvent(id1, id2, EdgeEvent.Type.UP));
+                else
+                    edgeWriter.append(time, new EdgeEvent(id1, id2, EdgeEvent.Type.DOWN));
+            }
         edgeWriter.setProperty(Trace.timeUnitKey, Units.toTimeUnit(ticsPerSecond));
         edgeWriter.close();
-        br.close();
+        parser.close();
     }
 
     public static void toONE(EdgeTrace edges,
@@ -18,11 +18,9 @@
  *******************************************************************************/
 package ditl.graphs;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.util.Collection;
@@ -30,10 +28,12 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
+import ditl.ChunkedLineParser;
+import ditl.ExternalSorter;
 import ditl.IdGenerator;
 import ditl.Incrementable;
+import ditl.LineTokenizer;
 import ditl.Listener;
 import ditl.Runner;
 import ditl.StatefulReader;
@@ -43,39 +43,57 @@ import ditl.Units;
 
 public class ONEMovement {
 
+    // "time id x y" lines
+    private final static ChunkedLineParser.LineParser lineParser = new ChunkedLineParser.LineParser() {
+        @Override
+        public void parse(LineTokenizer tok, ChunkedLineParser.Records out) {
+            final int r = out.add();
+            out.setNumber(r, 0, tok.parseDouble(0));
+            out.setString(r, 0, tok.string(1));
+            out.setNumber(r, 1, tok.parseDouble(2));
+            out.setNumber(r, 2, tok.parseDouble(3));
+        }
+    };
+
     public static void fromONE(MovementTrace movement,
             InputStream in, Long maxTime, final double timeMul, long ticsPerSecond,
             long offset, IdGenerator idGen) throws IOException {
+        fromONE(movement, in, maxTime, timeMul, ticsPerSecond, offset, idGen, 1);
+    }
+
+    public static void fromONE(MovementTrace movement,
+            InputStream in, Long maxTime, final double timeMul, long ticsPerSecond,
+            long offset, IdGenerator idGen, int nThreads) throws IOException {
 
         final StatefulWriter<MovementEvent, Movement> movementWriter = movement.getWriter();
-        final TreeMap<Long, List<Movement>> buffer = new TreeMap<Long, List<Movement>>();
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-        String line;
-        reader.readLine(); // burn first line
-        while ((line = reader.readLine()) != null) {
-            final String[] elems = line.split("[ \t]+");
-            final long t = (long) (Double.parseDouble(elems[0]) * timeMul) + offset;
-            final Integer id = idGen.getInternalId(elems[1]);
-            final double x = Double.parseDouble(elems[2]);
-            final double y = Double.parseDouble(elems[3]);
-            List<Movement> movementsAtTime = buffer.get(t);
-            if (movementsAtTime == null) {
-                movementsAtTime = new LinkedList<Movement>();
-                buffer.put(t, movementsAtTime);
+        // positions are sorted out of core: dumps may not fit in memory
+        final ExternalSorter sorter = new ExternalSorter(3);
+        final long[] record = new long[3];
+        int b;
+        while ((b = in.read()) >= 0 && b != '\n')
+            ; // burn first line
+        final ChunkedLineParser parser = new ChunkedLineParser(in, 3, 1, lineParser, nThreads);
+        ChunkedLineParser.Records records;
+        while ((records = parser.next()) != null)
+            for (int r = 0; r < records.size(); ++r) {
+                final long t = (long) (records.number(r, 0) * timeMul) + offset;
+                record[0] = idGen.getInternalId(records.string(r, 0));
+                record[1] = Double.doubleToRawLongBits(records.number(r, 1));
+                record[2] = Double.doubleToRawLongBits(records.number(r, 2));
+                sorter.add(t, record);
             }
-            movementsAtTime.add(new Movement(id, new Point(x, y)));
-        }
-        reader.close();
+        parser.close();
+        sorter.sort();
+        final Positions positions = new Positions(sorter);
 
         final Map<Integer, Point> points = new HashMap<Integer, Point>();
 
         Collection<Movement> first = null;
         long last_time = Long.MIN_VALUE;
 
-        while (!buffer.isEmpty()) {
-            final Map.Entry<Long, List<Movement>> e = buffer.pollFirstEntry();
-            final long time = e.getKey() + offset;
-            final List<Movement> events = e.getValue();
+        List<Movement> events;
+        while ((events = positions.next()) != null) {
+            final long time = positions.time + offset;
             final double dt = time - last_time;
             if (first == null)
                 first = events;
@@ -97,6 +115,7 @@ public class ONEMovement {
                 }
             last_time = time;
         }
+        sorter.close();
         last_time = (maxTime != null) ? maxTime : last_time;
         movementWriter.setProperty(Trace.maxTimeKey, last_time);
         movementWriter.setProperty(Trace.timeUnitKey, Units.toTimeUnit(ticsPerSecond));
@@ -152,6 +171,39 @@ public class ONEMovement {
         movementReader.close();
     }
 
+    // groups the sorted positions by time
+    private static final class Positions {
+        private final ExternalSorter _sorter;
+        private final long[] record = new long[3];
+        private boolean has_pending = false;
+        private long pending_time;
+        long time;
+
+        Positions(ExternalSorter sorter) {
+            _sorter = sorter;
+        }
+
+        // the positions at the next time, or null at the end
+        List<Movement> next() throws IOException {
+            if (!has_pending) {
+                if (!_sorter.hasNext())
+                    return null;
+                pending_time = _sorter.next(record);
+                has_pending = true;
+            }
+            time = pending_time;
+            final List<Movement> movements = new LinkedList<Movement>();
+            while (has_pending && pending_time == time) {
+                movements.add(new Movement((int) record[0],
+                        new Point(Double.longBitsToDouble(record[1]), Double.longBitsToDouble(record[2]))));
+                has_pending = _sorter.hasNext();
+                if (has_pending)
+                    pending_time = _sorter.next(record);
+            }
+            return movements;
+        }
+    }
+
     private static double speed(Point o, Point n, double dt) {
         final double dx = n.x - o.x;
         final double dy = n.y - o.y;
@@ -21,6 +21,7 @@ package ditl.graphs;
 import java.io.IOException;
 import java.util.Set;
 
+import ditl.BlockStats;
 import ditl.CodedBuffer;
 import ditl.CodedInputStream;
 import ditl.Filter;
@@ -34,11 +35,22 @@ public final class Presence implements Item {
         id = i;
     }
 
-    public static final class Factory implements Item.Factory<Presence> {
+    public static final class Factory implements Item.Factory<Presence>, Item.NodeIdReporter<Presence>, Item.GroupDecoder<Presence> {
         @Override
         public Presence fromBinaryStream(CodedInputStream in) throws IOException {
             return new Presence(in.readSInt());
         }
+
+        @Override
+        public Presence fromBinaryStream(CodedInputStream in, Set<Integer> group) throws IOException {
+            final int id = in.readSInt();
+            return group.contains(id) ? new Presence(id) : null;
+        }
+
+        @Override
+        public void reportNodeIds(Presence item, BlockStats.Collector ids) {
+            ids.add(item.id);
+        }
     }
 
     @Override
@@ -21,6 +21,7 @@ package ditl.graphs;
 import java.io.IOException;
 import java.util.Set;
 
+import ditl.BlockStats;
 import ditl.CodedBuffer;
 import ditl.CodedInputStream;
 import ditl.Filter;
@@ -48,11 +49,23 @@ public final class PresenceEvent implements Item {
         return new Presence(id);
     }
 
-    public static final class Factory implements Item.Factory<PresenceEvent> {
+    public static final class Factory implements Item.Factory<PresenceEvent>, Item.NodeIdReporter<PresenceEvent>, Item.GroupDecoder<PresenceEvent> {
         @Override
         public PresenceEvent fromBinaryStream(CodedInputStream in) throws IOException {
             return new PresenceEvent(in.readSInt(), Type.values()[in.readByte()]);
         }
+
+        @Override
+        public PresenceEvent fromBinaryStream(CodedInputStream in, Set<Integer> group) throws IOException {
+            final int id = in.readSInt();
+            final byte type = in.readByte();
+            return group.contains(id) ? new PresenceEvent(id, Type.values()[type]) : null;
+        }
+
+        @Override
+        public void reportNodeIds(PresenceEvent item, BlockStats.Collector ids) {
+            ids.add(item.id);
+        }
     }
 
     @Override
@@ -21,7 +21,6 @@ package ditl.graphs;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Collection;
-import java.util.Set;
 
 import ditl.Listener;
 import ditl.ReportFactory;
@@ -30,7 +29,7 @@ import ditl.StatefulListener;
 
 public final class ReachabilityReport extends StateTimeReport implements ArcTrace.Handler, PresenceTrace.Handler {
 
-    private final Set<Arc> arcs = new AdjacencySet.Arcs();
+    private final IntAdjacencySet.Arcs arcs = new IntAdjacencySet.Arcs();
     private int n_bidir;
     private int n_dir;
     private int samp_n_bidir;
@@ -107,26 +106,27 @@ public final class ReachabilityReport extends StateTimeReport implements ArcTrac
                                            // events are ordered UP first DOWN
                                            // second
                 for (final ArcEvent aev : events) {
-                    final Arc a = aev.arc();
+                    final int from = aev.from;
+                    final int to = aev.to;
                     if (aev.isUp()) {
-                        if (arcs.contains(a.reverse())) {
+                        if (arcs.containsPair(to, from)) {
                             n_bidir += 1;
                             n_dir -= 1;
                         } else
                             n_dir += 1;
-                        arcs.add(a);
+                        arcs.addPair(from, to);
                     } else {
                         if (first_down) {
                             samp_n_bidir = n_bidir;
                             samp_n_dir = n_dir;
                             first_down = false;
                         }
-                        if (arcs.contains(a.reverse())) {
+                        if (arcs.containsPair(to, from)) {
                             n_bidir -= 1;
                             n_dir += 1;
                         } else
                             n_dir -= 1;
-                        arcs.remove(a);
+                        arcs.removePair(from, to);
                     }
                 }
                 if (first_down) {
@@ -148,7 +148,7 @@ public final class ReachabilityReport extends StateTimeReport implements ArcTrac
             public void handle(long time, Collection<Arc> events)
                     throws IOException {
                 for (final Arc a : events) {
-                    if (arcs.contains(a.reverse())) {
+                    if (arcs.containsPair(a.to, a.from)) {
                         n_bidir += 1;
                         n_dir -= 1;
                     } else
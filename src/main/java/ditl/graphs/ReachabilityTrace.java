@@ -19,8 +19,16 @@
 package ditl.graphs;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 
 import net.sf.json.JSONObject;
+import ditl.BlockStats;
+import ditl.CodedBuffer;
+import ditl.CodedInputStream;
+import ditl.Item;
+import ditl.StatefulWriter;
 import ditl.Store;
 import ditl.Trace;
 import ditl.Writer;
@@ -31,7 +39,81 @@ public class ReachabilityTrace extends ArcTrace {
     final public static String
             tauKey = "tau",
             etaKey = "eta",
-            delayKey = "delay";
+            delayKey = "delay",
+            blocksKey = "reachability blocks";
+
+    final public static String perSourceBlocks = "per source";
+
+    // columnar blocks that group arcs by source (see ArcSetBlock)
+    final static class StateFactory implements Item.Factory<Arc>, Item.BlockCoder<Arc>, Item.NodeIdReporter<Arc>,
+            Item.GroupDecoder<Arc>, Item.GroupBlockDecoder<Arc> {
+        private final Arc.Factory arc_factory = new Arc.Factory();
+
+        @Override
+        public Arc fromBinaryStream(CodedInputStream in) throws IOException {
+            return arc_factory.fromBinaryStream(in);
+        }
+
+        @Override
+        public Arc fromBinaryStream(CodedInputStream in, Set<Integer> group) throws IOException {
+            return arc_factory.fromBinaryStream(in, group);
+        }
+
+        @Override
+        public void writeBlock(CodedBuffer out, Collection<Arc> items) {
+            ArcSetBlock.writeArcs(out, items);
+        }
+
+        @Override
+        public void readBlock(CodedInputStream in, List<Arc> items) throws IOException {
+            ArcSetBlock.readArcs(in, items, null);
+        }
+
+        @Override
+        public void readBlock(CodedInputStream in, List<Arc> items, Set<Integer> group) throws IOException {
+            ArcSetBlock.readArcs(in, items, group);
+        }
+
+        @Override
+        public void reportNodeIds(Arc item, BlockStats.Collector ids) {
+            arc_factory.reportNodeIds(item, ids);
+        }
+    }
+
+    final static class EventFactory implements Item.Factory<ArcEvent>, Item.BlockCoder<ArcEvent>, Item.NodeIdReporter<ArcEvent>,
+            Item.GroupDecoder<ArcEvent>, Item.GroupBlockDecoder<ArcEvent> {
+        private final ArcEvent.Factory event_factory = new ArcEvent.Factory();
+
+        @Override
+        public ArcEvent fromBinaryStream(CodedInputStream in) throws IOException {
+            return event_factory.fromBinaryStream(in);
+        }
+
+        @Override
+        public ArcEvent fromBinaryStream(CodedInputStream in, Set<Integer> group) throws IOException {
+            return event_factory.fromBinaryStream(in, group);
+        }
+
+        @Override
+        public void writeBlock(CodedBuffer out, Collection<ArcEvent> items) {
+            ArcSetBlock.writeEvents(out, items);
+        }
+
+        @Override
+        public void readBlock(CodedInputStream in, List<ArcEvent> items) throws IOException {
+            ArcSetBlock.readEvents(in, items, null);
+        }
+
+        @Override
+        public void readBlock(CodedInputStream in, List<ArcEvent> items, Set<Integer> group) throws IOException {
+            ArcSetBlock.readEvents(in, items, group);
+        }
+
+        @Override
+        public void reportNodeIds(ArcEvent item, BlockStats.Collector ids) {
+            event_factory.reportNodeIds(item, ids);
+        }
+    }
 
     public long tau() {
         return config.getLong(tauKey);
@@ -51,6 +133,22 @@ public class ReachabilityTrace extends ArcTrace {
 
     public ReachabilityTrace(Store store, String name, JSONObject config) throws IOException {
         super(store, name, config);
+        if (perSourceBlocks.equals(config.optString(blocksKey)))
+            usePerSourceBlocks();
+    }
+
+    private void usePerSourceBlocks() {
+        event_factory = new EventFactory();
+        state_factory = new StateFactory();
+    }
+
+    @Override
+    public StatefulWriter<ArcEvent, Arc> getWriter() throws IOException {
+        if (config.optBoolean(columnarKey)) {
+            set(blocksKey, perSourceBlocks);
+            usePerSourceBlocks();
+        }
+        return super.getWriter();
     }
 
     @Override
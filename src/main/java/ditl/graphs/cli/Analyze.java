@@ -23,14 +23,23 @@ import static ditl.graphs.cli.GraphOptions.EDGES;
 import static ditl.graphs.cli.GraphOptions.GROUPS;
 import static ditl.graphs.cli.GraphOptions.PRESENCE;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.cli.CommandLine;
-import org.apache.commons.cli.Option;
-import org.apache.commons.cli.OptionGroup;
 import org.apache.commons.cli.ParseException;
 
+import ditl.MergeableReport;
 import ditl.Reader;
 import ditl.Report;
 import ditl.ReportFactory;
@@ -80,7 +89,9 @@ public class Analyze extends ExportApp {
             reachabilityOption = "reachability";
 
     private final GraphOptions.CliParser graph_options = new GraphOptions.CliParser(PRESENCE, EDGES, GROUPS, ARCS);
-    private ReportFactory<?> factory;
+    private final Map<String, ReportFactory<?>> factories = new LinkedHashMap<String, ReportFactory<?>>();
+    private File report_dir;
+    private int n_threads = 1;
     private Long min_time;
     private Long max_time;
 
@@ -88,23 +99,21 @@ public class Analyze extends ExportApp {
     protected void initOptions() {
         super.initOptions();
         graph_options.setOptions(options);
-        final OptionGroup reportGroup = new OptionGroup();
-        reportGroup.addOption(new Option(null, nodeCountOption, false, "node count report"));
-        reportGroup.addOption(new Option(null, transitTimesOption, false, "transit times report"));
-        reportGroup.addOption(new Option(null, timeToFirstContactOption, false, "time to first contact report"));
-        reportGroup.addOption(new Option(null, numContactsOption, false, "number of contacs distribution"));
-        reportGroup.addOption(new Option(null, nodeDegreeOption, false, "node degree distribution over time"));
-        reportGroup.addOption(new Option(null, contactsOption, false, "contact time distribution"));
-        reportGroup.addOption(new Option(null, interContactsOption, false, "inter-contact time distribution"));
-        reportGroup.addOption(new Option(null, anyContactsOption, false, "any-contact time distribution"));
-        reportGroup.addOption(new Option(null, interAnyContactsOption, false, "inter-any-contact time distribution"));
-        reportGroup.addOption(new Option(null, clusteringOption, false, "clustering coefficient distribution over time"));
-        reportGroup.addOption(new Option(null, groupSizeOption, false, "distribution of group sizes over time"));
-        reportGroup.addOption(new Option(null, reachabilityOption, false, "proportion of bi-directional and directional edges in the reachability graph"));
-        reportGroup.setRequired(true);
-        options.addOptionGroup(reportGroup);
+        options.addOption(null, nodeCountOption, false, "node count report");
+        options.addOption(null, transitTimesOption, false, "transit times report");
+        options.addOption(null, timeToFirstContactOption, false, "time to first contact report");
+        options.addOption(null, numContactsOption, false, "number of contacs distribution");
+        options.addOption(null, nodeDegreeOption, false, "node degree distribution over time");
+        options.addOption(null, contactsOption, false, "contact time distribution");
+        options.addOption(null, interContactsOption, false, "inter-contact time distribution");
+        options.addOption(null, anyContactsOption, false, "any-contact time distribution");
+        options.addOption(null, interAnyContactsOption, false, "inter-any-contact time distribution");
+        options.addOption(null, clusteringOption, false, "clustering coefficient distribution over time");
+        options.addOption(null, groupSizeOption, false, "distribution of group sizes over time");
+        options.addOption(null, reachabilityOption, false, "proportion of bi-directional and directional edges in the reachability graph");
         options.addOption(null, maxTimeOption, true, "Ignore event after <arg> seconds");
         options.addOption(null, minTimeOption, true, "Ignore event before <arg> seconds");
+        options.addOption(null, threadsOption, true, "number of threads, each analyzing its own shard of the time range (default: 1, only for mergeable reports)");
     }
 
     @Override
@@ -115,129 +124,237 @@ public class Analyze extends ExportApp {
         super.parseArgs(cli, args);
         graph_options.parse(cli);
 
-        if (cli.hasOption(nodeCountOption))
-            factory = new NodeCountReport.Factory();
-        else if (cli.hasOption(transitTimesOption))
-            factory = new TransitTimesReport.Factory();
-        else if (cli.hasOption(timeToFirstContactOption))
-            factory = new TimeToFirstContactReport.Factory();
-        else if (cli.hasOption(numContactsOption))
-            factory = new NumberContactsReport.Factory();
-        else if (cli.hasOption(nodeDegreeOption))
-            factory = new NodeDegreeReport.Factory();
-        else if (cli.hasOption(contactsOption))
-            factory = new ContactTimesReport.Factory(true);
-        else if (cli.hasOption(interContactsOption))
-            factory = new ContactTimesReport.Factory(false);
-        else if (cli.hasOption(anyContactsOption))
-            factory = new AnyContactTimesReport.Factory(true);
-        else if (cli.hasOption(interAnyContactsOption))
-            factory = new AnyContactTimesReport.Factory(false);
-        else if (cli.hasOption(clusteringOption))
-            factory = new ClusteringCoefficientReport.Factory(true);
-        else if (cli.hasOption(groupSizeOption))
-            factory = new GroupSizeReport.Factory();
-        else if (cli.hasOption(reachabilityOption))
-            factory = new ReachabilityReport.Factory();
+        addFactory(cli, nodeCountOption, new NodeCountReport.Factory());
+        addFactory(cli, transitTimesOption, new TransitTimesReport.Factory());
+        addFactory(cli, timeToFirstContactOption, new TimeToFirstContactReport.Factory());
+        addFactory(cli, numContactsOption, new NumberContactsReport.Factory());
+        addFactory(cli, nodeDegreeOption, new NodeDegreeReport.Factory());
+        addFactory(cli, contactsOption, new ContactTimesReport.Factory(true));
+        addFactory(cli, interContactsOption, new ContactTimesReport.Factory(false));
+        addFactory(cli, anyContactsOption, new AnyContactTimesReport.Factory(true));
+        addFactory(cli, interAnyContactsOption, new AnyContactTimesReport.Factory(false));
+        addFactory(cli, clusteringOption, new ClusteringCoefficientReport.Factory(true));
+        addFactory(cli, groupSizeOption, new GroupSizeReport.Factory());
+        addFactory(cli, reachabilityOption, new ReachabilityReport.Factory());
+        if (factories.isEmpty())
+            throw new ParseException("At least one report option is required");
+
+        // with several reports, the output option names the directory in
+        // which each report is written to '<report option>.report'
+        if (factories.size() > 1) {
+            report_dir = new File(out_file_name != null ? out_file_name : ".");
+            out_file_name = null;
+        }
 
         if (cli.hasOption(minTimeOption))
             min_time = Long.parseLong(cli.getOptionValue(minTimeOption));
         if (cli.hasOption(maxTimeOption))
             max_time = Long.parseLong(cli.getOptionValue(maxTimeOption));
+        if (cli.hasOption(threadsOption))
+            n_threads = Integer.parseInt(cli.getOptionValue(threadsOption));
     }
 
-    @Override
-    protected void run() throws Exception {
-        final Report report = factory.getNew(_out);
-
-        Long minTime = null, maxTime = null, incrTime = null;
-        final List<Reader<?>> readers = new ArrayList<Reader<?>>();
-
-        Long tps = null;
-
-        if (report instanceof PresenceTrace.Handler) {
-            final PresenceTrace presence = _store.getTrace(graph_options.get(PRESENCE));
-            final StatefulReader<PresenceEvent, Presence> presenceReader = presence.getReader();
-
-            final PresenceTrace.Handler ph = (PresenceTrace.Handler) report;
-            presenceReader.stateBus().addListener(ph.presenceListener());
-            presenceReader.bus().addListener(ph.presenceEventListener());
-
-            readers.add(presenceReader);
+    private void addFactory(CommandLine cli, String option, ReportFactory<?> factory) {
+        if (cli.hasOption(option))
+            factories.put(option, factory);
+    }
 
-            minTime = presence.minTime();
-            maxTime = presence.maxTime();
-            incrTime = presence.maxUpdateInterval();
-            tps = presence.ticsPerSecond();
+    private List<Report> newReports(boolean isShard) throws Exception {
+        final List<Report> reports = new ArrayList<Report>();
+        if (isShard) {
+            // shard reports only write to memory
+            for (final ReportFactory<?> factory : factories.values())
+                reports.add(factory.getNew(new ByteArrayOutputStream()));
+        } else if (report_dir == null) {
+            reports.add(factories.values().iterator().next().getNew(_out));
+        } else {
+            report_dir.mkdirs();
+            for (final Map.Entry<String, ReportFactory<?>> e : factories.entrySet()) {
+                final OutputStream out = new FileOutputStream(new File(report_dir, e.getKey() + ".report"));
+                reports.add(e.getValue().getNew(out));
+            }
         }
+        return reports;
+    }
 
-        if (report instanceof EdgeTrace.Handler) {
-            final EdgeTrace edges = _store.getTrace(graph_options.get(EDGES));
-            final StatefulReader<EdgeEvent, Edge> edgesReader = edges.getReader();
-
-            final EdgeTrace.Handler lh = (EdgeTrace.Handler) report;
-            edgesReader.stateBus().addListener(lh.edgeListener());
-            edgesReader.bus().addListener(lh.edgeEventListener());
-
-            readers.add(edgesReader);
+    @Override
+    protected void run() throws Exception {
+        final List<Report> reports = newReports(false);
+        final Pass pass = new Pass(reports);
 
-            if (minTime == null || edges.minTime() > minTime)
-                minTime = edges.minTime();
-            if (maxTime == null || edges.maxTime() < maxTime)
-                maxTime = edges.maxTime();
-            incrTime = edges.maxUpdateInterval();
-            tps = edges.ticsPerSecond();
+        long minTime = pass.minTime, maxTime = pass.maxTime;
+        if (min_time != null && max_time != null && pass.tps != null) {
+            minTime = min_time * pass.tps;
+            maxTime = max_time * pass.tps;
         }
 
-        if (report instanceof ArcTrace.Handler) {
-            final ArcTrace arcs = _store.getTrace(graph_options.get(ARCS));
-            final StatefulReader<ArcEvent, Arc> arcReader = arcs.getReader();
+        if (n_threads > 1 && mergeable(reports))
+            runShards(reports, pass, minTime, maxTime);
+        else
+            pass.runner(minTime, maxTime).run();
 
-            final ArcTrace.Handler eh = (ArcTrace.Handler) report;
-            arcReader.stateBus().addListener(eh.arcListener());
-            arcReader.bus().addListener(eh.arcEventListener());
+        for (final Report report : reports)
+            if (report instanceof StateTimeReport)
+                ((StateTimeReport) report).finish(maxTime);
+            else
+                report.finish();
+    }
 
-            readers.add(arcReader);
+    // readers feeding a list of reports
+    private final class Pass {
+        final List<Reader<?>> readers = new ArrayList<Reader<?>>();
+        Long minTime = null, maxTime = null, incrTime = null;
+        Long tps = null;
 
-            if (minTime == null || arcs.minTime() > minTime)
-                minTime = arcs.minTime();
-            if (maxTime == null || arcs.maxTime() < maxTime)
-                maxTime = arcs.maxTime();
-            incrTime = arcs.maxUpdateInterval();
-            tps = arcs.ticsPerSecond();
+        Pass(List<Report> reports) throws Exception {
+            final List<PresenceTrace.Handler> presenceHandlers = handlers(reports, PresenceTrace.Handler.class);
+            if (!presenceHandlers.isEmpty()) {
+                final PresenceTrace presence = _store.getTrace(graph_options.get(PRESENCE));
+                final StatefulReader<PresenceEvent, Presence> presenceReader = presence.getReader();
+
+                for (final PresenceTrace.Handler ph : presenceHandlers) {
+                    presenceReader.stateBus().addListener(ph.presenceListener());
+                    presenceReader.bus().addListener(ph.presenceEventListener());
+                }
+
+                readers.add(presenceReader);
+
+                minTime = presence.minTime();
+                maxTime = presence.maxTime();
+                incrTime = presence.maxUpdateInterval();
+                tps = presence.ticsPerSecond();
+            }
+
+            final List<EdgeTrace.Handler> edgeHandlers = handlers(reports, EdgeTrace.Handler.class);
+            if (!edgeHandlers.isEmpty()) {
+                final EdgeTrace edges = _store.getTrace(graph_options.get(EDGES));
+                final StatefulReader<EdgeEvent, Edge> edgesReader = edges.getReader();
+
+                for (final EdgeTrace.Handler lh : edgeHandlers) {
+                    edgesReader.stateBus().addListener(lh.edgeListener());
+                    edgesReader.bus().addListener(lh.edgeEventListener());
+                }
+
+                readers.add(edgesReader);
+
+                if (minTime == null || edges.minTime() > minTime)
+                    minTime = edges.minTime();
+                if (maxTime == null || edges.maxTime() < maxTime)
+                    maxTime = edges.maxTime();
+                incrTime = edges.maxUpdateInterval();
+                tps = edges.ticsPerSecond();
+            }
+
+            final List<ArcTrace.Handler> arcHandlers = handlers(reports, ArcTrace.Handler.class);
+            if (!arcHandlers.isEmpty()) {
+                final ArcTrace arcs = _store.getTrace(graph_options.get(ARCS));
+                final StatefulReader<ArcEvent, Arc> arcReader = arcs.getReader();
+
+                for (final ArcTrace.Handler eh : arcHandlers) {
+                    arcReader.stateBus().addListener(eh.arcListener());
+                    arcReader.bus().addListener(eh.arcEventListener());
+                }
+
+                readers.add(arcReader);
+
+                if (minTime == null || arcs.minTime() > minTime)
+                    minTime = arcs.minTime();
+                if (maxTime == null || arcs.maxTime() < maxTime)
+                    maxTime = arcs.maxTime();
+                incrTime = arcs.maxUpdateInterval();
+                tps = arcs.ticsPerSecond();
+            }
+
+            final List<GroupTrace.Handler> groupHandlers = handlers(reports, GroupTrace.Handler.class);
+            if (!groupHandlers.isEmpty()) {
+                final GroupTrace groups = _store.getTrace(graph_options.get(GROUPS));
+                final StatefulReader<GroupEvent, Group> groupReader = groups.getReader();
+
+                for (final GroupTrace.Handler gh : groupHandlers) {
+                    groupReader.bus().addListener(gh.groupEventListener());
+                    groupReader.stateBus().addListener(gh.groupListener());
+                }
+
+                readers.add(groupReader);
+
+                if (minTime == null || groups.minTime() > minTime)
+                    minTime = groups.minTime();
+                if (maxTime == null || groups.maxTime() < maxTime)
+                    maxTime = groups.maxTime();
+                incrTime = groups.maxUpdateInterval();
+                tps = groups.ticsPerSecond();
+            }
         }
 
-        if (report instanceof GroupTrace.Handler) {
-            final GroupTrace groups = _store.getTrace(graph_options.get(GROUPS));
-            final StatefulReader<GroupEvent, Group> groupReader = groups.getReader();
-
-            final GroupTrace.Handler gh = (GroupTrace.Handler) report;
-            groupReader.bus().addListener(gh.groupEventListener());
-            groupReader.stateBus().addListener(gh.groupListener());
+        Runner runner(long min, long max) {
+            final Runner runner = new Runner(incrTime, min, max);
+            for (final Reader<?> reader : readers)
+                runner.addGenerator(reader);
+            return runner;
+        }
+    }
 
-            readers.add(groupReader);
+    private static boolean mergeable(List<Report> reports) {
+        for (final Report report : reports)
+            if (!(report instanceof MergeableReport))
+                return false;
+        return true;
+    }
 
-            if (minTime == null || groups.minTime() > minTime)
-                minTime = groups.minTime();
-            if (maxTime == null || groups.maxTime() < maxTime)
-                maxTime = groups.maxTime();
-            incrTime = groups.maxUpdateInterval();
-            tps = groups.ticsPerSecond();
+    // the first shard runs the final reports, the others run their own
+    // reports which are then merged into the final ones in time order
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void runShards(final List<Report> reports, final Pass pass, final long minTime, final long maxTime) throws Exception {
+        final long[] bounds = new long[n_threads + 1];
+        for (int k = 0; k <= n_threads; ++k)
+            bounds[k] = minTime + (maxTime - minTime) * k / n_threads;
+
+        final List<List<Report>> shardReports = new ArrayList<List<Report>>();
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        tasks.add(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                pass.runner(minTime, bounds[1]).run();
+                return null;
+            }
+        });
+        for (int k = 1; k < n_threads; ++k) {
+            final List<Report> shard = newReports(true);
+            final Pass shardPass = new Pass(shard);
+            final long start = bounds[k], end = bounds[k + 1];
+            shardReports.add(shard);
+            tasks.add(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    final Runner runner = shardPass.runner(start, end);
+                    runner.seek(start);
+                    for (final Report report : shard)
+                        ((MergeableReport<?>) report).startShard(start);
+                    while (runner.time() < end)
+                        runner.incr();
+                    return null;
+                }
+            });
         }
 
-        if (min_time != null && max_time != null && tps != null) {
-            minTime = min_time * tps;
-            maxTime = max_time * tps;
+        final ExecutorService executor = Executors.newFixedThreadPool(n_threads);
+        try {
+            for (final Future<Object> result : executor.invokeAll(tasks))
+                result.get();
+        } finally {
+            executor.shutdown();
         }
 
-        final Runner runner = new Runner(incrTime, minTime, maxTime);
-        for (final Reader<?> reader : readers)
-            runner.addGenerator(reader);
-        runner.run();
+        for (final List<Report> shard : shardReports)
+            for (int i = 0; i < reports.size(); ++i)
+                ((MergeableReport) reports.get(i)).merge(shard.get(i));
+    }
 
-        if (report instanceof StateTimeReport)
-            ((StateTimeReport) report).finish(maxTime);
-        else
-            report.finish();
+    private static <H> List<H> handlers(List<Report> reports, Class<H> klass) {
+        final List<H> handlers = new ArrayList<H>();
+        for (final Report report : reports)
+            if (klass.isInstance(report))
+                handlers.add(klass.cast(report));
+        return handlers;
     }
 }
@@ -31,11 +31,14 @@ import ditl.graphs.GroupTrace;
 public class EdgesToCCs extends ConvertApp {
 
     private final GraphOptions.CliParser graph_options = new GraphOptions.CliParser(GraphOptions.EDGES, GraphOptions.GROUPS);
+    private final String dynamicOption = "dynamic-connectivity";
+    private boolean dynamic_connectivity;
 
     @Override
     protected void initOptions() {
         super.initOptions();
         graph_options.setOptions(options);
+        options.addOption(null, dynamicOption, false, "detect splits with a dynamic connectivity structure instead of a BFS (faster for large components)");
     }
 
     @Override
@@ -44,13 +47,14 @@ public class EdgesToCCs extends ConvertApp {
             HelpException {
         super.parseArgs(cli, args);
         graph_options.parse(cli);
+        dynamic_connectivity = cli.hasOption(dynamicOption);
     }
 
     @Override
     protected void run() throws Exception {
         final EdgeTrace edges = orig_store.getTrace(graph_options.get(GraphOptions.EDGES));
         final GroupTrace ccs = dest_store.newTrace(graph_options.get(GraphOptions.GROUPS), GroupTrace.class, force);
-        new EdgesToConnectedComponentsConverter(ccs, edges).convert();
+        new EdgesToConnectedComponentsConverter(ccs, edges, dynamic_connectivity).convert();
     }
 
 }
@@ -35,6 +35,7 @@ public class FloodingReachability extends ConvertApp {
     private long delay;
     private final GraphOptions.CliParser graph_options = new GraphOptions.CliParser(GraphOptions.EDGES, GraphOptions.PRESENCE);
     private Long min_time;
+    private int n_threads = 1;
 
     @Override
     protected String getUsageString() {
@@ -49,6 +50,8 @@ public class FloodingReachability extends ConvertApp {
         delay = Integer.parseInt(args[2]);
         if (cli.hasOption(minTimeOption))
             min_time = Long.parseLong(cli.getOptionValue(minTimeOption));
+        if (cli.hasOption(threadsOption))
+            n_threads = Integer.parseInt(cli.getOptionValue(threadsOption));
     }
 
     @Override
@@ -56,6 +59,7 @@ public class FloodingReachability extends ConvertApp {
         super.initOptions();
         graph_options.setOptions(options);
         options.addOption(null, minTimeOption, true, "Start flooding at time <arg>");
+        options.addOption(null, threadsOption, true, "number of threads, each flooding from its own share of the origins (default: 1)");
     }
 
     @Override
@@ -70,7 +74,6 @@ public class FloodingReachability extends ConvertApp {
         delay *= edges.ticsPerSecond();
         final String name = edges.name() + "_t" + _tau + "_pd" + delay;
         final ReachabilityTrace reachability = dest_store.newTrace(name, ReachabilityTrace.class, force);
-        new FloodingReachableConverter(reachability, presence, edges, _tau, delay, min_time).convert();
-
+        new FloodingReachableConverter(reachability, presence, edges, _tau, delay, min_time, n_threads).convert();
     }
 }
@@ -68,6 +68,6 @@ public class ImportArcs extends ImportApp {
     public void run() throws Exception {
         final ArcTrace arcs = _store.newTrace(graph_options.get(GraphOptions.ARCS), ArcTrace.class, force);
         final IdGenerator id_gen = (use_id_map) ? new IdMap.Writer(min_id) : new OffsetIdGenerator(min_id);
-        CRAWDADArcs.fromCRAWDAD(arcs, _in, timeMul, ticsPerSecond, offset, id_gen);
+        CRAWDADArcs.fromCRAWDAD(arcs, _in, timeMul, ticsPerSecond, offset, id_gen, n_threads);
     }
 }
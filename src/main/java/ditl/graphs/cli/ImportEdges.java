@@ -78,10 +78,10 @@ public class ImportEdges extends ImportApp {
         final IdGenerator id_gen = (use_id_map) ? new IdMap.Writer(min_id) : new OffsetIdGenerator(min_id);
         switch (ext_fmt) {
             case CRAWDAD:
-                CRAWDADEdges.fromCRAWDAD(edges, _in, timeMul, ticsPerSecond, offset, id_gen);
+                CRAWDADEdges.fromCRAWDAD(edges, _in, timeMul, ticsPerSecond, offset, id_gen, n_threads);
                 break;
             case ONE:
-                ONEContacts.fromONE(edges, _in, timeMul, ticsPerSecond, offset, id_gen);
+                ONEContacts.fromONE(edges, _in, timeMul, ticsPerSecond, offset, id_gen, n_threads);
                 break;
         }
     }
@@ -77,10 +77,10 @@ public class ImportMovement extends ImportApp {
         final IdGenerator id_gen = (use_id_map) ? new IdMap.Writer(min_id) : new OffsetIdGenerator(min_id);
         switch (ext_fmt) {
             case NS2:
-                NS2Movement.fromNS2(movement, _in, maxTime, timeMul, ticsPerSecond, offset, fix_pause_times, initStateTime, id_gen);
+                NS2Movement.fromNS2(movement, _in, maxTime, timeMul, ticsPerSecond, offset, fix_pause_times, initStateTime, id_gen, n_threads);
                 break;
             case ONE:
-                ONEMovement.fromONE(movement, _in, maxTime, timeMul, ticsPerSecond, offset, id_gen);
+                ONEMovement.fromONE(movement, _in, maxTime, timeMul, ticsPerSecond, offset, id_gen, n_threads);
                 break;
         }
     }
@@ -33,6 +33,9 @@ public class MovementToEdges extends ConvertApp {
     private final GraphOptions.CliParser graph_options = new GraphOptions.CliParser(GraphOptions.EDGES, GraphOptions.MOVEMENT);
     private double range;
     private Long max_interval = null;
+    private boolean use_grid = false;
+    private int n_threads = 1;
+    private final String gridOption = "grid";
 
     @Override
     protected void run() throws Exception {
@@ -42,7 +45,7 @@ public class MovementToEdges extends ConvertApp {
             max_interval = movement.maxTime() - movement.minTime();
         else
             max_interval *= movement.ticsPerSecond();
-        new MovementToEdgesConverter(edges, movement, range, max_interval).convert();
+        new MovementToEdgesConverter(edges, movement, range, max_interval, use_grid, n_threads).convert();
     }
 
     @Override
@@ -52,6 +55,9 @@ public class MovementToEdges extends ConvertApp {
         range = Double.parseDouble(args[1]);
         if (cli.hasOption(intervalOption))
             max_interval = Long.parseLong(cli.getOptionValue(intervalOption));
+        use_grid = cli.hasOption(gridOption);
+        if (cli.hasOption(threadsOption))
+            n_threads = Integer.parseInt(cli.getOptionValue(threadsOption));
     }
 
     @Override
@@ -64,6 +70,8 @@ public class MovementToEdges extends ConvertApp {
         super.initOptions();
         graph_options.setOptions(options);
         options.addOption(null, intervalOption, true, "interval beyond which not to look for new meetings (useful if positions are updated every seconds)");
+        options.addOption(null, gridOption, false, "only test pairs of nodes that are close in a spatial grid (faster for many nodes, best combined with --" + intervalOption + ")");
+        options.addOption(null, threadsOption, true, "number of threads used to compute meetings (default: 1)");
     }
 
 }
@@ -28,10 +28,18 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.ParseException;
 
+import ditl.Converter;
+import ditl.MemoryStore;
+import ditl.WritableStore;
 import ditl.cli.App;
 import ditl.cli.ConvertApp;
 import ditl.graphs.AddingReachableConverter;
@@ -40,6 +48,7 @@ import ditl.graphs.EdgeTrace;
 import ditl.graphs.EdgesToReachableConverter;
 import ditl.graphs.GroupTrace;
 import ditl.graphs.ReachabilityFamily;
+import ditl.graphs.ReachabilityTrace;
 
 @App.Cli(pkg = "graphs", cmd = "reachability", alias = "r")
 public class Reachability extends ConvertApp {
@@ -53,7 +62,9 @@ public class Reachability extends ConvertApp {
             minDelayOption = "min-delay",
             verboseOption = "verbose",
             prefixOption = "prefix",
-            timeFileOption = "times-file";
+            timeFileOption = "times-file",
+            inMemoryOption = "in-memory",
+            bitsetsOption = "bitsets";
 
     private double u_tau;
     private double u_eta;
@@ -71,6 +82,12 @@ public class Reachability extends ConvertApp {
     private Long min_delay;
     private final List<ReachabilityFamily> created_families = new ArrayList<ReachabilityFamily>();
     private final Set<Long> families_to_keep = new HashSet<Long>();
+    // the compositions of families that remain to be calculated start at
+    // plan[next_step]
+    private final List<Step> plan = new ArrayList<Step>();
+    private int next_step = 0;
+    // traces of released families that other families still use
+    private final Set<String> deferred_removals = new HashSet<String>();
     private boolean delete = true;
     private boolean prune = true;
     private boolean prune_last = true;
@@ -78,6 +95,11 @@ public class Reachability extends ConvertApp {
     private boolean verbose = false;
     private long tps;
     private long ref_time;
+    private int n_threads = 1;
+    private ExecutorService executor = null;
+    private boolean in_memory = false;
+    private boolean use_bitsets = false;
+    private WritableStore work_store;
 
     @Override
     protected String getUsageString() {
@@ -105,11 +127,15 @@ public class Reachability extends ConvertApp {
         if (cli.hasOption(prefixOption))
             prefix = cli.getOptionValue(prefixOption);
         timeFileName = cli.getOptionValue(timeFileOption);
+        if (cli.hasOption(threadsOption))
+            n_threads = Integer.parseInt(cli.getOptionValue(threadsOption));
+        in_memory = cli.hasOption(inMemoryOption);
+        use_bitsets = cli.hasOption(bitsetsOption);
     }
 
     private void clean() throws IOException {
         final Set<String> to_keep = new HashSet<String>();
-        final Set<String> to_remove = new HashSet<String>();
+        final Set<String> to_remove = new HashSet<String>(deferred_removals);
 
         Collections.sort(created_families, new Comparator<ReachabilityFamily>() {
             @Override
@@ -137,11 +163,113 @@ public class Reachability extends ConvertApp {
 
         to_remove.removeAll(to_keep);
         for (final String name : to_remove)
-            dest_store.deleteTrace(name);
+            if (work_store.hasTrace(name))
+                work_store.deleteTrace(name);
+        if (in_memory)
+            ((MemoryStore) work_store).commit();
+    }
+
+    // A family calculated from two others, with delays d1 and d2.
+    private final static class Step {
+        final long delay, d1, d2;
+
+        Step(long delay, long d1, long d2) {
+            this.delay = delay;
+            this.d1 = d1;
+            this.d2 = d2;
+        }
+    }
+
+    // true if a remaining step reads the family with delay d
+    private boolean isRead(long d) {
+        for (int k = next_step; k < plan.size(); ++k)
+            if (plan.get(k).d1 == d || plan.get(k).d2 == d)
+                return true;
+        return false;
+    }
+
+    // Traces that must outlive the release of a family: families overlap
+    // (e.g., the sibling of one is a member of the next), so the members of
+    // the families of the remaining steps are still in use, as are the main
+    // traces that are kept.
+    private Set<String> namesInUse() {
+        final Set<String> names = new HashSet<String>();
+        for (int k = 0; k < plan.size(); ++k) {
+            final Step step = plan.get(k);
+            for (final long D : new long[] { step.delay, step.d1, step.d2 }) {
+                if (k >= next_step)
+                    for (final Long d : getFamily(D).delays())
+                        names.add(ReachabilityTrace.defaultName(prefix, tau, d));
+                if (!delete)
+                    names.add(ReachabilityTrace.defaultName(prefix, tau, D));
+            }
+        }
+        for (final Long D : families_to_keep)
+            names.add(ReachabilityTrace.defaultName(prefix, tau, D));
+        return names;
+    }
+
+    // Commits the main trace of a family that is kept as soon as it is
+    // calculated, so that the progress of long runs is saved.
+    private void completed(ReachabilityFamily rf) throws IOException {
+        if (in_memory && (families_to_keep.contains(rf.delay()) || !delete))
+            ((MemoryStore) work_store).commit(rf.mainName());
+    }
+
+    // Once a family created in this run has been read for the last time, it
+    // is cleaned as clean() would do at the end: its siblings are pruned and
+    // its main trace is deleted unless kept. Traces that remain are committed
+    // and released from memory. The family with the largest delay is left to
+    // clean(), which also handles --no-prune-last.
+    private void consumed(ReachabilityFamily rf) throws IOException {
+        final long d = rf.delay();
+        if (isRead(d))
+            return;
+        boolean created = false, is_last = true;
+        final Iterator<ReachabilityFamily> i = created_families.iterator();
+        while (i.hasNext()) {
+            final ReachabilityFamily family = i.next();
+            if (family.delay() > d)
+                is_last = false;
+            else if (family.delay() == d)
+                created = true;
+        }
+        if (!created || is_last)
+            return;
+        final Iterator<ReachabilityFamily> j = created_families.iterator();
+        while (j.hasNext())
+            if (j.next().delay() == d)
+                j.remove();
+
+        final Set<String> to_remove = new HashSet<String>();
+        final Set<String> to_keep = new HashSet<String>();
+        if (prune)
+            to_remove.addAll(rf.prunableNames());
+        else
+            to_keep.addAll(rf.prunableNames());
+        if (rf.mainName() != null) {
+            if (families_to_keep.contains(d) || !delete)
+                to_keep.add(rf.mainName());
+            else
+                to_remove.add(rf.mainName());
+        }
+        to_remove.removeAll(to_keep);
+        final Set<String> in_use = namesInUse();
+        for (final String name : to_remove)
+            if (in_use.contains(name))
+                deferred_removals.add(name);
+            else if (work_store.hasTrace(name))
+                work_store.deleteTrace(name);
+        if (in_memory)
+            for (final String name : to_keep) {
+                ((MemoryStore) work_store).commit(name);
+                if (!in_use.contains(name))
+                    ((MemoryStore) work_store).release(name);
+            }
     }
 
     private ReachabilityFamily getFamily(long D) {
-        return new ReachabilityFamily(dest_store, prefix, eta, tau, D);
+        return new ReachabilityFamily(work_store, prefix, eta, tau, D);
     }
 
     @Override
@@ -157,6 +285,9 @@ public class Reachability extends ConvertApp {
         options.addOption(null, verboseOption, false, "Be verbose");
         options.addOption(null, prefixOption, true, "Prefix for reachability traces (default: name of the 'edges' trace)");
         options.addOption(null, timeFileOption, true, "Write calculation times in milliseconds to file <arg>");
+        options.addOption(null, threadsOption, true, "number of reachability traces of a family calculated concurrently (default: 1)");
+        options.addOption(null, inMemoryOption, false, "Calculate reachability families in memory (families are released once used, the largest ones must fit in the heap) and only write the traces that are kept to the store");
+        options.addOption(null, bitsetsOption, false, "Compose reachability traces using bitsets (faster when reachability sets are large)");
     }
 
     private void initTimeFile() throws IOException {
@@ -174,13 +305,28 @@ public class Reachability extends ConvertApp {
     }
 
     private void stopTimer(long delay) throws IOException {
-        final long dt = System.currentTimeMillis() - ref_time;
+        writeTime(delay, System.currentTimeMillis() - ref_time);
+    }
+
+    private void writeTime(long delay, long dt) throws IOException {
         if (time_writer != null)
             time_writer.write(delay + " " + dt + "\n");
     }
 
     @Override
     protected void run() throws Exception {
+        work_store = in_memory ? new MemoryStore(dest_store) : dest_store;
+        if (n_threads > 1)
+            executor = Executors.newFixedThreadPool(n_threads);
+        try {
+            runFamilies();
+        } finally {
+            if (executor != null)
+                executor.shutdown();
+        }
+    }
+
+    private void runFamilies() throws Exception {
         initTimeFile();
 
         if (u_tau == 0) {
@@ -202,7 +348,7 @@ public class Reachability extends ConvertApp {
         final long T = (tau == 0) ? eta : tau; // for tau=0 traces, use eta
 
         long q = 0;
-        ReachabilityFamily rf_e = null, rf_m = null, rf = null, tmp = null;
+        ReachabilityFamily rf_e = null, rf_m = null, rf = null;
 
         // first check what we already have in dest_store
         // and figure out the largest quotient that we will have to calculate
@@ -238,40 +384,48 @@ public class Reachability extends ConvertApp {
             }
         }
 
-        // if we have a strictly positive quotient, run the exponential
-        // calculation
+        // list the compositions: first the exponentiation up to the largest
+        // quotient, then the sums of its results
         if (q > 0) {
             if (tau == 0)
-                tmp = fromConnectedComponents();
-            else
-                tmp = fromEdges();
-            exponentiate(tmp, getMaxExponent(q));
+                plan.add(new Step(eta, 0, 0));
+            long d = T;
+            for (int i = 1; i < getMaxExponent(q); ++i) {
+                plan.add(new Step(2 * d, d, d));
+                d *= 2;
+            }
         }
-
-        // then combine the results
         if (every != null) {
-            long d = 0;
-            if (!rf_e.isComplete())
-                rf_e = combine(T, every);
-            rf = rf_e;
-            d = rf_e.delay();
-            if (min_delay != null) {
-                if (!rf_m.isComplete())
-                    rf_m = combine(T, min_delay);
-                rf = rf_m;
-                d = rf_m.delay();
-            }
-            families_to_keep.add(rf.delay());
+            final long d_e = rf_e.isComplete() ? every : combine(T, every);
+            long d = d_e;
+            if (min_delay != null)
+                d = rf_m.isComplete() ? min_delay : combine(T, min_delay);
+            families_to_keep.add(d);
             while (d < delay) {
-                tmp = add(rf, rf_e);
-                d += rf_e.delay();
-                rf = tmp;
-                families_to_keep.add(rf.delay());
+                plan.add(new Step(d + d_e, d, d_e));
+                d += d_e;
+                families_to_keep.add(d);
             }
-        } else {
-            if (!rf.hasMain())
-                rf = combine(T, delay);
-            families_to_keep.add(rf.delay());
+        } else
+            families_to_keep.add(rf.hasMain() ? delay : combine(T, delay));
+
+        // then calculate them
+        if (q > 0) {
+            if (tau == 0)
+                fromConnectedComponents();
+            else
+                fromEdges();
+        }
+        while (next_step < plan.size()) {
+            final Step step = plan.get(next_step++);
+            final ReachabilityFamily rf1 = getFamily(step.d1), rf2 = getFamily(step.d2);
+            if (step.d1 == 0)
+                fromInstantaneous(rf1);
+            else
+                add(rf1, rf2);
+            consumed(rf1);
+            if (step.d2 != step.d1)
+                consumed(rf2);
         }
 
         clean();
@@ -283,37 +437,40 @@ public class Reachability extends ConvertApp {
             System.out.println(str);
     }
 
-    private ReachabilityFamily add(ReachabilityFamily rf1, ReachabilityFamily rf2) throws Exception {
+    private void add(final ReachabilityFamily rf1, final ReachabilityFamily rf2) throws Exception {
         final long _delay = rf1.delay() + rf2.delay();
         log("Initializing reachability family " + _delay / tps + " from " + rf1.delay() / tps + "+" + rf2.delay() / tps);
         final ReachabilityFamily rf = getFamily(_delay);
-        boolean has_new = false;
-        for (final Long d : rf.delays())
-            if (rf.hasMember(d)) {
-                log("Reachability trace " + d / tps + " already exists in family. Skipping.");
-                if (prune_reused)
-                    created_families.add(rf);
-            } else {
-                log("Calculating reachability trace " + d / tps);
-                armTimer();
-                new AddingReachableConverter(rf.newMember(d), rf1, rf2, d).convert();
-                stopTimer(d);
-                has_new = true;
+        final boolean has_new = calculateMembers(rf, new MemberConverterFactory() {
+            @Override
+            public Converter getNew(ReachabilityTrace member, long d) {
+                return new AddingReachableConverter(member, rf1, rf2, d, use_bitsets);
             }
+        });
         separator();
-        if (has_new)
+        if (has_new) {
             created_families.add(rf);
-        return rf;
+            completed(rf);
+        }
     }
 
     private void separator() {
         log("---------------------------");
     }
 
-    private ReachabilityFamily fromEdges() throws Exception {
-        final EdgeTrace edges = orig_store.getTrace(edgesName);
-        log("Initializing reachability family " + tau / tps + " from edge trace '" + edges.name() + "'");
-        final ReachabilityFamily rf = getFamily(tau);
+    // Builds the converter that calculates the member of a family with
+    // delay d.
+    private interface MemberConverterFactory {
+        Converter getNew(ReachabilityTrace member, long d);
+    }
+
+    // Calculates the missing members of the family. Members only read
+    // traces that already exist and each writes its own trace, so with
+    // more than one thread they are calculated concurrently. Returns true
+    // if at least one member was calculated.
+    private boolean calculateMembers(ReachabilityFamily rf, MemberConverterFactory factory) throws Exception {
+        final List<Long> pending = new ArrayList<Long>();
+        final List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
         boolean has_new = false;
         for (final Long d : rf.delays())
             if (rf.hasMember(d)) {
@@ -322,18 +479,52 @@ public class Reachability extends ConvertApp {
                     created_families.add(rf);
             } else {
                 log("Calculating reachability trace " + d / tps);
-                armTimer();
-                new EdgesToReachableConverter(rf.newMember(d), edges, eta, tau, d).convert();
-                stopTimer(d);
+                final Converter converter = factory.getNew(rf.newMember(d), d);
+                if (executor == null) {
+                    armTimer();
+                    converter.convert();
+                    stopTimer(d);
+                } else {
+                    pending.add(d);
+                    tasks.add(new Callable<Long>() {
+                        @Override
+                        public Long call() throws IOException {
+                            final long t0 = System.currentTimeMillis();
+                            converter.convert();
+                            return System.currentTimeMillis() - t0;
+                        }
+                    });
+                }
                 has_new = true;
             }
+        if (!tasks.isEmpty()) {
+            final List<Future<Long>> results = executor.invokeAll(tasks);
+            try {
+                for (int k = 0; k < results.size(); ++k)
+                    writeTime(pending.get(k), results.get(k).get());
+            } catch (final ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+        return has_new;
+    }
+
+    private void fromEdges() throws Exception {
+        final EdgeTrace edges = orig_store.getTrace(edgesName);
+        log("Initializing reachability family " + tau / tps + " from edge trace '" + edges.name() + "'");
+        final ReachabilityFamily rf = getFamily(tau);
+        final boolean has_new = calculateMembers(rf, new MemberConverterFactory() {
+            @Override
+            public Converter getNew(ReachabilityTrace member, long d) {
+                return new EdgesToReachableConverter(member, edges, eta, tau, d);
+            }
+        });
         if (has_new)
             created_families.add(rf);
         separator();
-        return rf;
     }
 
-    private ReachabilityFamily fromConnectedComponents() throws Exception {
+    private void fromConnectedComponents() throws Exception {
         final GroupTrace ccs = orig_store.getTrace(ccsName);
         log("Initializing reachability family " + eta / tps + " from connected components trace '" + ccs.name() + "'");
         final ReachabilityFamily rf = getFamily(0);
@@ -348,18 +539,23 @@ public class Reachability extends ConvertApp {
             stopTimer(0);
             created_families.add(rf);
         }
+    }
+
+    // the family eta, whose single member composes the instantaneous
+    // reachability of the connected components with itself
+    private void fromInstantaneous(ReachabilityFamily rf) throws Exception {
         final ReachabilityFamily rf1 = getFamily(eta);
         if (rf1.hasMember(eta))
             log("Reachability trace " + eta / tps + " already exists in family. Skipping.");
         else {
             log("Calculating reachability trace " + eta / tps);
             armTimer();
-            new AddingReachableConverter(rf1.newMember(eta), rf, rf, eta).convert();
+            new AddingReachableConverter(rf1.newMember(eta), rf, rf, eta, use_bitsets).convert();
             stopTimer(eta);
             created_families.add(rf1);
+            completed(rf1);
         }
         separator();
-        return rf1;
     }
 
     private int getMaxExponent(long n) {
@@ -371,27 +567,19 @@ public class Reachability extends ConvertApp {
         return i;
     }
 
-    private void exponentiate(ReachabilityFamily rf, int e) throws Exception {
-        ReachabilityFamily next;
-        ReachabilityFamily cur = rf;
-        for (int i = 1; i < e; ++i) {
-            next = add(cur, cur);
-            cur = next;
-        }
-    }
-
-    private ReachabilityFamily combine(long T, long delay) throws Exception {
-        ReachabilityFamily rf = null;
+    // plans the sum of the families of the binary decomposition of delay
+    // in units of T, and returns the delay of the result
+    private long combine(long T, long delay) {
+        Long rf = null;
         long d = 1;
         long mul = delay / T;
         while (mul != 0) {
             if ((mul & 1) == 1)
                 if (rf == null)
-                    rf = getFamily(d * T);
+                    rf = d * T;
                 else {
-                    final ReachabilityFamily o = getFamily(d * T);
-                    final ReachabilityFamily tmp = add(rf, o);
-                    rf = tmp;
+                    plan.add(new Step(rf + d * T, rf, d * T));
+                    rf += d * T;
                 }
             mul >>= 1;
             d *= 2;
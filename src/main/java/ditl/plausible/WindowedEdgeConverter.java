@@ -28,7 +28,6 @@ import ditl.Bus;
 import ditl.Converter;
 import ditl.Generator;
 import ditl.Listener;
-import ditl.Matcher;
 import ditl.Runner;
 import ditl.StatefulListener;
 import ditl.StatefulReader;
@@ -75,6 +74,7 @@ public class WindowedEdgeConverter implements Converter, Generator, EdgeTrace.Ha
         state_bus.addListener(edgeListener());
         pop_bus.addListener(popListener());
         expire_bus.addListener(expireListener());
+        expire_bus.addIndexer(Bus.<Edge> identityIndexer());
         update_bus.addListener(updateListener());
 
         final long minTime = _edges.minTime() - _window;
@@ -136,12 +136,7 @@ public class WindowedEdgeConverter implements Converter, Generator, EdgeTrace.Ha
                     pop_bus.queue(time + 2 * _window, e);
                     update_bus.queue(time + _window, e);
                     if (eev.isUp())
-                        expire_bus.removeFromQueueAfterTime(time, new Matcher<Edge>() {
-                            @Override
-                            public boolean matches(Edge edge) {
-                                return edge.equals(e);
-                            }
-                        });
+                        expire_bus.removeFromQueueAfterTime(time, Bus.<Edge> identityIndexer(), e);
                     else
                         expire_bus.queue(time + 2 * _window, e);
                 }
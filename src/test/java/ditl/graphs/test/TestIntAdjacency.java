@@ -0,0 +1,96 @@
+package ditl.graphs.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ditl.graphs.Arc;
+import ditl.graphs.Edge;
+import ditl.graphs.IntAdjacencyMap;
+import ditl.graphs.IntAdjacencySet;
+
+public class TestIntAdjacency {
+
+    private final static Random rng = new Random(0);
+    private final static int N = 50;
+
+    private static void fill(Map<Edge, Integer> map, Map<Edge, Integer> ref) {
+        for (int k = 0; k < 5 * N; ++k) {
+            final Edge e = new Edge(rng.nextInt(N), rng.nextInt(N));
+            if (e.id1() != e.id2()) {
+                map.put(e, k);
+                ref.put(e, k);
+            }
+        }
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        final Map<Edge, Integer> map = new IntAdjacencyMap.Edges<Integer>();
+        final Map<Edge, Integer> ref = new HashMap<Edge, Integer>();
+        fill(map, ref);
+        final Set<Edge> all = new HashSet<Edge>(ref.keySet());
+        final Set<Edge> seen = new HashSet<Edge>();
+        final Iterator<Edge> i = map.keySet().iterator();
+        while (i.hasNext()) {
+            final Edge e = i.next();
+            assertTrue(seen.add(e));
+            if (rng.nextBoolean()) {
+                i.remove();
+                ref.remove(e);
+            }
+        }
+        assertEquals(all, seen);
+        assertEquals(ref, new HashMap<Edge, Integer>(map));
+    }
+
+    @Test
+    public void testRetainAll() {
+        final Map<Edge, Integer> map = new IntAdjacencyMap.Edges<Integer>();
+        final Map<Edge, Integer> ref = new HashMap<Edge, Integer>();
+        fill(map, ref);
+        final Set<Edge> keep = new HashSet<Edge>();
+        for (final Edge e : ref.keySet())
+            if (rng.nextBoolean())
+                keep.add(e);
+        map.keySet().retainAll(keep);
+        ref.keySet().retainAll(keep);
+        assertEquals(ref, new HashMap<Edge, Integer>(map));
+        map.entrySet().removeAll(ref.entrySet());
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testNeighbourRemove() {
+        final IntAdjacencySet.Arcs arcs = new IntAdjacencySet.Arcs();
+        for (int k = 0; k < 5 * N; ++k)
+            arcs.add(new Arc(0, rng.nextInt(N)));
+        final int degree = arcs.degree(0);
+        int n = 0;
+        final Iterator<Integer> i = arcs.getNext(0).iterator();
+        while (i.hasNext()) {
+            final Integer j = i.next();
+            n++;
+            if (j % 2 == 0)
+                i.remove();
+        }
+        assertEquals(degree, n);
+        for (final Integer j : arcs.getNext(0))
+            assertTrue(j % 2 == 1);
+        try {
+            i.next();
+            assertFalse(true);
+        } catch (final NoSuchElementException e) {
+        }
+    }
+}
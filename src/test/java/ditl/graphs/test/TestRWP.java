@@ -19,6 +19,7 @@
 package ditl.graphs.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -74,6 +75,46 @@ public class TestRWP {
             graphsCli("buffer-edges --force %s 5");
             // 11. Reachability
             graphsCli("reachability --force --edges resampled --prune-reused %s 1 1 5");
+            // 12. edges using the spatial grid
+            graphsCli("movement-to-edges --force --grid --edges grid_edges %s 20");
+            // 13. edges computed by several threads
+            graphsCli("movement-to-edges --force --threads 3 --edges parallel_edges %s 20");
+            // 14. connected components using dynamic connectivity
+            graphsCli("edges-to-ccs --dynamic-connectivity --groups dyn_ccs --force %s");
+            // 15. Reachability family members computed by several threads
+            graphsCli("reachability --force --threads 3 --edges resampled --prefix parallel --prune-reused %s 1 1 5");
+            // 16. Reachability with intermediate families kept in memory
+            graphsCli("reachability --force --in-memory --edges resampled --prefix memory %s 1 1 5");
+            // 17. Reachability composed with bitsets
+            graphsCli("reachability --force --bitsets --edges resampled --prefix bitsets %s 1 1 5");
+            // 18. flooding reachability with origins sharded across threads
+            graphsCli("flooding-reachability --force --threads 3 %s 1 10");
+            cli(String.format("mv --force %s edges_t1000_pd10000 parallel_flooding", getStorePath()));
+            // 19. flooding reachability
+            graphsCli("flooding-reachability --force %s 1 10");
+            // 20. Reachability stored in per-source columnar blocks
+            graphsCli("reachability --force --columnar --edges resampled --prefix per_source %s 1 1 5");
+            // 21. snapshots of the same trace every 2 seconds
+            cli(String.format("reindex %s per_source_t1000_d5000 interval:2000", getStorePath()));
+            // 22. edges with per-block node statistics
+            graphsCli("movement-to-edges --force --block-stats --edges stats_edges %s 20");
+            // 23. reachability of a subgroup, from row and per-source blocks
+            cli(String.format("filter --force %s resampled_t1000_d5000 filtered_reachable [[0,4]]", getStorePath()));
+            cli(String.format("filter --force %s per_source_t1000_d5000 filtered_per_source [[0,4]]", getStorePath()));
+            // 24. a window of the edges, spliced or re-encoded (block stats need decoding)
+            cli(String.format("trunc --force %s edges spliced_edges 100 300", getStorePath()));
+            cli(String.format("trunc --force --block-stats %s edges decoded_edges 100 300", getStorePath()));
+            // 25. a window of a stateless trace indexed every 5 events, spliced
+            cli(String.format("trunc --force --snapshot-policy events:5 %s beacons indexed_beacons 0 1000", getStorePath()));
+            cli(String.format("trunc --force --snapshot-policy events:5 %s indexed_beacons spliced_beacons 100 300", getStorePath()));
+            // 26. Reachability every 2 seconds from 3 seconds, on disk or in memory
+            graphsCli("reachability --force --every 2 --min-delay 3 --edges resampled --prefix every %s 1 1 5");
+            graphsCli("reachability --force --in-memory --every 2 --min-delay 3 --edges resampled --prefix memory_every %s 1 1 5");
+            // 27. movement and presence split into two disjoint groups, then merged back
+            cli(String.format("cp %1$s %1$s_parts/orig movement presence", getStorePath()));
+            cli(String.format("filter --force %1$s_parts/orig %1$s_parts/a [[0,4]]", getStorePath()));
+            cli(String.format("filter --force %1$s_parts/orig %1$s_parts/b [[5,9]]", getStorePath()));
+            cli(String.format("merge --force %1$s_parts/merged %1$s_parts/a %1$s_parts/b", getStorePath()));
         }
     }
 
@@ -84,6 +125,16 @@ public class TestRWP {
             graphsCliAndCompare("export-edges --dest-time-unit ms %s", "edges.crawdad");
         }
 
+        @Test
+        public void compareGridEdges() throws IOException {
+            graphsCliAndCompareTo("export-edges --dest-time-unit ms --edges grid_edges %s", "grid_edges.crawdad", "edges.crawdad");
+        }
+
+        @Test
+        public void compareParallelEdges() throws IOException {
+            graphsCliAndCompareTo("export-edges --dest-time-unit ms --edges parallel_edges %s", "parallel_edges.crawdad", "edges.crawdad");
+        }
+
         @Test
         public void compareBufferedEdges() throws IOException {
             graphsCliAndCompare("export-edges --dest-time-unit ms --edges buffered_edges %s", "buffered_edges.crawdad");
@@ -108,6 +159,75 @@ public class TestRWP {
         public void compareReachable() throws IOException {
             graphsCliAndCompare("export-arcs --dest-time-unit ms --arcs resampled_t1000_d5000 %s", "reachable.crawdad");
         }
+
+        @Test
+        public void compareParallelReachable() throws IOException {
+            graphsCliAndCompareTo("export-arcs --dest-time-unit ms --arcs parallel_t1000_d5000 %s", "parallel_reachable.crawdad", "reachable.crawdad");
+        }
+
+        @Test
+        public void compareInMemoryReachable() throws IOException {
+            graphsCliAndCompareTo("export-arcs --dest-time-unit ms --arcs memory_t1000_d5000 %s", "memory_reachable.crawdad", "reachable.crawdad");
+        }
+
+        @Test
+        public void comparePerSourceReachable() throws IOException {
+            graphsCliAndCompareTo("export-arcs --dest-time-unit ms --arcs per_source_t1000_d5000 %s", "per_source_reachable.crawdad", "reachable.crawdad");
+        }
+
+        @Test
+        public void compareStatsEdges() throws IOException {
+            graphsCliAndCompareTo("export-edges --dest-time-unit ms --edges stats_edges %s", "stats_edges.crawdad", "edges.crawdad");
+        }
+
+        @Test
+        public void compareFilteredReachable() throws IOException {
+            graphsCliToFile("export-arcs --dest-time-unit ms --arcs filtered_reachable %s", "filtered_reachable.crawdad");
+            graphsCliToFile("export-arcs --dest-time-unit ms --arcs filtered_per_source %s", "filtered_per_source.crawdad");
+            assertEquals(FileUtils.readFileToString(new File(getStorePath() + "/filtered_reachable.crawdad")),
+                    FileUtils.readFileToString(new File(getStorePath() + "/filtered_per_source.crawdad")));
+        }
+
+        @Test
+        public void compareSplicedEdges() throws IOException {
+            graphsCliToFile("export-edges --dest-time-unit ms --edges spliced_edges %s", "spliced_edges.crawdad");
+            graphsCliToFile("export-edges --dest-time-unit ms --edges decoded_edges %s", "decoded_edges.crawdad");
+            assertEquals(FileUtils.readFileToString(new File(getStorePath() + "/decoded_edges.crawdad")),
+                    FileUtils.readFileToString(new File(getStorePath() + "/spliced_edges.crawdad")));
+        }
+
+        @Test
+        public void compareInMemoryEvery() throws IOException {
+            for (final String d : new String[] { "3000", "5000" }) {
+                graphsCliToFile("export-arcs --dest-time-unit ms --arcs every_t1000_d" + d + " %s", "every_" + d + ".crawdad");
+                graphsCliToFile("export-arcs --dest-time-unit ms --arcs memory_every_t1000_d" + d + " %s", "memory_every_" + d + ".crawdad");
+                assertEquals(FileUtils.readFileToString(new File(getStorePath() + "/every_" + d + ".crawdad")),
+                        FileUtils.readFileToString(new File(getStorePath() + "/memory_every_" + d + ".crawdad")));
+            }
+        }
+
+        @Test
+        public void compareMerged() throws IOException {
+            for (final String trace : new String[] { "movement", "presence" }) {
+                cliToFile("pt %s " + trace, trace + ".txt");
+                cliToFile("pt %s_parts/merged " + trace, "merged_" + trace + ".txt");
+                assertEquals(FileUtils.readFileToString(new File(getStorePath() + "/" + trace + ".txt")),
+                        FileUtils.readFileToString(new File(getStorePath() + "/merged_" + trace + ".txt")));
+            }
+        }
+
+        @Test
+        public void checkSplicedIndex() {
+            assertTrue(new File(getStorePath() + "/spliced_beacons/index").length() > 0);
+        }
+
+        @Test
+        public void compareSkipScannedEdges() throws IOException {
+            cliToFile("pt --nodes [3,[7,8]] %s edges", "edges.nodes");
+            cliToFile("pt --nodes [3,[7,8]] %s stats_edges", "stats_edges.nodes");
+            assertEquals(FileUtils.readFileToString(new File(getStorePath() + "/edges.nodes")),
+                    FileUtils.readFileToString(new File(getStorePath() + "/stats_edges.nodes")));
+        }
     }
 
     public static class CompareAnalyze {
@@ -142,6 +262,14 @@ public class TestRWP {
             graphsCliAndCompare("analyze --group-size --groups ccs %s", "group_size.ccs.report");
         }
 
+        @Test
+        public void compareDynamicCCSize() throws IOException {
+            graphsCliToFile("analyze --group-size --groups ccs %s", "group_size.ccs.report");
+            graphsCliToFile("analyze --group-size --groups dyn_ccs %s", "group_size.dyn_ccs.report");
+            assertEquals(FileUtils.readFileToString(new File(getStorePath() + "/group_size.ccs.report")),
+                    FileUtils.readFileToString(new File(getStorePath() + "/group_size.dyn_ccs.report")));
+        }
+
         @Test
         public void compareInterAnyContacts() throws IOException {
             graphsCliAndCompare("analyze --inter-any-contacts %s", "inter_any_contacts.report");
@@ -167,10 +295,46 @@ public class TestRWP {
             graphsCliAndCompare("analyze --num-contacts %s", "num_contacts.report");
         }
 
+        @Test
+        public void compareSinglePass() throws IOException {
+            graphsCli("analyze --node-count --num-contacts --any-contacts --group-size --output " + getStorePath() + "/single_pass %s");
+            compareWithResource("single_pass/node-count.report", "node_count.report");
+            compareWithResource("single_pass/num-contacts.report", "num_contacts.report");
+            compareWithResource("single_pass/any-contacts.report", "any_contacts.report");
+            compareWithResource("single_pass/group-size.report", "group_size.report");
+        }
+
+        @Test
+        public void compareShardedAnalyze() throws IOException {
+            graphsCli("analyze --threads 3 --node-degree --clustering --group-size --output " + getStorePath() + "/sharded %s");
+            compareWithResource("sharded/node-degree.report", "node_degree.report");
+            compareWithResource("sharded/clustering.report", "clustering.report");
+            compareWithResource("sharded/group-size.report", "group_size.report");
+            graphsCliToFile("analyze --contacts %s", "contacts.sequential.report");
+            graphsCliToFile("analyze --threads 3 --contacts %s", "contacts.sharded.report");
+            assertEquals(FileUtils.readFileToString(new File(getStorePath() + "/contacts.sequential.report")),
+                    FileUtils.readFileToString(new File(getStorePath() + "/contacts.sharded.report")));
+        }
+
         @Test
         public void compareReachability() throws IOException {
             graphsCliAndCompare("analyze --reachability --arcs resampled_t1000_d5000 %s", "reachability.report");
         }
+
+        @Test
+        public void compareBitsetsReachability() throws IOException {
+            // the bitset engine orders events differently within a time step,
+            // which the report does not depend on
+            graphsCliAndCompareTo("analyze --reachability --arcs bitsets_t1000_d5000 %s", "reachability.bitsets.report", "reachability.report");
+        }
+
+        @Test
+        public void compareParallelFlooding() throws IOException {
+            graphsCliToFile("analyze --reachability --arcs edges_t1000_pd10000 %s", "flooding.report");
+            graphsCliToFile("analyze --reachability --arcs parallel_flooding %s", "flooding.parallel.report");
+            assertEquals(FileUtils.readFileToString(new File(getStorePath() + "/flooding.report")),
+                    FileUtils.readFileToString(new File(getStorePath() + "/flooding.parallel.report")));
+        }
     }
 
     private static String getStorePath() {
@@ -190,9 +354,13 @@ public class TestRWP {
     }
 
     private static void graphsCliToFile(String fmtCmd, String fileName) throws IOException {
+        cliToFile("graphs " + fmtCmd, fileName);
+    }
+
+    private static void cliToFile(String fmtCmd, String fileName) throws IOException {
         FileOutputStream fos = new FileOutputStream(new File(getStorePath() + "/" + fileName));
         System.setOut(new PrintStream(fos));
-        graphsCli(fmtCmd);
+        cli(String.format(fmtCmd, getStorePath()));
         System.setOut(System.out);
     }
 
@@ -201,10 +369,19 @@ public class TestRWP {
         compareWithResource(fileName);
     }
 
+    private static void graphsCliAndCompareTo(String fmtCmd, String fileName, String resourceName) throws IOException {
+        graphsCliToFile(fmtCmd, fileName);
+        compareWithResource(fileName, resourceName);
+    }
+
     private static void compareWithResource(String fileName) throws IOException {
+        compareWithResource(fileName, fileName);
+    }
+
+    private static void compareWithResource(String fileName, String resourceName) throws IOException {
         assertEquals(fileName + " differs!",
                 FileUtils.readFileToString(new File(getStorePath() + "/" + fileName)),
-                FileUtils.readFileToString(new File(getResourcePath() + "/" + fileName)));
+                FileUtils.readFileToString(new File(getResourcePath() + "/" + resourceName)));
     }
 
 }
@@ -0,0 +1,79 @@
+package ditl.test;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ditl.Bus;
+import ditl.Listener;
+import ditl.Matcher;
+
+public class TestBus {
+
+    private final static int N = 10000;
+
+    private final static Bus.Indexer<Integer> mod_indexer = new Bus.Indexer<Integer>() {
+        @Override
+        public Collection<Integer> keys(Integer event) {
+            return Collections.singleton(event % 10);
+        }
+    };
+
+    private static List<String> replay(Bus.QueueType type, boolean keyed) throws IOException {
+        final List<String> signaled = new LinkedList<String>();
+        final Bus<Integer> bus = new Bus<Integer>(type);
+        if (keyed)
+            bus.addIndexer(mod_indexer);
+        bus.addListener(new Listener<Integer>() {
+            @Override
+            public void handle(long time, Collection<Integer> events) {
+                signaled.add(time + " " + events);
+            }
+        });
+        final Random rng = new Random(0);
+        long time = 0;
+        for (int i = 0; i < N; ++i) {
+            switch (rng.nextInt(10)) {
+                case 0:
+                    final int k = rng.nextInt(10);
+                    if (keyed)
+                        bus.removeFromQueueAfterTime(time + rng.nextInt(100), mod_indexer, k);
+                    else
+                        bus.removeFromQueueAfterTime(time + rng.nextInt(100), new Matcher<Integer>() {
+                            @Override
+                            public boolean matches(Integer item) {
+                                return item % 10 == k;
+                            }
+                        });
+                    break;
+                case 1:
+                    time += rng.nextInt(20);
+                    bus.flush(time);
+                    break;
+                default:
+                    bus.queue(time + rng.nextInt(200), i);
+            }
+        }
+        bus.flush();
+        return signaled;
+    }
+
+    @Test
+    public void testHeapMatchesTree() throws IOException {
+        assertTrue(replay(Bus.QueueType.TREE, false).equals(replay(Bus.QueueType.HEAP, false)));
+    }
+
+    @Test
+    public void testKeyedRemovalMatchesMatcher() throws IOException {
+        final List<String> expected = replay(Bus.QueueType.TREE, false);
+        assertTrue(expected.equals(replay(Bus.QueueType.TREE, true)));
+        assertTrue(expected.equals(replay(Bus.QueueType.HEAP, true)));
+    }
+}
@@ -0,0 +1,98 @@
+package ditl.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ditl.ChunkedLineParser;
+import ditl.LineTokenizer;
+
+public class TestChunkedLineParser {
+
+    private final static Random rng = new Random(0);
+    private final static int N = 5000;
+
+    private final static ChunkedLineParser.LineParser lineParser = new ChunkedLineParser.LineParser() {
+        @Override
+        public void parse(LineTokenizer tok, ChunkedLineParser.Records out) {
+            final int r = out.add();
+            out.setString(r, 0, tok.string(0));
+            out.setNumber(r, 0, tok.size());
+            out.setNumber(r, 1, (tok.size() > 1) ? tok.parseDouble(1) : -1);
+        }
+    };
+
+    private static byte[] text(List<String> lines) {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < N; ++i) {
+            final StringBuilder line = new StringBuilder();
+            line.append("n").append(rng.nextInt(100));
+            if (rng.nextInt(50) == 0) // longer than a chunk
+                for (int k = 0; k < 300; ++k)
+                    line.append('x');
+            if (rng.nextInt(20) != 0)
+                line.append('\t').append(rng.nextInt(1000)).append('.').append(rng.nextInt(100));
+            lines.add(line.toString());
+            text.append(line).append(rng.nextBoolean() ? "\n" : "\r\n");
+        }
+        text.append("last 1");
+        lines.add("last 1");
+        return text.toString().getBytes();
+    }
+
+    private static void check(List<String> lines, InputStream in, int nThreads, int chunkSize) throws IOException {
+        final ChunkedLineParser parser = new ChunkedLineParser(in, 2, 1, lineParser, nThreads, chunkSize);
+        int i = 0;
+        ChunkedLineParser.Records records;
+        while ((records = parser.next()) != null)
+            for (int r = 0; r < records.size(); ++r) {
+                final String[] elems = lines.get(i++).split("[ \t]+");
+                assertEquals(elems[0], records.string(r, 0));
+                assertTrue(records.number(r, 0) == elems.length);
+                assertTrue(records.number(r, 1) == ((elems.length > 1) ? Double.parseDouble(elems[1]) : -1));
+            }
+        parser.close();
+        assertEquals(lines.size(), i);
+    }
+
+    @Test
+    public void testStream() throws IOException {
+        final List<String> lines = new ArrayList<String>();
+        final byte[] text = text(lines);
+        for (final int n : new int[] { 1, 3 })
+            for (final int chunk : new int[] { 100, 4096, 1 << 20 })
+                check(lines, new ByteArrayInputStream(text), n, chunk);
+    }
+
+    @Test
+    public void testMappedFile() throws IOException {
+        final List<String> lines = new ArrayList<String>();
+        final byte[] text = text(lines);
+        final File file = File.createTempFile("ditl", ".txt");
+        file.deleteOnExit();
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write("header\n".getBytes());
+        out.write(text);
+        out.close();
+        for (final int n : new int[] { 1, 3 })
+            for (final int chunk : new int[] { 100, 4096, 1 << 20 }) {
+                final InputStream in = new FileInputStream(file);
+                // mapping starts at the current position
+                while (in.read() != '\n')
+                    ;
+                check(lines, in, n, chunk);
+            }
+        file.delete();
+    }
+}
@@ -11,6 +11,7 @@ import java.util.Set;
 
 import org.junit.Test;
 
+import ditl.BufferedCodedInputStream;
 import ditl.CodedBuffer;
 import ditl.CodedInputStream;
 
@@ -122,4 +123,35 @@ public class TestCoding {
         assertTrue(integers.equals(integers2));
     }
 
+    @Test
+    public void testBufferedDecoding() throws IOException {
+        ByteArrayOutputStream bis = new ByteArrayOutputStream();
+        CodedBuffer cb = new CodedBuffer();
+        for (int i = 0; i < N; ++i) {
+            cb.writeInt(randomIntegers[i]);
+            cb.writeSInt(randomSIntegers[i]);
+            cb.writeLong(randomLongs[i]);
+            cb.writeSLong(randomSLongs[i]);
+            cb.writeDouble(randomDoubles[i]);
+        }
+        cb.flush(bis);
+        // small buffer so that many values straddle chunk boundaries
+        CodedInputStream cis = new BufferedCodedInputStream(new ByteArrayInputStream(bis.toByteArray()), 13);
+        for (int i = 0; i < N; ++i) {
+            assertTrue(cis.readInt() == randomIntegers[i]);
+            assertTrue(cis.readSInt() == randomSIntegers[i]);
+            assertTrue(cis.readLong() == randomLongs[i]);
+            cis.mark();
+            assertTrue(cis.readSLong() == randomSLongs[i]);
+            long bytes = cis.bytesReadSinceMark();
+            if (i % 2 == 0) {
+                assertTrue(cis.readDouble() == randomDoubles[i]);
+            } else {
+                cis.skip(8);
+            }
+            assertTrue(cis.bytesReadSinceMark() == bytes + 8);
+        }
+        assertTrue(cis.isAtEnd());
+    }
+
 }
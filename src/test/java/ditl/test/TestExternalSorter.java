@@ -0,0 +1,58 @@
+package ditl.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ditl.ExternalSorter;
+
+public class TestExternalSorter {
+
+    private final static Random rng = new Random(0);
+    private final static int N = 10000;
+
+    private void checkSorted(ExternalSorter sorter) throws IOException {
+        final long[] record = new long[2];
+        for (int i = 0; i < N; ++i)
+            sorter.add(rng.nextInt(100), new long[] { i, -i });
+        sorter.sort();
+        long prev_time = Long.MIN_VALUE;
+        long prev_seq = -1;
+        int n = 0;
+        while (sorter.hasNext()) {
+            final long time = sorter.next(record);
+            assertTrue(time >= prev_time);
+            // records at the same time keep their insertion order
+            if (time == prev_time)
+                assertTrue(record[0] > prev_seq);
+            assertEquals(-record[0], record[1]);
+            prev_time = time;
+            prev_seq = record[0];
+            n++;
+        }
+        sorter.close();
+        assertEquals(N, n);
+        assertFalse(sorter.hasNext());
+    }
+
+    @Test
+    public void testInMemory() throws IOException {
+        checkSorted(new ExternalSorter(2));
+    }
+
+    @Test
+    public void testSpilledRuns() throws IOException {
+        checkSorted(new ExternalSorter(2, 128));
+    }
+
+    @Test
+    public void testMultiPassMerge() throws IOException {
+        // 625 runs merged 4 by 4 take several passes
+        checkSorted(new ExternalSorter(2, 16, 4));
+    }
+}
@@ -0,0 +1,89 @@
+package ditl.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ditl.LineTokenizer;
+
+public class TestLineTokenizer {
+
+    private final static Random rng = new Random(0);
+    private final static int N = 20000;
+
+    private static LineTokenizer tokenizer(String text) {
+        return new LineTokenizer(new ByteArrayInputStream(text.getBytes()));
+    }
+
+    private static String randomNumber() {
+        switch (rng.nextInt(6)) {
+            case 0:
+                return String.valueOf(rng.nextInt(100000));
+            case 1:
+                return String.valueOf(rng.nextDouble() * 1000);
+            case 2:
+                return String.valueOf(-rng.nextDouble() * 1e-5);
+            case 3:
+                return String.valueOf(rng.nextGaussian() * 1e30);
+            case 4:
+                return rng.nextInt(500) + "." + rng.nextInt(1000);
+            default:
+                return rng.nextLong() + "." + rng.nextInt(1000) + "e" + (rng.nextInt(60) - 30);
+        }
+    }
+
+    @Test
+    public void testSplitAndParse() throws IOException {
+        final List<String> lines = new ArrayList<String>();
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < N; ++i) {
+            final StringBuilder line = new StringBuilder();
+            if (rng.nextInt(10) == 0)
+                line.append(' ');
+            line.append(randomNumber());
+            for (int j = 0; j < 3; ++j)
+                line.append(rng.nextBoolean() ? " " : "\t \t").append(randomNumber());
+            if (rng.nextBoolean())
+                line.append(' ');
+            lines.add(line.toString());
+            text.append(line).append(rng.nextBoolean() ? "\n" : "\r\n");
+        }
+        final LineTokenizer tok = tokenizer(text.toString());
+        for (final String line : lines) {
+            assertTrue(tok.nextLine());
+            final String[] elems = line.split("[ \t]+");
+            assertEquals(elems.length, tok.size());
+            for (int j = 0; j < elems.length; ++j) {
+                assertEquals(elems[j], tok.string(j));
+                if (!elems[j].isEmpty())
+                    assertEquals(Double.doubleToRawLongBits(Double.parseDouble(elems[j])),
+                            Double.doubleToRawLongBits(tok.parseDouble(j)));
+            }
+        }
+        assertFalse(tok.nextLine());
+    }
+
+    @Test
+    public void testFields() throws IOException {
+        final LineTokenizer tok = tokenizer("$ns_ at 2.5 \"$node_(12) setdest 1 2 3.5\"\n\nlast");
+        assertTrue(tok.nextLine());
+        assertTrue(tok.fieldStartsWith(0, "$ns"));
+        assertTrue(tok.fieldEquals(1, "at"));
+        assertTrue(tok.fieldEqualsIgnoreCase(1, "AT"));
+        assertEquals("12", tok.between(3, '(', ')'));
+        assertTrue(tok.parseDouble(7, 1) == 3.5);
+        assertTrue(tok.nextLine());
+        assertTrue(tok.isEmptyLine());
+        assertTrue(tok.nextLine());
+        assertEquals("last", tok.line());
+        assertFalse(tok.nextLine());
+    }
+}
@@ -6,15 +6,18 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import ditl.Compression;
 import ditl.Reader;
 import ditl.SeekMap;
 import ditl.StateUpdater;
@@ -190,7 +193,29 @@ public class TestReadWrite {
 
     @Test
     public void testStatefulReaderAndWriter() throws Exception {
-        StatefulTrace<ArcEvent, Arc> trace = store.newTrace("stateful", ArcTrace.class, true);
+        checkStatefulReaderAndWriter("stateful", false);
+    }
+
+    @Test
+    public void testColumnarStatefulReaderAndWriter() throws Exception {
+        checkStatefulReaderAndWriter("stateful_columnar", true);
+    }
+
+    @Test
+    public void testCompressedStatefulReaderAndWriter() throws Exception {
+        for (Compression compression : Compression.values())
+            checkStatefulReaderAndWriter("stateful_" + compression.name(), false, compression);
+        checkStatefulReaderAndWriter("stateful_columnar_lz", true, Compression.LZ);
+    }
+
+    private void checkStatefulReaderAndWriter(String name, boolean columnar) throws Exception {
+        checkStatefulReaderAndWriter(name, columnar, Compression.NONE);
+    }
+
+    private void checkStatefulReaderAndWriter(String name, boolean columnar, Compression compression) throws Exception {
+        StatefulTrace<ArcEvent, Arc> trace = store.newTrace(name, ArcTrace.class, true);
+        trace.set(Trace.columnarKey, columnar);
+        trace.set(Trace.compressionKey, compression.name());
         StatefulWriter<ArcEvent, Arc> writer = trace.getWriter();
 
         StatefulEventGenerator gen = new StatefulEventGenerator(1000);
@@ -207,8 +232,15 @@ public class TestReadWrite {
         for (int[] param : simpleTestCase) {
             assertTrue(reader.hasNext());
             assertTrue(reader.nextTime() == param[0]);
-            Iterator<ArcEvent> cmp_events = reader.next().iterator();
-            Iterator<ArcEvent> ref_events = gen.getNextEvents(param[1]).iterator();
+            List<ArcEvent> cmp_list = reader.next();
+            List<ArcEvent> ref_list = gen.getNextEvents(param[1]);
+            if (columnar) {
+                // columnar blocks only keep the order of the events on each arc
+                assertTrue(eventsPerArc(cmp_list).equals(eventsPerArc(ref_list)));
+                continue;
+            }
+            Iterator<ArcEvent> cmp_events = cmp_list.iterator();
+            Iterator<ArcEvent> ref_events = ref_list.iterator();
             while (ref_events.hasNext()) {
                 assertTrue(cmp_events.hasNext());
                 ArcEvent c = cmp_events.next();
@@ -230,4 +262,41 @@ public class TestReadWrite {
         }
         reader.close();
     }
+
+    private static Map<Arc, List<Boolean>> eventsPerArc(List<ArcEvent> events) {
+        Map<Arc, List<Boolean>> map = new HashMap<Arc, List<Boolean>>();
+        for (ArcEvent aev : events) {
+            if (!map.containsKey(aev.arc()))
+                map.put(aev.arc(), new LinkedList<Boolean>());
+            map.get(aev.arc()).add(aev.isUp());
+        }
+        return map;
+    }
+
+    @Test
+    public void testStatefulRandomSeek() throws Exception {
+        StatefulTrace<ArcEvent, Arc> trace = store.newTrace("stateful_seek", ArcTrace.class, true);
+        StatefulWriter<ArcEvent, Arc> writer = trace.getWriter();
+
+        StatefulEventGenerator gen = new StatefulEventGenerator(1000);
+        writer.setInitState(0, gen.updater.states());
+        int[] ref_sizes = new int[simpleTestCase.length];
+        for (int k = 0; k < simpleTestCase.length; ++k) {
+            ref_sizes[k] = gen.updater.states().size();
+            writer.handle(simpleTestCase[k][0], gen.getNextEvents(simpleTestCase[k][1]));
+        }
+        writer.close();
+
+        // seek backwards and forwards in random order
+        StatefulReader<ArcEvent, Arc> reader = trace.getReader();
+        Random rng = new Random(0);
+        for (int i = 0; i < 100; i++) {
+            int k = rng.nextInt(simpleTestCase.length);
+            reader.seek(simpleTestCase[k][0]);
+            assertTrue(reader.referenceState().size() == ref_sizes[k]);
+            assertTrue(reader.hasNext());
+            assertTrue(reader.nextTime() == simpleTestCase[k][0]);
+        }
+        reader.close();
+    }
 }